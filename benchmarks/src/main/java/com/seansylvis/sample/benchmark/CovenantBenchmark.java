@@ -0,0 +1,67 @@
+package com.seansylvis.sample.benchmark;
+
+import com.seansylvis.sample.Bank;
+import com.seansylvis.sample.Facility;
+import com.seansylvis.sample.Loan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures covenant evaluation through {@link Facility#apply(Loan)} and {@link Bank#apply(Loan)} for varying numbers
+ * of covenants per facility.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CovenantBenchmark {
+
+  private static final int LOANS = 1 << 12;
+
+  @Param({"10", "100", "1000"})
+  public int facilities;
+
+  @Param({"0", "4", "16"})
+  public int covenantsPerFacility;
+
+  private Facility[] portfolio;
+  private Loan[] loans;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    List<Facility> created = Portfolios.createFacilities(random, facilities, covenantsPerFacility, 1000000);
+    portfolio = created.toArray(new Facility[created.size()]);
+    loans = Portfolios.createLoans(random, LOANS);
+  }
+
+  @Benchmark
+  public boolean facilityApply() {
+    int i = next++;
+    return portfolio[i % portfolio.length].apply(loans[i & (LOANS - 1)]);
+  }
+
+  @Benchmark
+  public boolean bankApply() {
+    int i = next++;
+    return portfolio[i % portfolio.length].getBank().apply(loans[i & (LOANS - 1)]);
+  }
+}
@@ -0,0 +1,123 @@
+package com.seansylvis.sample.benchmark;
+
+import com.seansylvis.sample.CsvLoanReader;
+import com.seansylvis.sample.Loan;
+import com.seansylvis.sample.LoanMain;
+import com.seansylvis.sample.LoanReader;
+import com.seansylvis.sample.MappedLoanReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading the CSV inputs of {@link LoanMain}: parsing banks, facilities and covenants, and parsing loans
+ * through each {@link LoanReader}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvLoadingBenchmark {
+
+  @Param({"10", "1000"})
+  public int facilities;
+
+  @Param({"0", "16"})
+  public int covenantsPerFacility;
+
+  @Param({"100000"})
+  public int loans;
+
+  private File directory;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("loans").toFile();
+    Random random = new Random(42);
+
+    try (PrintWriter writer = new PrintWriter(new FileWriter(new File(directory, "banks.csv")))) {
+      writer.println("id,name");
+      writer.println("1,bank");
+    }
+    try (PrintWriter facilitiesWriter = new PrintWriter(new FileWriter(new File(directory, "facilities.csv")));
+         PrintWriter covenantsWriter = new PrintWriter(new FileWriter(new File(directory, "covenants.csv")))) {
+      facilitiesWriter.println("amount,interest_rate,id,bank_id");
+      covenantsWriter.println("facility_id,max_default_likelihood,bank_id,banned_state");
+      for (int i = 1; i <= facilities; i++) {
+        facilitiesWriter.println("1000000.0," + (0.01f + random.nextInt(10) / 100.0f) + "," + i + ",1");
+        for (int j = 0; j < covenantsPerFacility; j++) {
+          covenantsWriter.println(i + "," + (0.05f + random.nextFloat() * 0.1f) + ",1,"
+              + Portfolios.STATES[random.nextInt(Portfolios.STATES.length)]);
+        }
+      }
+    }
+    try (PrintWriter writer = new PrintWriter(new FileWriter(new File(directory, "loans.csv")))) {
+      writer.println("interest_rate,amount,id,default_likelihood,state");
+      for (Loan loan : Portfolios.createLoans(random, loans)) {
+        writer.println(loan.getInterestRate() + "," + loan.getAmountCents() + "," + loan.getLoanId() + ","
+            + loan.getDefaultLikelihood() + "," + loan.getState());
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  public LoanMain loadConfiguration() throws IOException {
+    // facilities load in the background, so wait for them to measure loading rather than starting to load
+    try (LoanMain loanMain = new LoanMain(directory.getPath())) {
+      loanMain.awaitFacilities();
+      return loanMain;
+    }
+  }
+
+  @Benchmark
+  public long readLoansCsv() throws IOException {
+    return readAll(new CsvLoanReader(new File(directory, "loans.csv")));
+  }
+
+  @Benchmark
+  public long readLoansMapped() throws IOException {
+    return readAll(new MappedLoanReader(new File(directory, "loans.csv")));
+  }
+
+  private static long readAll(LoanReader reader) throws IOException {
+    long sum = 0;
+    try {
+      Loan loan;
+      while ((loan = reader.next()) != null) {
+        sum += loan.getAmountCents();
+      }
+    } finally {
+      reader.close();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,70 @@
+package com.seansylvis.sample.benchmark;
+
+import com.seansylvis.sample.Bank;
+import com.seansylvis.sample.Facility;
+import com.seansylvis.sample.Loan;
+import com.seansylvis.sample.LoanBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Loan#computeExpectedYield(Facility)} and {@link Facility#computeExpectedYield} over the loans funded
+ * by a facility, both as {@link Loan} objects and as a columnar {@link LoanBatch}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpectedYieldBenchmark {
+
+  @Param({"1000", "100000"})
+  public int fundedLoans;
+
+  private Facility facility;
+  private List<Loan> loans;
+  private LoanBatch batch;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    facility = new Facility(1, new Bank(1, "bank"), 0.05f, Integer.MAX_VALUE);
+    loans = Arrays.asList(Portfolios.createLoans(new Random(42), fundedLoans));
+    batch = new LoanBatch(fundedLoans);
+    for (Loan loan : loans) {
+      batch.add(loan);
+    }
+  }
+
+  @Benchmark
+  public int loanExpectedYield() {
+    return loans.get(next++ % fundedLoans).computeExpectedYield(facility);
+  }
+
+  @Benchmark
+  public long facilityExpectedYield() {
+    return facility.computeExpectedYield(loans);
+  }
+
+  @Benchmark
+  public long facilityExpectedYieldBatch() {
+    return facility.computeExpectedYield(batch);
+  }
+}
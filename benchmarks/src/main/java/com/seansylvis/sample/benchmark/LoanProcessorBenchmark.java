@@ -0,0 +1,102 @@
+package com.seansylvis.sample.benchmark;
+
+import com.seansylvis.sample.Facility;
+import com.seansylvis.sample.Loan;
+import com.seansylvis.sample.LoanProcessor;
+import com.seansylvis.sample.LoanProcessorMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LoanProcessor#process(Loan)} against portfolios of varying size, covenant density and number of
+ * loans already funded, with and without {@link LoanProcessorMetrics}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoanProcessorBenchmark {
+
+  // loans processed per invocation, each invocation starting from the same ledgers
+  private static final int LOANS = 1 << 16;
+  // small enough that the loans funded before and during an invocation all fit in a single facility
+  private static final int MAX_AMOUNT_CENTS = 10000;
+
+  @Param({"10", "100", "1000"})
+  public int facilities;
+
+  @Param({"0", "4", "16"})
+  public int covenantsPerFacility;
+
+  @Param({"0", "100000"})
+  public int fundedLoans;
+
+  @Param({"false", "true"})
+  public boolean metrics;
+
+  private List<Facility> portfolio;
+  private Loan[] funded;
+  private Loan[] loans;
+  private LoanProcessor loanProcessor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if ((long) (fundedLoans + LOANS) * MAX_AMOUNT_CENTS > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("facilities could run out with " + fundedLoans + " loans funded");
+    }
+    Random random = new Random(42);
+    portfolio = Portfolios.createFacilities(random, facilities, covenantsPerFacility, Integer.MAX_VALUE);
+    funded = Portfolios.createLoans(random, fundedLoans, MAX_AMOUNT_CENTS);
+    loans = Portfolios.createLoans(random, LOANS, MAX_AMOUNT_CENTS);
+  }
+
+  /**
+   * Resets the ledgers to the loans funded up front, so that every invocation measures the same steady state: no
+   * facility runs out, and ledgers do not grow from one invocation to the next. An invocation processes enough loans
+   * to dwarf the cost of timing it.
+   */
+  @Setup(Level.Invocation)
+  public void resetLedgers() {
+    loanProcessor = new LoanProcessor();
+    if (metrics) {
+      loanProcessor.setMetrics(new LoanProcessorMetrics());
+    }
+    for (Facility facility : portfolio) {
+      loanProcessor.addFacility(facility);
+    }
+    for (Loan loan : funded) {
+      loanProcessor.process(loan);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LOANS)
+  public int process() {
+    int fundedCount = 0;
+    for (Loan loan : loans) {
+      if (loanProcessor.process(loan) != null) {
+        fundedCount++;
+      }
+    }
+    return fundedCount;
+  }
+}
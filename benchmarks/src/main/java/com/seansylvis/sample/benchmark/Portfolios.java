@@ -0,0 +1,77 @@
+package com.seansylvis.sample.benchmark;
+
+import com.seansylvis.sample.Bank;
+import com.seansylvis.sample.BannedStateCovenant;
+import com.seansylvis.sample.DefaultLikelihoodCovenant;
+import com.seansylvis.sample.Facility;
+import com.seansylvis.sample.Loan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded, in-memory portfolios of facilities and loans shared by the benchmarks.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+final class Portfolios {
+
+  static final String[] STATES = {
+      "AK", "AL", "AR", "AZ", "CA", "CO", "CT", "DE", "FL", "GA", "HI", "IA", "ID", "IL", "IN", "KS", "KY", "LA",
+      "MA", "MD", "ME", "MI", "MN", "MO", "MS", "MT", "NC", "ND", "NE", "NH", "NJ", "NM", "NV", "NY", "OH", "OK",
+      "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VA", "VT", "WA", "WI", "WV", "WY"};
+
+  private static final int BANKS = 10;
+
+  private Portfolios() {
+  }
+
+  /**
+   * Creates facilities whose covenants alternate between banned states and default likelihood limits, split evenly
+   * between each facility and its bank.
+   */
+  static List<Facility> createFacilities(Random random, int facilityCount, int covenantsPerFacility,
+      int totalAmountCents) {
+    List<Bank> banks = new ArrayList<>();
+    for (int i = 0; i < BANKS; i++) {
+      banks.add(new Bank(i, "bank" + i));
+    }
+    for (int i = 0; i < covenantsPerFacility / 2; i++) {
+      for (Bank bank : banks) {
+        bank.addCovenant(new BannedStateCovenant(STATES[random.nextInt(STATES.length)]));
+      }
+    }
+
+    List<Facility> facilities = new ArrayList<>();
+    for (int i = 0; i < facilityCount; i++) {
+      Bank bank = banks.get(random.nextInt(banks.size()));
+      Facility facility = new Facility(i, bank, 0.01f + random.nextInt(10) / 100.0f, totalAmountCents);
+      for (int j = 0; j < covenantsPerFacility - covenantsPerFacility / 2; j++) {
+        if (j % 2 == 0) {
+          facility.addCovenant(new DefaultLikelihoodCovenant(0.05f + random.nextFloat() * 0.1f));
+        } else {
+          facility.addCovenant(new BannedStateCovenant(STATES[random.nextInt(STATES.length)]));
+        }
+      }
+      facilities.add(facility);
+    }
+    return facilities;
+  }
+
+  static Loan[] createLoans(Random random, int count) {
+    return createLoans(random, count, 101000);
+  }
+
+  /**
+   * Creates loans of from $10 up to the given amount.
+   */
+  static Loan[] createLoans(Random random, int count, int maxAmountCents) {
+    Loan[] loans = new Loan[count];
+    for (int i = 0; i < count; i++) {
+      loans[i] = new Loan(i, 1000 + random.nextInt(maxAmountCents - 1000), random.nextFloat() * 0.1f,
+          0.1f + random.nextInt(10) / 100.0f, STATES[random.nextInt(STATES.length)]);
+    }
+    return loans;
+  }
+}
@@ -0,0 +1,41 @@
+package com.seansylvis.sample;
+
+import java.util.Arrays;
+
+/**
+ * Decision made for a single {@link Loan}: the {@link Facility} funding it, or none if the loan is unfunded.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class Assignment {
+
+  private final Facility facility;
+  private final Loan loan;
+
+  public Assignment(Loan loan, Facility facility) {
+    this.facility = facility;
+    this.loan = loan;
+  }
+
+  /**
+   * @return the facility funding the loan, or null if the loan is unfunded
+   */
+  public Facility getFacility() {
+    return facility;
+  }
+
+  public Loan getLoan() {
+    return loan;
+  }
+
+  public boolean isFunded() {
+    return facility != null;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.asList(
+        String.valueOf(loan.getLoanId()),
+        facility == null ? "" : String.valueOf(facility.getFacilityId())).toString();
+  }
+}
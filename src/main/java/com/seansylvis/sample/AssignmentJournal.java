@@ -0,0 +1,481 @@
+package com.seansylvis.sample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only binary journal of loan decisions, written ahead of any other output so that decisions survive a crash.
+ * Each decision record holds the loan's attributes and the id of the facility funding it, or {@link #NO_FACILITY}, so
+ * that {@link #recover} can fund the facilities' ledgers exactly as the decisions did. States are recorded once each,
+ * in a state record ahead of the first decision in that state, since {@link StateCodes} codes differ between JVMs.
+ *
+ * <p>Records are appended to an in-memory buffer and made durable by {@link #sync(long)}, which writes and forces all
+ * records appended so far with a single fsync. Syncs are group-committed: while one thread is syncing, others keep
+ * appending, and threads waiting for records that the sync in progress does not cover are all satisfied by the next
+ * one. The cost of an fsync is thereby shared by every decision made while the previous one was in progress.
+ *
+ * <p>Each record carries a checksum, so a record torn by a crash is detected and discarded, along with anything after
+ * it, when the journal is reopened or recovered. A sync that fails leaves the records it was writing in doubt, so the
+ * journal fails with it: every later append or sync throws, and only reopening the journal recovers what is durable.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class AssignmentJournal implements Closeable {
+
+  public static final int NO_FACILITY = -1;
+
+  private static final int MAGIC = 0x4c4e4a4c;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 8;
+
+  // record kinds, never zero so that zeroed space left by a torn write is not a record
+  private static final int DECISION = 1;
+  private static final int STATE = 2;
+
+  // kind, loan id, facility id, amount, default likelihood, interest rate, journal state code and checksum
+  private static final int DECISION_SIZE = 32;
+  // kind, journal state code and name length, followed by the name and a checksum
+  private static final int STATE_HEADER_SIZE = 10;
+  private static final int MAX_STATE_LENGTH = 256;
+
+  private final File file;
+  private final FileChannel channel;
+  private final int bufferRecords;
+
+  // guarded by this
+  private ByteBuffer pending;
+  private ByteBuffer spare;
+  // decisions in the pending buffer
+  private int buffered;
+  private long appended;
+  private long durable;
+  private boolean syncing;
+  // the error that failed a sync, after which nothing more can be journaled
+  private Throwable failure;
+  // journal state code plus one by StateCodes code, or zero if the state has no state record yet
+  private int[] journalStates = new int[0];
+  private int states;
+
+  /**
+   * Opens the journal in the given file for appending, creating it if it does not exist.
+   *
+   * @param bufferRecords the number of decisions buffered between syncs; appending to a full buffer syncs it
+   */
+  public AssignmentJournal(File file, int bufferRecords) throws IOException {
+    this(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE), bufferRecords);
+  }
+
+  /**
+   * Opens the journal in the given file through the given channel open on it, which the journal closes.
+   */
+  AssignmentJournal(File file, FileChannel channel, int bufferRecords) throws IOException {
+    if (bufferRecords < 1) {
+      channel.close();
+      throw new IllegalArgumentException("buffer must hold at least one record");
+    }
+    this.file = file;
+    this.bufferRecords = bufferRecords;
+    this.channel = channel;
+    // room for a state record too, so that any decision fits in an empty buffer
+    int capacity = bufferRecords * DECISION_SIZE + STATE_HEADER_SIZE + MAX_STATE_LENGTH + 4;
+    this.pending = ByteBuffer.allocateDirect(capacity);
+    this.spare = ByteBuffer.allocateDirect(capacity);
+
+    try {
+      if (channel.size() == 0) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        write(header);
+        channel.force(true);
+      }
+      // discard any record torn by a crash, so that new records follow the last complete one
+      setContents(scan(channel, file, Long.MAX_VALUE, null));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Appends the decision for the given loan to the journal. The record is not durable until {@link #sync(long)}
+   * returns for it.
+   *
+   * @param facilityId the id of the facility funding the loan, or {@link #NO_FACILITY}
+   * @return the sequence number of the decision, counting from one over the life of the journal
+   * @throws IOException if a sync has failed
+   */
+  public long append(Loan loan, int facilityId) throws IOException {
+    while (true) {
+      long sequence;
+      synchronized (this) {
+        checkNotFailed();
+        int stateCode = loan.getStateCode();
+        byte[] state = null;
+        if (stateCode >= journalStates.length || journalStates[stateCode] == 0) {
+          state = loan.getState().getBytes(StandardCharsets.UTF_8);
+          if (state.length > MAX_STATE_LENGTH) {
+            throw new IllegalArgumentException("state too long to journal: " + loan.getState());
+          }
+        }
+
+        int size = DECISION_SIZE + (state == null ? 0 : STATE_HEADER_SIZE + state.length + 4);
+        if (buffered < bufferRecords && pending.remaining() >= size) {
+          if (state != null) {
+            putState(stateCode, state);
+          }
+          putDecision(loan, facilityId, journalStates[stateCode] - 1);
+          buffered++;
+          return ++appended;
+        }
+        sequence = appended;
+      }
+      // the buffer is full, so make room by syncing it
+      sync(sequence);
+    }
+  }
+
+  /**
+   * Blocks until the decision with the given sequence number, and every decision before it, is durable.
+   *
+   * @throws IOException if this or any earlier sync has failed
+   */
+  public void sync(long sequence) throws IOException {
+    ByteBuffer buffer;
+    long target;
+    synchronized (this) {
+      while (durable < sequence && syncing) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted waiting for journal sync");
+        }
+      }
+      checkNotFailed();
+      if (durable >= sequence) {
+        return;
+      }
+      // take over every record appended so far, leaving the spare buffer for appends during the sync
+      syncing = true;
+      target = appended;
+      buffer = pending;
+      pending = spare;
+      spare = null;
+      buffered = 0;
+    }
+
+    Throwable error = null;
+    try {
+      buffer.flip();
+      write(buffer);
+      channel.force(false);
+    } catch (Throwable e) {
+      error = e;
+      throw e;
+    } finally {
+      synchronized (this) {
+        buffer.clear();
+        spare = buffer;
+        syncing = false;
+        if (error == null) {
+          durable = target;
+        } else {
+          // the records taken are lost, and some of them may have been written, so nothing after them can follow
+          failure = error;
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return the number of decisions appended over the life of the journal, which is the sequence number of the last
+   */
+  public synchronized long getAppended() {
+    return appended;
+  }
+
+  /**
+   * @return the number of decisions known to be durable
+   */
+  public synchronized long getDurable() {
+    return durable;
+  }
+
+  /**
+   * Discards all decisions after the given number.
+   */
+  public synchronized void truncate(long records) throws IOException {
+    checkNothingPending("truncate");
+    if (records < appended) {
+      setContents(scan(channel, file, records, null));
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Recovers the decisions in this journal after the given number, e.g. those made after the {@link Checkpoint} that
+   * the given loan processor was restored from: each funded loan is funded again by its facility's ledger, and each
+   * decision's assignment is passed to the given sink in order. Must be called before anything is appended.
+   *
+   * <p>The sink is written to without holding this journal's lock, since it may wait on a thread that syncs the
+   * journal, as a {@link JournaledOutputSink} does.
+   *
+   * @param sink the sink to write the recovered assignments to, or null
+   * @return the number of decisions recovered, funded or not
+   */
+  public long recover(long after, LoanProcessor loanProcessor, OutputSink sink) throws IOException {
+    synchronized (this) {
+      checkNothingPending("recover");
+    }
+    return replay(channel, file, after, getLedgersById(loanProcessor), sink);
+  }
+
+  /**
+   * Syncs all appended records and closes the journal.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      sync(getAppended());
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Rebuilds the funded state of each facility of the given loan processor from the decisions in the given journal,
+   * ignoring any record torn by a crash. The loan processor must not have funded any loans yet.
+   *
+   * @return the number of decisions recovered, funded or not
+   */
+  public static long recover(File file, LoanProcessor loanProcessor) throws IOException {
+    Map<Integer, FacilityLedger> ledgers = getLedgersById(loanProcessor);
+    for (FacilityLedger ledger : ledgers.values()) {
+      if (ledger.getCommittedCents() != 0) {
+        throw new IllegalStateException("loan processor has already funded loans");
+      }
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return replay(channel, file, 0, ledgers, null);
+    }
+  }
+
+  private static Map<Integer, FacilityLedger> getLedgersById(LoanProcessor loanProcessor) {
+    Map<Integer, FacilityLedger> ledgers = new HashMap<>();
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      ledgers.put(ledger.getFacility().getFacilityId(), ledger);
+    }
+    return ledgers;
+  }
+
+  /**
+   * Funds the given ledgers with, and writes to the given sink, each decision in the journal after the given number.
+   */
+  private static long replay(FileChannel channel, File file, final long after,
+      final Map<Integer, FacilityLedger> ledgers, final OutputSink sink) throws IOException {
+    final long[] replayed = new long[1];
+    scan(channel, file, Long.MAX_VALUE, new DecisionVisitor() {
+      @Override
+      public void visit(long sequence, int loanId, int facilityId, int amountCents, float defaultLikelihood,
+          float interestRate, int stateCode) throws IOException {
+        if (sequence <= after) {
+          return;
+        }
+        if (facilityId != NO_FACILITY) {
+          FacilityLedger ledger = ledgers.get(facilityId);
+          if (ledger == null) {
+            throw new IOException("journal has unknown facility " + facilityId);
+          }
+          ledger.fund(loanId, amountCents, defaultLikelihood, interestRate, stateCode);
+        }
+        if (sink != null) {
+          sink.writeAssignment(loanId, facilityId);
+        }
+        replayed[0]++;
+      }
+    });
+    return replayed[0];
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("journal failed to sync: " + file, failure);
+    }
+  }
+
+  private void checkNothingPending(String operation) {
+    if (syncing || pending.position() > 0) {
+      throw new IllegalStateException("cannot " + operation + " a journal with records pending");
+    }
+  }
+
+  /**
+   * Makes the given contents of the journal its only contents, discarding anything after them.
+   */
+  private void setContents(Contents contents) throws IOException {
+    channel.truncate(contents.length);
+    channel.position(contents.length);
+    appended = contents.decisions;
+    durable = contents.decisions;
+    journalStates = new int[0];
+    states = 0;
+    for (String state : contents.states) {
+      mapState(StateCodes.of(state));
+    }
+  }
+
+  private void putState(int stateCode, byte[] state) {
+    int journalState = states;
+    int checksum = checksum(checksum(MAGIC ^ STATE, journalState), state.length);
+    for (byte b : state) {
+      checksum = checksum(checksum, b);
+    }
+    pending.putInt(STATE);
+    pending.putInt(journalState);
+    pending.putShort((short) state.length);
+    pending.put(state);
+    pending.putInt(checksum);
+    mapState(stateCode);
+  }
+
+  private void mapState(int stateCode) {
+    if (stateCode >= journalStates.length) {
+      journalStates = Arrays.copyOf(journalStates, Math.max(stateCode + 1, StateCodes.size()));
+    }
+    journalStates[stateCode] = ++states;
+  }
+
+  private void putDecision(Loan loan, int facilityId, int journalState) {
+    int defaultLikelihood = Float.floatToIntBits(loan.getDefaultLikelihood());
+    int interestRate = Float.floatToIntBits(loan.getInterestRate());
+    pending.putInt(DECISION);
+    pending.putInt(loan.getLoanId());
+    pending.putInt(facilityId);
+    pending.putInt(loan.getAmountCents());
+    pending.putInt(defaultLikelihood);
+    pending.putInt(interestRate);
+    pending.putInt(journalState);
+    pending.putInt(checksum(loan.getLoanId(), facilityId, loan.getAmountCents(), defaultLikelihood, interestRate,
+        journalState));
+  }
+
+  /**
+   * Reads the journal up to the given number of decisions, or up to the first torn or corrupt record, passing each
+   * decision to the given visitor, if any.
+   */
+  private static Contents scan(FileChannel channel, File file, long maxDecisions, DecisionVisitor visitor)
+      throws IOException {
+    long size = channel.size();
+    if (size < HEADER_SIZE) {
+      throw new IOException("not a journal: " + file);
+    }
+    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("not a journal: " + file);
+    }
+
+    Contents contents = new Contents();
+    contents.length = HEADER_SIZE;
+    // StateCodes code by journal state code
+    int[] stateCodes = new int[16];
+    while (contents.decisions < maxDecisions && buffer.remaining() >= 4) {
+      int kind = buffer.getInt();
+      if (kind == DECISION && buffer.remaining() >= DECISION_SIZE - 4) {
+        int loanId = buffer.getInt();
+        int facilityId = buffer.getInt();
+        int amountCents = buffer.getInt();
+        int defaultLikelihood = buffer.getInt();
+        int interestRate = buffer.getInt();
+        int journalState = buffer.getInt();
+        if (buffer.getInt() != checksum(loanId, facilityId, amountCents, defaultLikelihood, interestRate,
+            journalState) || journalState < 0 || journalState >= contents.states.size()) {
+          break;
+        }
+        contents.decisions++;
+        if (visitor != null) {
+          visitor.visit(contents.decisions, loanId, facilityId, amountCents, Float.intBitsToFloat(defaultLikelihood),
+              Float.intBitsToFloat(interestRate), stateCodes[journalState]);
+        }
+      } else if (kind == STATE && buffer.remaining() >= STATE_HEADER_SIZE - 4) {
+        int journalState = buffer.getInt();
+        int length = buffer.getShort() & 0xffff;
+        if (journalState != contents.states.size() || length > MAX_STATE_LENGTH || buffer.remaining() < length + 4) {
+          break;
+        }
+        byte[] state = new byte[length];
+        buffer.get(state);
+        int checksum = checksum(checksum(MAGIC ^ STATE, journalState), length);
+        for (byte b : state) {
+          checksum = checksum(checksum, b);
+        }
+        if (buffer.getInt() != checksum) {
+          break;
+        }
+        String name = new String(state, StandardCharsets.UTF_8);
+        contents.states.add(name);
+        if (journalState == stateCodes.length) {
+          stateCodes = Arrays.copyOf(stateCodes, 2 * stateCodes.length);
+        }
+        stateCodes[journalState] = StateCodes.of(name);
+      } else {
+        break;
+      }
+      contents.length = buffer.position();
+    }
+    return contents;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static int checksum(int loanId, int facilityId, int amountCents, int defaultLikelihood, int interestRate,
+      int journalState) {
+    int checksum = checksum(MAGIC ^ DECISION, loanId);
+    checksum = checksum(checksum, facilityId);
+    checksum = checksum(checksum, amountCents);
+    checksum = checksum(checksum, defaultLikelihood);
+    checksum = checksum(checksum, interestRate);
+    return checksum(checksum, journalState);
+  }
+
+  private static int checksum(int checksum, int value) {
+    return Integer.rotateLeft(checksum ^ value * 0x9e3779b1, 13) * 0x85ebca6b;
+  }
+
+  /**
+   * Decision read back from a journal, with its state as a {@link StateCodes} code of this JVM.
+   */
+  private interface DecisionVisitor {
+
+    void visit(long sequence, int loanId, int facilityId, int amountCents, float defaultLikelihood,
+        float interestRate, int stateCode) throws IOException;
+  }
+
+  /**
+   * Complete records at the start of a journal.
+   */
+  private static final class Contents {
+
+    long decisions;
+    // the length of the journal up to the end of the last complete record
+    long length;
+    // by journal state code
+    final List<String> states = new ArrayList<>();
+  }
+}
@@ -0,0 +1,252 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OutputSink} that hands results to another sink on a separate thread, so that the thread making decisions
+ * never formats or writes output. Results are collected into batches of primitives, and full batches pass to the
+ * writer thread through a bounded queue; a full queue blocks the caller, so memory use stays bounded when output falls
+ * behind. Batches are recycled once written.
+ *
+ * <p>A failure of the writer thread is rethrown to the caller by the next call to this sink.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class AsyncOutputSink implements OutputSink {
+
+  private static final long POLL_MILLIS = 100;
+
+  private final OutputSink delegate;
+  private final ExecutorService executor;
+  private final BlockingQueue<Batch> filled;
+  private final BlockingQueue<Batch> free;
+  private final Future<Void> writer;
+  private Batch batch;
+  private boolean closed;
+
+  /**
+   * @param delegate the sink to write results to, only ever called by the writer thread
+   * @param batchSize the number of results per batch
+   * @param queueCapacity the maximum number of full batches waiting to be written
+   */
+  public AsyncOutputSink(OutputSink delegate, int batchSize, int queueCapacity) {
+    this.delegate = delegate;
+    this.filled = new ArrayBlockingQueue<>(queueCapacity);
+    // one batch for each queue slot, one being filled and one being written
+    this.free = new ArrayBlockingQueue<>(queueCapacity + 2);
+    for (int i = 0; i < queueCapacity + 1; i++) {
+      free.add(new Batch(batchSize));
+    }
+    this.batch = new Batch(batchSize);
+
+    this.executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("output-sink-%d").setDaemon(true).build());
+    this.writer = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        write();
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void writeAssignment(int loanId, int facilityId) throws IOException {
+    Batch batch = getBatch(Batch.ASSIGNMENTS);
+    batch.ids[batch.size] = loanId;
+    batch.values[batch.size++] = facilityId;
+  }
+
+  @Override
+  public void writeYield(int facilityId, long expectedYield) throws IOException {
+    Batch batch = getBatch(Batch.YIELDS);
+    batch.ids[batch.size] = facilityId;
+    batch.values[batch.size++] = expectedYield;
+  }
+
+  /**
+   * Blocks until all results passed to this sink so far have been written by the delegate.
+   */
+  @Override
+  public void flush() throws IOException {
+    CountDownLatch flushed = new CountDownLatch(1);
+    submit(batch);
+    batch = takeFree();
+    batch.flushed = flushed;
+    submit(batch);
+    batch = takeFree();
+    try {
+      while (!writer.isDone() && !flushed.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        // keep waiting, unless the writer thread died
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for output");
+    }
+    checkWriter();
+  }
+
+  @Override
+  public long getAssignmentsLength() throws IOException {
+    flush();
+    // the writer thread is idle, and the flush happened-before this read
+    return delegate.getAssignmentsLength();
+  }
+
+  /**
+   * Writes all remaining results, stops the writer thread and closes the delegate.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submit(batch);
+      batch = null;
+      put(Batch.END);
+      await();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return a batch with room for another result of the given kind, submitting the current batch if it is full or of
+   * a different kind
+   */
+  private Batch getBatch(int kind) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("sink is closed");
+    }
+    if (batch.size == batch.ids.length || (batch.size > 0 && batch.kind != kind)) {
+      submit(batch);
+      batch = takeFree();
+    }
+    batch.kind = kind;
+    return batch;
+  }
+
+  private void submit(Batch batch) throws IOException {
+    if (batch.size > 0 || batch.flushed != null) {
+      put(batch);
+    } else {
+      free.add(batch);
+    }
+  }
+
+  private void put(Batch batch) throws IOException {
+    try {
+      // poll the writer while waiting, so that a failed writer cannot leave the caller blocked on a full queue
+      do {
+        checkWriter();
+      } while (!filled.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for output");
+    }
+  }
+
+  private Batch takeFree() throws IOException {
+    try {
+      Batch batch;
+      while ((batch = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        checkWriter();
+      }
+      return batch;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for output");
+    }
+  }
+
+  /**
+   * Rethrows the failure of the writer thread, if it failed.
+   */
+  private void checkWriter() throws IOException {
+    if (writer.isDone()) {
+      await();
+      if (!closed) {
+        throw new IllegalStateException("output writer stopped");
+      }
+    }
+  }
+
+  private void await() throws IOException {
+    try {
+      writer.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for output");
+    }
+  }
+
+  /**
+   * Body of the writer thread, which passes each batch to the delegate until the end of the output.
+   */
+  private void write() throws IOException, InterruptedException {
+    try {
+      Batch batch;
+      while ((batch = filled.take()) != Batch.END) {
+        if (batch.kind == Batch.ASSIGNMENTS) {
+          for (int i = 0; i < batch.size; i++) {
+            delegate.writeAssignment(batch.ids[i], (int) batch.values[i]);
+          }
+        } else {
+          for (int i = 0; i < batch.size; i++) {
+            delegate.writeYield(batch.ids[i], batch.values[i]);
+          }
+        }
+        if (batch.flushed != null) {
+          delegate.flush();
+          batch.flushed.countDown();
+          batch.flushed = null;
+        }
+        batch.size = 0;
+        free.add(batch);
+      }
+    } finally {
+      delegate.close();
+    }
+  }
+
+  /**
+   * Results of a single kind, as parallel columns of ids and values.
+   */
+  private static final class Batch {
+
+    static final int ASSIGNMENTS = 0;
+    static final int YIELDS = 1;
+    // marks the end of the output
+    static final Batch END = new Batch(0);
+
+    final int[] ids;
+    final long[] values;
+    int kind;
+    int size;
+    // counted down once this batch, and every batch before it, has been flushed
+    CountDownLatch flushed;
+
+    Batch(int capacity) {
+      this.ids = new int[capacity];
+      this.values = new long[capacity];
+    }
+  }
+}
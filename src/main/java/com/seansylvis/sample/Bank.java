@@ -1,9 +1,9 @@
 package com.seansylvis.sample;
 
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -17,6 +17,8 @@ public class Bank implements Predicate<Loan> {
   private final int bankId;
   private final List<Covenant> covenants;
   private final String name;
+  private CompiledCovenant compiledCovenant;
+  private int revision;
 
   public Bank(int bankId, String name) {
     this.bankId = bankId;
@@ -26,6 +28,8 @@ public class Bank implements Predicate<Loan> {
 
   public void addCovenant(Covenant covenant) {
     covenants.add(covenant);
+    compiledCovenant = null;
+    revision++;
   }
 
   /**
@@ -36,7 +40,23 @@ public class Bank implements Predicate<Loan> {
    */
   @Override
   public boolean apply(Loan loan) {
-    return Predicates.and(covenants).apply(loan);
+    return getCompiledCovenant().apply(loan);
+  }
+
+  /**
+   * @return this bank's covenants fused into a single eligibility check, compiled once after covenants are added
+   */
+  public CompiledCovenant getCompiledCovenant() {
+    CompiledCovenant compiled = compiledCovenant;
+    if (compiled == null) {
+      compiled = CompiledCovenant.compile(covenants);
+      compiledCovenant = compiled;
+    }
+    return compiled;
+  }
+
+  public List<Covenant> getCovenants() {
+    return Collections.unmodifiableList(covenants);
   }
 
   public int getBankId() {
@@ -47,4 +67,11 @@ public class Bank implements Predicate<Loan> {
     return name;
   }
 
+  /**
+   * @return a counter incremented each time a covenant is added, used to detect stale compiled covenants
+   */
+  public int getRevision() {
+    return revision;
+  }
+
 }
@@ -8,13 +8,24 @@ package com.seansylvis.sample;
 public class BannedStateCovenant implements Covenant {
 
   private final String bannedState;
+  private final int bannedStateCode;
 
   public BannedStateCovenant(String bannedState) {
     this.bannedState = bannedState;
+    this.bannedStateCode = StateCodes.of(bannedState);
   }
 
   @Override
   public boolean apply(Loan loan) {
-    return !loan.getState().equals(bannedState);
+    return loan.getStateCode() != bannedStateCode;
+  }
+
+  @Override
+  public void compile(CompiledCovenant.Builder builder) {
+    builder.banState(bannedState);
+  }
+
+  public String getBannedState() {
+    return bannedState;
   }
 }
@@ -0,0 +1,252 @@
+package com.seansylvis.sample;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Assigns a window of loans to facilities so as to maximize the total expected yield, subject to each facility's
+ * {@link Covenant}s and remaining capacity. This is a variation of the multiple knapsack problem: small windows are
+ * solved exactly by branch and bound, while larger windows fall back to a greedy heuristic that offers loans their
+ * highest-yield facility in order of decreasing yield. Either way, the result is never worse than assigning the
+ * window's loans one at a time in arrival order, as {@link LoanProcessor#process(Loan)} does.
+ *
+ * <p>Loans whose expected yield is negative at every eligible facility reduce the total, so they are only funded if
+ * the arrival-order assignment turns out to be the better solution.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BatchAssignmentSolver {
+
+  /** Marks a loan that is not assigned to any facility. */
+  public static final int UNASSIGNED = -1;
+
+  private final int exactWindowLimit;
+  private final long maxSearchNodes;
+
+  /**
+   * @param exactWindowLimit the largest window, in loans, to solve exactly
+   * @param maxSearchNodes the maximum number of branch and bound nodes to explore before settling for the best
+   *                       solution found so far
+   */
+  public BatchAssignmentSolver(int exactWindowLimit, long maxSearchNodes) {
+    this.exactWindowLimit = exactWindowLimit;
+    this.maxSearchNodes = maxSearchNodes;
+  }
+
+  /**
+   * Solves the assignment of the given loans, without modifying the ledgers.
+   *
+   * @param loans the loans in the window, in arrival order
+   * @param ledgers the ledgers of the candidate facilities, in the order facilities are offered loans
+   * @return for each loan, the index of its assigned ledger or {@link #UNASSIGNED}
+   */
+  public int[] solve(List<Loan> loans, List<FacilityLedger> ledgers) {
+    Window window = new Window(loans, ledgers);
+
+    int[] best = window.solveInArrivalOrder();
+    long bestYield = window.computeYield(best);
+
+    int[] heuristic = window.solveByYield();
+    long heuristicYield = window.computeYield(heuristic);
+    if (heuristicYield > bestYield) {
+      best = heuristic;
+      bestYield = heuristicYield;
+    }
+
+    if (loans.size() <= exactWindowLimit) {
+      int[] exact = window.solveExactly(best, bestYield, maxSearchNodes);
+      long exactYield = window.computeYield(exact);
+      if (exactYield > bestYield) {
+        best = exact;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Precomputed eligibility and yields of a window of loans against the remaining capacity of each facility.
+   */
+  private static class Window {
+
+    private final int[] amounts;
+    private final long[] capacities;
+    // candidates[loan] holds the eligible facilities with capacity for the loan, by decreasing yield
+    private final int[][] candidates;
+    // eligible[loan] holds the eligible facilities for the loan, in the order facilities are offered loans
+    private final int[][] eligible;
+    private final int[][] yields;
+
+    // branch and bound state
+    private int[] assignment;
+    private int[] bestAssignment;
+    private long bestYield;
+    private long nodes;
+    private long maxNodes;
+    private Integer[] order;
+    private long[] remainingBound;
+
+    Window(List<Loan> loans, List<FacilityLedger> ledgers) {
+      int loanCount = loans.size();
+      int facilityCount = ledgers.size();
+      this.amounts = new int[loanCount];
+      this.capacities = new long[facilityCount];
+      this.candidates = new int[loanCount][];
+      this.eligible = new int[loanCount][];
+      this.yields = new int[loanCount][facilityCount];
+
+      for (int f = 0; f < facilityCount; f++) {
+        capacities[f] = ledgers.get(f).getRemainingCents();
+      }
+
+      int[] buffer = new int[facilityCount];
+      for (int l = 0; l < loanCount; l++) {
+        final Loan loan = loans.get(l);
+        amounts[l] = loan.getAmountCents();
+        int count = 0;
+        for (int f = 0; f < facilityCount; f++) {
+          Facility facility = ledgers.get(f).getFacility();
+          if (loan.getAmountCents() <= capacities[f] && facility.apply(loan)) {
+            yields[l][f] = loan.computeExpectedYield(facility);
+            buffer[count++] = f;
+          }
+        }
+        eligible[l] = Arrays.copyOf(buffer, count);
+
+        final int[] loanYields = yields[l];
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++) {
+          sorted[i] = eligible[l][i];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+          @Override
+          public int compare(Integer facility1, Integer facility2) {
+            int result = Integer.compare(loanYields[facility2], loanYields[facility1]);
+            return result == 0 ? Integer.compare(facility1, facility2) : result;
+          }
+        });
+        candidates[l] = new int[count];
+        for (int i = 0; i < count; i++) {
+          candidates[l][i] = sorted[i];
+        }
+      }
+    }
+
+    long computeYield(int[] assignment) {
+      long sum = 0;
+      for (int l = 0; l < assignment.length; l++) {
+        if (assignment[l] != UNASSIGNED) {
+          sum += yields[l][assignment[l]];
+        }
+      }
+      return sum;
+    }
+
+    /**
+     * Assigns each loan, in arrival order, to the first eligible facility with capacity.
+     */
+    int[] solveInArrivalOrder() {
+      long[] remaining = capacities.clone();
+      int[] result = new int[amounts.length];
+      for (int l = 0; l < amounts.length; l++) {
+        result[l] = UNASSIGNED;
+        for (int f : eligible[l]) {
+          if (amounts[l] <= remaining[f]) {
+            remaining[f] -= amounts[l];
+            result[l] = f;
+            break;
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Assigns loans in order of decreasing best yield, each to its highest-yield facility with capacity.
+     */
+    int[] solveByYield() {
+      long[] remaining = capacities.clone();
+      int[] result = new int[amounts.length];
+      Arrays.fill(result, UNASSIGNED);
+      for (int l : orderByBestYield()) {
+        for (int f : candidates[l]) {
+          if (yields[l][f] <= 0) {
+            break;
+          }
+          if (amounts[l] <= remaining[f]) {
+            remaining[f] -= amounts[l];
+            result[l] = f;
+            break;
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Searches all assignments by branch and bound, visiting loans in order of decreasing best yield and pruning
+     * branches that cannot beat the best solution even if every remaining loan got its best facility.
+     */
+    int[] solveExactly(int[] initial, long initialYield, long maxNodes) {
+      this.order = orderByBestYield();
+      this.remainingBound = new long[order.length + 1];
+      for (int i = order.length - 1; i >= 0; i--) {
+        remainingBound[i] = remainingBound[i + 1] + bestYield(order[i]);
+      }
+      this.assignment = new int[amounts.length];
+      Arrays.fill(assignment, UNASSIGNED);
+      this.bestAssignment = initial.clone();
+      this.bestYield = initialYield;
+      this.nodes = 0;
+      this.maxNodes = maxNodes;
+
+      search(0, 0, capacities.clone());
+      return bestAssignment;
+    }
+
+    private void search(int depth, long yield, long[] remaining) {
+      if (nodes++ >= maxNodes || yield + remainingBound[depth] <= bestYield) {
+        return;
+      }
+      if (depth == order.length) {
+        bestYield = yield;
+        bestAssignment = assignment.clone();
+        return;
+      }
+
+      int l = order[depth];
+      for (int f : candidates[l]) {
+        if (yields[l][f] <= 0) {
+          break;
+        }
+        if (amounts[l] <= remaining[f]) {
+          remaining[f] -= amounts[l];
+          assignment[l] = f;
+          search(depth + 1, yield + yields[l][f], remaining);
+          assignment[l] = UNASSIGNED;
+          remaining[f] += amounts[l];
+        }
+      }
+      search(depth + 1, yield, remaining);
+    }
+
+    private long bestYield(int loan) {
+      return candidates[loan].length == 0 ? 0 : Math.max(0, yields[loan][candidates[loan][0]]);
+    }
+
+    private Integer[] orderByBestYield() {
+      Integer[] result = new Integer[amounts.length];
+      for (int l = 0; l < result.length; l++) {
+        result[l] = l;
+      }
+      Arrays.sort(result, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer loan1, Integer loan2) {
+          int result = Long.compare(bestYield(loan2), bestYield(loan1));
+          return result == 0 ? Integer.compare(loan1, loan2) : result;
+        }
+      });
+      return result;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Ticker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loan processor that collects loans into windows and assigns each window as a whole, maximizing the expected yield
+ * of the window rather than funding each loan as it arrives. A window closes once it holds the maximum number of
+ * loans or once the oldest loan in it has waited the maximum delay, so the window size trades decision latency for
+ * yield.
+ *
+ * <p>Loans in the same window can be funded by any facility, so the assignment of one loan may no longer be to the
+ * cheapest facility available when it arrived. To quantify the benefit, the processor can also run the same loans
+ * through a greedy {@link LoanProcessor} over the same facilities and report the difference in expected yield.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BatchLoanProcessor {
+
+  private final LoanProcessor greedyProcessor;
+  private final LoanProcessor loanProcessor;
+  private final long maxWindowNanos;
+  private final int maxWindowSize;
+  private final BatchAssignmentSolver solver;
+  private final Ticker ticker;
+  private final List<Loan> window;
+  private long windowStartNanos;
+
+  /**
+   * @param loanProcessor the processor whose facilities and ledgers fund the loans, with all facilities added
+   * @param solver the solver used to assign each window
+   * @param maxWindowSize the maximum number of loans in a window
+   * @param maxWindowDelay the maximum time a loan waits in a window before the window is assigned
+   * @param unit the unit of the maximum window delay
+   * @param trackGreedy whether to also process loans greedily, in order to report the yield improvement
+   */
+  public BatchLoanProcessor(LoanProcessor loanProcessor, BatchAssignmentSolver solver, int maxWindowSize,
+      long maxWindowDelay, TimeUnit unit, boolean trackGreedy) {
+    this(loanProcessor, solver, maxWindowSize, maxWindowDelay, unit, trackGreedy, Ticker.systemTicker());
+  }
+
+  BatchLoanProcessor(LoanProcessor loanProcessor, BatchAssignmentSolver solver, int maxWindowSize,
+      long maxWindowDelay, TimeUnit unit, boolean trackGreedy, Ticker ticker) {
+    this.loanProcessor = loanProcessor;
+    this.maxWindowNanos = unit.toNanos(maxWindowDelay);
+    this.maxWindowSize = maxWindowSize;
+    this.solver = solver;
+    this.ticker = ticker;
+    this.window = new ArrayList<>(maxWindowSize);
+
+    if (trackGreedy) {
+      greedyProcessor = new LoanProcessor();
+      for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+        greedyProcessor.addFacility(ledger.getFacility());
+      }
+    } else {
+      greedyProcessor = null;
+    }
+  }
+
+  /**
+   * Adds a loan to the current window, assigning the window if it is now full or has expired.
+   *
+   * @param loan the loan to process
+   * @return the assignments of the closed window's loans in arrival order, or an empty list if the window is still
+   * open
+   */
+  public List<Assignment> submit(Loan loan) {
+    if (window.isEmpty()) {
+      windowStartNanos = ticker.read();
+    }
+    window.add(loan);
+    if (greedyProcessor != null) {
+      greedyProcessor.process(loan);
+    }
+
+    if (window.size() >= maxWindowSize) {
+      return flush();
+    }
+    return flushIfExpired();
+  }
+
+  /**
+   * Assigns the current window if its oldest loan has waited the maximum delay. Windows only expire when checked,
+   * so callers waiting on a slow stream of loans should call this periodically.
+   *
+   * @return the assignments of the closed window's loans in arrival order, or an empty list if the window is still
+   * open
+   */
+  public List<Assignment> flushIfExpired() {
+    if (!window.isEmpty() && ticker.read() - windowStartNanos >= maxWindowNanos) {
+      return flush();
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Assigns the current window regardless of its size or age.
+   *
+   * @return the assignments of the window's loans in arrival order
+   */
+  public List<Assignment> flush() {
+    if (window.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<FacilityLedger> ledgers = new ArrayList<>(loanProcessor.getLedgers());
+    int[] solution = solver.solve(window, ledgers);
+
+    List<Assignment> assignments = new ArrayList<>(window.size());
+    for (int i = 0; i < window.size(); i++) {
+      Loan loan = window.get(i);
+      if (solution[i] == BatchAssignmentSolver.UNASSIGNED) {
+        assignments.add(new Assignment(loan, null));
+      } else {
+        FacilityLedger ledger = ledgers.get(solution[i]);
+        ledger.fund(loan);
+        assignments.add(new Assignment(loan, ledger.getFacility()));
+      }
+    }
+    window.clear();
+    return assignments;
+  }
+
+  /**
+   * @return the total expected yield of the loans assigned so far
+   */
+  public long getExpectedYield() {
+    return computeExpectedYield(loanProcessor);
+  }
+
+  /**
+   * @return the total expected yield of the same loans when processed greedily, one at a time
+   */
+  public long getGreedyExpectedYield() {
+    if (greedyProcessor == null) {
+      throw new IllegalStateException("greedy processing is not tracked");
+    }
+    return computeExpectedYield(greedyProcessor);
+  }
+
+  /**
+   * @return the expected yield gained over processing the same loans greedily; only meaningful once all submitted
+   * loans have been flushed
+   */
+  public long getYieldImprovement() {
+    return getExpectedYield() - getGreedyExpectedYield();
+  }
+
+  public LoanProcessor getLoanProcessor() {
+    return loanProcessor;
+  }
+
+  private static long computeExpectedYield(LoanProcessor loanProcessor) {
+    long sum = 0;
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      sum += ledger.getExpectedYield();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,180 @@
+package com.seansylvis.sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link LoanReader} over a binary loan book written by {@link BinaryLoanWriter}, read straight from the memory-mapped
+ * file. Records are fixed-width, so reading a loan is a handful of buffer reads with no parsing, and the book is paged
+ * in by the operating system rather than copied onto the heap, so books larger than the heap can be read.
+ *
+ * <p>The file holds a header, the loan records and then a table of the states used by the loans:
+ *
+ * <ul>
+ *   <li>the header is a magic number, a version, the number of loans and the offset of the state table</li>
+ *   <li>each loan record is its id, amount in cents, default likelihood, interest rate and state code, in
+ *   {@link BinaryLoanWriter#RECORD_SIZE} bytes, so loan {@code i} is at offset {@code HEADER_SIZE + i * RECORD_SIZE}
+ *   </li>
+ *   <li>the state table is the number of states and then the name of each, in order of the codes in the file</li>
+ * </ul>
+ *
+ * <p>State codes in the file are mapped to {@link StateCodes} of the reading JVM once when the file is opened.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryLoanReader implements SeekableLoanReader {
+
+  // records per mapped window, so that books larger than a single mapping can be read
+  private static final long WINDOW_RECORDS = (1L << 30) / BinaryLoanWriter.RECORD_SIZE;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long loans;
+  private final int[] stateCodes;
+
+  private MappedByteBuffer buffer;
+  // index of the next loan to read, and of the first loan in the mapped window
+  private long next;
+  private long windowStart;
+  private long windowEnd;
+
+  /**
+   * Opens a reader over all loans in the given file.
+   */
+  public BinaryLoanReader(File file) throws IOException {
+    this(file, BinaryLoanWriter.HEADER_SIZE);
+  }
+
+  /**
+   * Opens a reader over the loans in the given file starting at the given byte offset, which must be the start of a
+   * record as returned by {@link #getOffset()}.
+   */
+  public BinaryLoanReader(File file, long offset) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    try {
+      long size = channel.size();
+      if (size < BinaryLoanWriter.HEADER_SIZE) {
+        throw new IOException("not a binary loan book: " + file);
+      }
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryLoanWriter.HEADER_SIZE);
+      if (header.getInt() != BinaryLoanWriter.MAGIC || header.getInt() != BinaryLoanWriter.VERSION) {
+        throw new IOException("not a binary loan book: " + file);
+      }
+      this.loans = header.getLong();
+      long stateTableOffset = header.getLong();
+      if (loans < 0 || stateTableOffset != recordOffset(loans) || stateTableOffset > size) {
+        throw new IOException("corrupt binary loan book: " + file);
+      }
+      this.stateCodes = readStateTable(channel.map(FileChannel.MapMode.READ_ONLY, stateTableOffset,
+          size - stateTableOffset), file);
+
+      long record = offset - BinaryLoanWriter.HEADER_SIZE;
+      if (record < 0 || record % BinaryLoanWriter.RECORD_SIZE != 0 || record / BinaryLoanWriter.RECORD_SIZE > loans) {
+        throw new IllegalArgumentException("not the offset of a record: " + offset);
+      }
+      this.next = record / BinaryLoanWriter.RECORD_SIZE;
+      map(next);
+    } catch (IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the number of loans in the book
+   */
+  public long size() {
+    return loans;
+  }
+
+  @Override
+  public long getOffset() {
+    return recordOffset(next);
+  }
+
+  @Override
+  public Loan next() throws IOException {
+    if (!advance()) {
+      return null;
+    }
+    return new Loan(buffer.getInt(), buffer.getInt(), buffer.getFloat(), buffer.getFloat(), readStateCode());
+  }
+
+  /**
+   * Reads up to the given number of loans directly into the given batch, without creating {@link Loan} objects.
+   *
+   * @return the number of loans read, which is less than the maximum only once there are no more loans
+   */
+  public int read(LoanBatch batch, int maxLoans) throws IOException {
+    int count = 0;
+    while (count < maxLoans && advance()) {
+      batch.add(buffer.getInt(), buffer.getInt(), buffer.getFloat(), buffer.getFloat(), readStateCode());
+      count++;
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Positions the buffer at the next record, if there is one, and counts it as read.
+   */
+  private boolean advance() throws IOException {
+    if (next == loans) {
+      return false;
+    }
+    if (next == windowEnd) {
+      map(next);
+    }
+    next++;
+    return true;
+  }
+
+  private int readStateCode() throws IOException {
+    int code = buffer.getShort() & 0xffff;
+    if (code >= stateCodes.length) {
+      throw new IOException("unknown state code " + code + " in loan record at offset " + recordOffset(next - 1));
+    }
+    return stateCodes[code];
+  }
+
+  private void map(long record) throws IOException {
+    windowStart = record;
+    windowEnd = Math.min(loans, record + WINDOW_RECORDS);
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, recordOffset(windowStart),
+        (windowEnd - windowStart) * BinaryLoanWriter.RECORD_SIZE);
+  }
+
+  /**
+   * @return for each code in the file, the corresponding {@link StateCodes} code
+   */
+  private static int[] readStateTable(MappedByteBuffer table, File file) throws IOException {
+    try {
+      int states = table.getInt();
+      if (states < 0 || states > StateCodes.MAX_CODES) {
+        throw new IOException("corrupt binary loan book: " + file);
+      }
+      int[] stateCodes = new int[states];
+      for (int code = 0; code < states; code++) {
+        byte[] name = new byte[table.getShort() & 0xffff];
+        table.get(name);
+        stateCodes[code] = StateCodes.of(new String(name, BinaryLoanWriter.STATE_CHARSET));
+      }
+      return stateCodes;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("truncated binary loan book: " + file, e);
+    }
+  }
+
+  private static long recordOffset(long record) {
+    return BinaryLoanWriter.HEADER_SIZE + record * BinaryLoanWriter.RECORD_SIZE;
+  }
+}
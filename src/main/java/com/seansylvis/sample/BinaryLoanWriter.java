@@ -0,0 +1,176 @@
+package com.seansylvis.sample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writer of binary loan books, in the fixed-width format read by {@link BinaryLoanReader}. A book is written to a
+ * temporary file, which replaces the target file only once complete, so a book that can be opened was written in full.
+ *
+ * <p>Converting {@code loans.csv} once with {@link #convert(File, File)} saves parsing it on every run over the same
+ * loans.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryLoanWriter implements Closeable {
+
+  static final int MAGIC = 0x4c4e424b;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+  // id, amount, default likelihood, interest rate and state code
+  static final int RECORD_SIZE = 18;
+  static final Charset STATE_CHARSET = StandardCharsets.UTF_8;
+
+  // loans read from CSV at a time when converting
+  private static final int CONVERT_BATCH_SIZE = 4096;
+
+  private final File file;
+  private final File temporary;
+  private final ChannelOutput output;
+  // for each StateCodes code, one more than its code in the file, or zero if not yet written
+  private int[] fileCodes = new int[0];
+  private final List<String> states = new ArrayList<>();
+  private long loans;
+  private boolean closed;
+
+  /**
+   * Opens a writer of a new book in the given file, which is replaced when the writer is closed.
+   */
+  public BinaryLoanWriter(File file) throws IOException {
+    this.file = file;
+    this.temporary = new File(file.getPath() + ".tmp");
+    this.output = new ChannelOutput(temporary, 0);
+    // the counts are filled in once known
+    output.reserve(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(0).putLong(0);
+  }
+
+  public void write(Loan loan) throws IOException {
+    write(loan.getLoanId(), loan.getAmountCents(), loan.getDefaultLikelihood(), loan.getInterestRate(),
+        loan.getStateCode());
+  }
+
+  public void write(int loanId, int amountCents, float defaultLikelihood, float interestRate, int stateCode)
+      throws IOException {
+    output.reserve(RECORD_SIZE).putInt(loanId).putInt(amountCents).putFloat(defaultLikelihood).putFloat(interestRate)
+        .putShort((short) toFileCode(stateCode));
+    loans++;
+  }
+
+  /**
+   * @return the number of loans written
+   */
+  public long size() {
+    return loans;
+  }
+
+  /**
+   * Writes the state table and header, and replaces the target file with the complete book.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long stateTableOffset = output.length();
+      output.reserve(4).putInt(states.size());
+      for (String state : states) {
+        byte[] name = state.getBytes(STATE_CHARSET);
+        output.reserve(2 + name.length).putShort((short) name.length).put(name);
+      }
+    } finally {
+      output.close();
+    }
+
+    try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(loans)
+          .putLong(HEADER_SIZE + loans * RECORD_SIZE);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      channel.force(true);
+    }
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Closes the writer without replacing the target file, e.g. after failing to read the loans to write.
+   */
+  public void discard() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      output.close();
+    } finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+  }
+
+  /**
+   * Converts the loans in the given CSV file, in the format of {@code loans.csv}, to a binary loan book.
+   *
+   * @return the number of loans converted
+   */
+  public static long convert(File csvFile, File binaryFile) throws IOException {
+    LoanBatch batch = new LoanBatch(CONVERT_BATCH_SIZE);
+    try (MappedLoanReader reader = new MappedLoanReader(csvFile)) {
+      BinaryLoanWriter writer = new BinaryLoanWriter(binaryFile);
+      try {
+        int count;
+        do {
+          batch.clear();
+          count = reader.read(batch, CONVERT_BATCH_SIZE);
+          for (int i = 0; i < count; i++) {
+            writer.write(batch.getLoanId(i), batch.getAmountCents(i), batch.getDefaultLikelihood(i),
+                batch.getInterestRate(i), batch.getStateCode(i));
+          }
+        } while (count == CONVERT_BATCH_SIZE);
+      } catch (IOException | RuntimeException e) {
+        writer.discard();
+        throw e;
+      }
+      writer.close();
+      return writer.size();
+    }
+  }
+
+  private int toFileCode(int stateCode) {
+    if (stateCode >= fileCodes.length) {
+      fileCodes = Arrays.copyOf(fileCodes, Math.max(stateCode + 1, StateCodes.size()));
+    }
+    if (fileCodes[stateCode] == 0) {
+      String state = StateCodes.name(stateCode);
+      if (state.getBytes(STATE_CHARSET).length > 0xffff) {
+        throw new IllegalArgumentException("state too long: " + state);
+      }
+      states.add(state);
+      fileCodes[stateCode] = states.size();
+    }
+    return fileCodes[stateCode] - 1;
+  }
+
+  /**
+   * Usage: {@code BinaryLoanWriter <loans.csv> <loans.bin>}, converting a CSV file of loans to a binary loan book.
+   */
+  public static void main(String[] args) throws IOException {
+    long start = System.nanoTime();
+    long loans = convert(new File(args[0]), new File(args[1]));
+    System.out.println("converted " + loans + " loans in " + (System.nanoTime() - start) / 1000000 + " ms");
+  }
+}
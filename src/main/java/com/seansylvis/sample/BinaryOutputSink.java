@@ -0,0 +1,64 @@
+package com.seansylvis.sample;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link OutputSink} writing fixed-width big-endian binary records, which are smaller than text and need no
+ * formatting: {@code assignments.bin} holds a loan id and facility id per assignment, 8 bytes in all, with
+ * {@link #NO_FACILITY} for unfunded loans, and {@code yields.bin} holds a facility id and expected yield per facility,
+ * 12 bytes in all. Neither file has a header, so record {@code i} is at offset {@code i} times the record size.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryOutputSink implements OutputSink {
+
+  public static final String ASSIGNMENTS = "assignments.bin";
+  public static final String YIELDS = "yields.bin";
+  public static final int ASSIGNMENT_SIZE = 8;
+  public static final int YIELD_SIZE = 12;
+
+  private final ChannelOutput assignments;
+  private final ChannelOutput yields;
+
+  /**
+   * Opens a sink in the given directory, appending assignments from the given length of a previous sink's
+   * assignments output, or starting it over if the length is zero.
+   */
+  public BinaryOutputSink(File directory, long assignmentsLength) throws IOException {
+    this.assignments = new ChannelOutput(new File(directory, ASSIGNMENTS), assignmentsLength);
+    // yields are only written once all loans are processed, so they always start over
+    this.yields = new ChannelOutput(new File(directory, YIELDS), 0);
+  }
+
+  @Override
+  public void writeAssignment(int loanId, int facilityId) throws IOException {
+    assignments.reserve(ASSIGNMENT_SIZE).putInt(loanId).putInt(facilityId);
+  }
+
+  @Override
+  public void writeYield(int facilityId, long expectedYield) throws IOException {
+    yields.reserve(YIELD_SIZE).putInt(facilityId).putLong(expectedYield);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    assignments.flush();
+    yields.flush();
+  }
+
+  @Override
+  public long getAssignmentsLength() throws IOException {
+    flush();
+    return assignments.length();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      assignments.close();
+    } finally {
+      yields.close();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.seansylvis.sample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output file written through a large direct buffer, which is only handed to the {@link FileChannel} once full, so
+ * that records of a few bytes each cost one system call per megabyte rather than one per record.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+final class ChannelOutput implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+  // longest decimal representation of a long, including its sign
+  private static final int MAX_DECIMAL_LENGTH = 20;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final byte[] digits = new byte[MAX_DECIMAL_LENGTH];
+
+  /**
+   * Opens the given file for writing from the given offset, discarding anything after it.
+   */
+  ChannelOutput(File file, long offset) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try {
+      channel.truncate(offset);
+      channel.position(offset);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the buffer to put records into, with room for at least the given number of bytes
+   */
+  ByteBuffer reserve(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+    return buffer;
+  }
+
+  /**
+   * Puts the given text, which must fit in the buffer once flushed, as ASCII.
+   */
+  void putAscii(String text) throws IOException {
+    reserve(text.length()).put(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Puts the decimal representation of the given value, without creating a String.
+   */
+  void putDecimal(long value) throws IOException {
+    ByteBuffer buffer = reserve(MAX_DECIMAL_LENGTH);
+    if (value == Long.MIN_VALUE) {
+      buffer.put(String.valueOf(value).getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    int start = digits.length;
+    do {
+      digits[--start] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    buffer.put(digits, start, digits.length - start);
+  }
+
+  /**
+   * Writes the buffered bytes to the file.
+   */
+  void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * @return the length of the file once the buffered bytes are written
+   */
+  long length() throws IOException {
+    return channel.position() + buffer.position();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+}
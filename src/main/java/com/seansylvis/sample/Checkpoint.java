@@ -0,0 +1,190 @@
+package com.seansylvis.sample;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of a {@link LoanProcessor}'s funded state, along with how far the run producing it had got
+ * through its input and output, so that a run that dies can resume from the snapshot rather than from scratch.
+ *
+ * <p>For each facility, the snapshot holds its committed amount and the records of the loans it funded, with states
+ * written once in a shared table. Snapshots are written to a temporary file which then atomically replaces the
+ * previous snapshot, so a crash while writing leaves the previous snapshot intact. Reading maps the file and replays
+ * the funded loans into the ledgers, so resuming takes time proportional to the snapshot rather than the input.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class Checkpoint {
+
+  private static final int MAGIC = 0x4c4e4350;
+  private static final int VERSION = 1;
+
+  private final File file;
+  private final long inputOffset;
+  private final long outputOffset;
+  private final long loansProcessed;
+
+  private Checkpoint(File file, long inputOffset, long outputOffset, long loansProcessed) {
+    this.file = file;
+    this.inputOffset = inputOffset;
+    this.outputOffset = outputOffset;
+    this.loansProcessed = loansProcessed;
+  }
+
+  /**
+   * Writes a snapshot of the given loan processor to the given file, replacing any previous snapshot.
+   *
+   * @param inputOffset the offset in the input of the first loan not yet processed
+   * @param outputOffset the length of the output written for the processed loans
+   * @param loansProcessed the number of loans processed
+   */
+  public static Checkpoint write(File file, LoanProcessor loanProcessor, long inputOffset, long outputOffset,
+      long loansProcessed) throws IOException {
+    File temporary = new File(file.getPath() + ".tmp");
+    try (FileOutputStream fileOutputStream = new FileOutputStream(temporary)) {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1 << 16));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(inputOffset);
+      output.writeLong(outputOffset);
+      output.writeLong(loansProcessed);
+
+      // every state of a funded loan has a code, since funding a loan accounts for its state
+      int states = StateCodes.size();
+      output.writeInt(states);
+      for (int code = 0; code < states; code++) {
+        output.writeUTF(StateCodes.name(code));
+      }
+
+      output.writeInt(loanProcessor.getLedgers().size());
+      for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+        List<Loan> fundedLoans = ledger.getFundedLoans();
+        output.writeInt(ledger.getFacility().getFacilityId());
+        output.writeLong(ledger.getCommittedCents());
+        output.writeInt(fundedLoans.size());
+        for (Loan loan : fundedLoans) {
+          output.writeInt(loan.getLoanId());
+          output.writeInt(loan.getAmountCents());
+          output.writeFloat(loan.getDefaultLikelihood());
+          output.writeFloat(loan.getInterestRate());
+          output.writeShort(loan.getStateCode());
+        }
+      }
+      output.flush();
+      fileOutputStream.getFD().sync();
+    }
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return new Checkpoint(file, inputOffset, outputOffset, loansProcessed);
+  }
+
+  /**
+   * Reads the header of the snapshot in the given file, leaving the funded loans to be read by
+   * {@link #restore(LoanProcessor)}.
+   */
+  public static Checkpoint read(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      MappedByteBuffer buffer = map(randomAccessFile);
+      try {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+          throw new IOException("not a checkpoint: " + file);
+        }
+        return new Checkpoint(file, buffer.getLong(), buffer.getLong(), buffer.getLong());
+      } catch (BufferUnderflowException e) {
+        throw new IOException("truncated checkpoint: " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Restores the funded state of the snapshot into the given loan processor, which must have the same facilities as
+   * the loan processor the snapshot was taken of, and must not have funded any loans yet.
+   */
+  public void restore(LoanProcessor loanProcessor) throws IOException {
+    Map<Integer, FacilityLedger> ledgers = new HashMap<>();
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      if (ledger.getCommittedCents() != 0) {
+        throw new IllegalStateException("loan processor has already funded loans");
+      }
+      ledgers.put(ledger.getFacility().getFacilityId(), ledger);
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      MappedByteBuffer buffer = map(randomAccessFile);
+      // skip the header read by read(File)
+      buffer.position(2 * 4 + 3 * 8);
+
+      // state codes are only stable within a JVM, so map the codes of the snapshot to those of this JVM
+      int[] stateCodes = new int[buffer.getInt()];
+      for (int code = 0; code < stateCodes.length; code++) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        // modified UTF-8 only differs from UTF-8 for characters that never appear in state codes
+        stateCodes[code] = StateCodes.of(new String(bytes, StandardCharsets.UTF_8));
+      }
+
+      int facilities = buffer.getInt();
+      if (facilities != ledgers.size()) {
+        throw new IOException("checkpoint has " + facilities + " facilities but the loan processor has "
+            + ledgers.size());
+      }
+      for (int i = 0; i < facilities; i++) {
+        int facilityId = buffer.getInt();
+        long committedCents = buffer.getLong();
+        int fundedLoans = buffer.getInt();
+        FacilityLedger ledger = ledgers.get(facilityId);
+        if (ledger == null) {
+          throw new IOException("checkpoint has unknown facility " + facilityId);
+        }
+        for (int j = 0; j < fundedLoans; j++) {
+          int loanId = buffer.getInt();
+          int amountCents = buffer.getInt();
+          float defaultLikelihood = buffer.getFloat();
+          float interestRate = buffer.getFloat();
+          int stateCode = stateCodes[buffer.getShort() & 0xffff];
+          ledger.fund(loanId, amountCents, defaultLikelihood, interestRate, stateCode);
+        }
+        if (ledger.getCommittedCents() != committedCents) {
+          throw new IOException("checkpoint of facility " + facilityId + " is inconsistent");
+        }
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("truncated checkpoint: " + file, e);
+    }
+  }
+
+  /**
+   * @return the offset in the input of the first loan not yet processed
+   */
+  public long getInputOffset() {
+    return inputOffset;
+  }
+
+  /**
+   * @return the length of the output written for the processed loans
+   */
+  public long getOutputOffset() {
+    return outputOffset;
+  }
+
+  public long getLoansProcessed() {
+    return loansProcessed;
+  }
+
+  private static MappedByteBuffer map(RandomAccessFile file) throws IOException {
+    return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+  }
+}
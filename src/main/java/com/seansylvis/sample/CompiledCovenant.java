@@ -0,0 +1,169 @@
+package com.seansylvis.sample;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of {@link Covenant}s fused into a single flat eligibility check. Covenants of known types are reduced to a
+ * maximum default likelihood threshold and a bitset of banned {@link StateCodes}, so that checking a loan costs a few
+ * primitive comparisons and a single mask test rather than a virtual call per covenant. Covenants that cannot be
+ * reduced are kept as residual predicates and evaluated after the fused checks.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public final class CompiledCovenant implements Covenant {
+
+  private final Set<String> bannedStates;
+  // bitset over state codes, with a word for every code up to the highest banned one
+  private final long[] bannedStateMask;
+  private final float maxDefaultLikelihood;
+  private final Covenant[] residualCovenants;
+  private final boolean restrictsDefaultLikelihood;
+
+  private CompiledCovenant(Builder builder) {
+    this.bannedStates = ImmutableSet.copyOf(builder.bannedStates);
+    int maxCode = -1;
+    for (String state : bannedStates) {
+      maxCode = Math.max(maxCode, StateCodes.of(state));
+    }
+    this.bannedStateMask = new long[(maxCode + 64) >>> 6];
+    for (String state : bannedStates) {
+      int code = StateCodes.of(state);
+      bannedStateMask[code >>> 6] |= 1L << code;
+    }
+    this.maxDefaultLikelihood = builder.maxDefaultLikelihood;
+    this.residualCovenants = builder.residualCovenants.toArray(new Covenant[builder.residualCovenants.size()]);
+    this.restrictsDefaultLikelihood = builder.restrictsDefaultLikelihood;
+  }
+
+  /**
+   * Compiles the given covenants into a single eligibility check.
+   */
+  public static CompiledCovenant compile(Iterable<? extends Covenant> covenants) {
+    Builder builder = new Builder();
+    for (Covenant covenant : covenants) {
+      covenant.compile(builder);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public boolean apply(Loan loan) {
+    return accepts(loan.getDefaultLikelihood(), loan.getStateCode()) && applyResidualCovenants(loan);
+  }
+
+  /**
+   * Applies only the fused checks to a loan with the given attributes, without any residual covenants.
+   */
+  public boolean accepts(float defaultLikelihood, int stateCode) {
+    if (restrictsDefaultLikelihood && !(defaultLikelihood <= maxDefaultLikelihood)) {
+      return false;
+    }
+    return !bansState(stateCode);
+  }
+
+  /**
+   * @return true if loans from the state with the given {@link StateCodes} code are banned
+   */
+  public boolean bansState(int stateCode) {
+    int word = stateCode >>> 6;
+    return word < bannedStateMask.length && (bannedStateMask[word] & 1L << stateCode) != 0;
+  }
+
+  /**
+   * Applies only the residual covenants to the given loan.
+   */
+  public boolean applyResidualCovenants(Loan loan) {
+    for (Covenant covenant : residualCovenants) {
+      if (!covenant.apply(loan)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void compile(Builder builder) {
+    if (restrictsDefaultLikelihood) {
+      builder.restrictDefaultLikelihood(maxDefaultLikelihood);
+    }
+    for (String bannedState : bannedStates) {
+      builder.banState(bannedState);
+    }
+    for (Covenant covenant : residualCovenants) {
+      builder.addResidual(covenant);
+    }
+  }
+
+  public Set<String> getBannedStates() {
+    return bannedStates;
+  }
+
+  /**
+   * @return the maximum default likelihood allowed, or {@link Float#POSITIVE_INFINITY} if unrestricted
+   */
+  public float getMaxDefaultLikelihood() {
+    return maxDefaultLikelihood;
+  }
+
+  /**
+   * @return true if the default likelihood of loans is restricted at all
+   */
+  public boolean restrictsDefaultLikelihood() {
+    return restrictsDefaultLikelihood;
+  }
+
+  /**
+   * @return true if some covenants could not be reduced to the fused checks
+   */
+  public boolean hasResidualCovenants() {
+    return residualCovenants.length > 0;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.asList(
+        String.valueOf(maxDefaultLikelihood),
+        String.valueOf(bannedStates),
+        String.valueOf(residualCovenants.length)).toString();
+  }
+
+  /**
+   * Accumulates the restrictions contributed by each {@link Covenant} via {@link Covenant#compile(Builder)}.
+   */
+  public static class Builder {
+
+    private final Set<String> bannedStates = new HashSet<>();
+    private float maxDefaultLikelihood = Float.POSITIVE_INFINITY;
+    private final List<Covenant> residualCovenants = new ArrayList<>();
+    private boolean restrictsDefaultLikelihood;
+
+    /**
+     * Adds a covenant that cannot be reduced to the fused checks, which is evaluated as-is.
+     */
+    public Builder addResidual(Covenant covenant) {
+      residualCovenants.add(covenant);
+      return this;
+    }
+
+    public Builder banState(String state) {
+      bannedStates.add(state);
+      return this;
+    }
+
+    public Builder restrictDefaultLikelihood(float maxDefaultLikelihood) {
+      this.maxDefaultLikelihood = Math.min(this.maxDefaultLikelihood, maxDefaultLikelihood);
+      this.restrictsDefaultLikelihood = true;
+      return this;
+    }
+
+    public CompiledCovenant build() {
+      return new CompiledCovenant(this);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.seansylvis.sample;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe variant of {@link LoanProcessor} that many threads may call {@link #process(Loan)} on at once. Each
+ * facility's committed capacity is reserved with an atomic compare-and-set, so concurrent loans can never over-fund a
+ * facility, and no lock is held while deciding. A loan is still offered to its eligible facilities in order of
+ * interest rate, and is funded by the cheapest one with remaining capacity at the time it is offered.
+ *
+ * <p>The set of facilities is fixed at construction, and their covenants must not change while loans are processed.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class ConcurrentLoanProcessor {
+
+  // spaces out committed amounts so that facilities do not share a cache line
+  private static final int PADDING = 8;
+
+  private final long[] capacities;
+  private final AtomicLongArray committedCents;
+  private final List<ConcurrentLinkedQueue<Loan>> fundedLoans;
+  private final FacilityIndex index;
+  private final Map<Facility, Integer> ranks;
+
+  public ConcurrentLoanProcessor(Collection<Facility> facilities) {
+    TreeSet<Facility> sorted = new TreeSet<>(new LoanProcessor.FacilityInterestRate());
+    sorted.addAll(facilities);
+
+    this.index = new FacilityIndex(sorted);
+    this.capacities = new long[index.size()];
+    this.committedCents = new AtomicLongArray(index.size() * PADDING);
+    this.fundedLoans = new ArrayList<>(index.size());
+    this.ranks = new IdentityHashMap<>();
+    for (int rank = 0; rank < index.size(); rank++) {
+      Facility facility = index.getFacility(rank);
+      capacities[rank] = facility.getTotalAmountCents();
+      fundedLoans.add(new ConcurrentLinkedQueue<Loan>());
+      ranks.put(facility, rank);
+    }
+  }
+
+  /**
+   * @return the amount committed to loans by the given facility
+   */
+  public long getCommittedCents(Facility facility) {
+    Integer rank = ranks.get(facility);
+    return rank == null ? 0 : committedCents.get(rank * PADDING);
+  }
+
+  /**
+   * @return the list of loans being funded by the given facility
+   */
+  public List<Loan> getFundedLoans(Facility facility) {
+    Integer rank = ranks.get(facility);
+    return rank == null ? Collections.<Loan>emptyList() : new ArrayList<>(fundedLoans.get(rank));
+  }
+
+  /**
+   * Determines whether we should fund the given loan, as {@link LoanProcessor#process(Loan)} does. Safe to call from
+   * many threads at once.
+   *
+   * @param loan the loan to process
+   * @return the {@link Facility} assigned to the loan, or null if none is available
+   */
+  public Facility process(Loan loan) {
+    long[] stateMask = index.getStateMask(loan.getStateCode());
+    long[] likelihoodMask = index.getLikelihoodMask(loan.getDefaultLikelihood());
+    for (int word = 0; word < stateMask.length; word++) {
+      long candidates = stateMask[word] & likelihoodMask[word];
+      while (candidates != 0) {
+        int rank = (word << 6) + Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+        if (index.getCompiledCovenant(rank).apply(loan) && reserve(rank, loan.getAmountCents())) {
+          fundedLoans.get(rank).add(loan);
+          return index.getFacility(rank);
+        }
+      }
+    }
+
+    // No acceptable facility found, so return null
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    List<Facility> facilities = new ArrayList<>(index.size());
+    for (int rank = 0; rank < index.size(); rank++) {
+      facilities.add(index.getFacility(rank));
+    }
+    return facilities.toString();
+  }
+
+  /**
+   * Atomically commits the given amount to the facility at the given rank, if it has sufficient remaining capacity.
+   */
+  private boolean reserve(int rank, int amountCents) {
+    long capacity = capacities[rank];
+    while (true) {
+      long committed = committedCents.get(rank * PADDING);
+      if (committed + amountCents > capacity) {
+        return false;
+      }
+      if (committedCents.compareAndSet(rank * PADDING, committed, committed + amountCents)) {
+        return true;
+      }
+    }
+  }
+}
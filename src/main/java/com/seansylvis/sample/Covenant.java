@@ -14,4 +14,11 @@ public interface Covenant extends Predicate<Loan> {
    */
   @Override
   boolean apply(Loan loan);
+
+  /**
+   * Contributes this covenant's restrictions to the given builder, so that it can be fused with other covenants into a
+   * single {@link CompiledCovenant}. Covenants that cannot be expressed by the builder's restrictions should add
+   * themselves via {@link CompiledCovenant.Builder#addResidual(Covenant)}.
+   */
+  void compile(CompiledCovenant.Builder builder);
 }
@@ -0,0 +1,49 @@
+package com.seansylvis.sample;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * {@link LoanReader} over a loans CSV file with the columns {@code interest_rate,amount,id,default_likelihood,state}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CsvLoanReader implements LoanReader {
+
+  private final CSVParser csvParser;
+  private final Iterator<CSVRecord> records;
+
+  public CsvLoanReader(File file) throws IOException {
+    this.csvParser = CSVFormat.DEFAULT
+        .withHeader("interest_rate", "amount", "id", "default_likelihood", "state")
+        .withSkipHeaderRecord()
+        .parse(new FileReader(file));
+    this.records = csvParser.iterator();
+  }
+
+  @Override
+  public Loan next() {
+    if (!records.hasNext()) {
+      return null;
+    }
+
+    CSVRecord record = records.next();
+    int amountCents = Integer.parseInt(record.get("amount"));
+    int loanId = Integer.parseInt(record.get("id"));
+    float defaultLikelihood = Float.parseFloat(record.get("default_likelihood"));
+    float interestRate = Float.parseFloat(record.get("interest_rate"));
+    String state = record.get("state");
+    return new Loan(loanId, amountCents, defaultLikelihood, interestRate, state);
+  }
+
+  @Override
+  public void close() throws IOException {
+    csvParser.close();
+  }
+}
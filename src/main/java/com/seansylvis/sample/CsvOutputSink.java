@@ -0,0 +1,75 @@
+package com.seansylvis.sample;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link OutputSink} writing {@code assignments.csv} and {@code yields.csv} in the same format as
+ * {@link org.apache.commons.csv.CSVFormat#DEFAULT}: a header line, then one record per line, with unfunded loans
+ * given an empty facility id. Records are formatted straight into the output buffers.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CsvOutputSink implements OutputSink {
+
+  public static final String ASSIGNMENTS = "assignments.csv";
+  public static final String YIELDS = "yields.csv";
+
+  private static final String RECORD_SEPARATOR = "\r\n";
+
+  private final ChannelOutput assignments;
+  private final ChannelOutput yields;
+
+  /**
+   * Opens a sink in the given directory, appending assignments from the given length of a previous sink's
+   * assignments output, or starting it over if the length is zero.
+   */
+  public CsvOutputSink(File directory, long assignmentsLength) throws IOException {
+    this.assignments = new ChannelOutput(new File(directory, ASSIGNMENTS), assignmentsLength);
+    if (assignmentsLength == 0) {
+      assignments.putAscii("loan_id,facility_id" + RECORD_SEPARATOR);
+    }
+    // yields are only written once all loans are processed, so they always start over
+    this.yields = new ChannelOutput(new File(directory, YIELDS), 0);
+    yields.putAscii("facility_id,expected_yield" + RECORD_SEPARATOR);
+  }
+
+  @Override
+  public void writeAssignment(int loanId, int facilityId) throws IOException {
+    assignments.putDecimal(loanId);
+    assignments.reserve(1).put((byte) ',');
+    if (facilityId != NO_FACILITY) {
+      assignments.putDecimal(facilityId);
+    }
+    assignments.putAscii(RECORD_SEPARATOR);
+  }
+
+  @Override
+  public void writeYield(int facilityId, long expectedYield) throws IOException {
+    yields.putDecimal(facilityId);
+    yields.reserve(1).put((byte) ',');
+    yields.putDecimal(expectedYield);
+    yields.putAscii(RECORD_SEPARATOR);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    assignments.flush();
+    yields.flush();
+  }
+
+  @Override
+  public long getAssignmentsLength() throws IOException {
+    flush();
+    return assignments.length();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      assignments.close();
+    } finally {
+      yields.close();
+    }
+  }
+}
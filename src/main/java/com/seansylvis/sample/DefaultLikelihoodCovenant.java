@@ -17,4 +17,9 @@ public class DefaultLikelihoodCovenant implements Covenant {
   public boolean apply(Loan loan) {
     return loan.getDefaultLikelihood() <= maxDefaultLikelihood;
   }
+
+  @Override
+  public void compile(CompiledCovenant.Builder builder) {
+    builder.restrictDefaultLikelihood(maxDefaultLikelihood);
+  }
 }
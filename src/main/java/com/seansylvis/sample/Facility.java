@@ -1,10 +1,11 @@
 package com.seansylvis.sample;
 
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,6 +21,8 @@ public class Facility implements Predicate<Loan> {
   private final int facilityId;
   private final float interestRate;
   private final int totalAmountCents;
+  private CompiledCovenant compiledCovenant;
+  private int compiledBankRevision;
 
   public Facility(int facilityId, Bank bank, float interestRate, int totalAmountCents) {
     this.bank = bank;
@@ -31,6 +34,7 @@ public class Facility implements Predicate<Loan> {
 
   public void addCovenant(Covenant covenant) {
     covenants.add(covenant);
+    compiledCovenant = null;
   }
 
   /**
@@ -42,24 +46,55 @@ public class Facility implements Predicate<Loan> {
    */
   @Override
   public boolean apply(Loan loan) {
-    return bank.apply(loan) && Predicates.and(covenants).apply(loan);
+    return getCompiledCovenant().apply(loan);
+  }
+
+  /**
+   * @return the covenants of this facility and its banking partner fused into a single eligibility check, compiled
+   * once after covenants are added to either
+   */
+  public CompiledCovenant getCompiledCovenant() {
+    CompiledCovenant compiled = compiledCovenant;
+    int bankRevision = bank.getRevision();
+    if (compiled == null || compiledBankRevision != bankRevision) {
+      compiled = CompiledCovenant.compile(Iterables.concat(bank.getCovenants(), covenants));
+      compiledBankRevision = bankRevision;
+      compiledCovenant = compiled;
+    }
+    return compiled;
   }
 
   /**
    * Computes the expected yield of a list of loans as funded by this {@link Facility}.
    */
-  public int computeExpectedYield(List<Loan> loans) {
-    int sum = 0;
+  public long computeExpectedYield(List<Loan> loans) {
+    long sum = 0;
     for (Loan loan : loans) {
       sum += loan.computeExpectedYield(this);
     }
     return sum;
   }
 
+  /**
+   * Computes the expected yield of a batch of loans as funded by this {@link Facility}.
+   */
+  public long computeExpectedYield(LoanBatch loans) {
+    long sum = 0;
+    for (int i = 0; i < loans.size(); i++) {
+      sum += Loan.computeExpectedYield(loans.getAmountCents(i), loans.getDefaultLikelihood(i),
+          loans.getInterestRate(i), interestRate);
+    }
+    return sum;
+  }
+
   public Bank getBank() {
     return bank;
   }
 
+  public List<Covenant> getCovenants() {
+    return Collections.unmodifiableList(covenants);
+  }
+
   public int getFacilityId() {
     return facilityId;
   }
@@ -0,0 +1,146 @@
+package com.seansylvis.sample;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Inverted index from loan attributes to the {@link Facility}s whose covenants may accept the loan. Facilities are
+ * ranked in the order they should be offered loans, and each loan attribute maps to a bitset over those ranks: one
+ * bitset per banned state, looked up by {@link StateCodes} code, and one per distinct maximum default likelihood
+ * threshold. Intersecting the two bitsets for a loan yields its candidate facilities in rank order.
+ *
+ * <p>The index is a snapshot of each facility's {@link CompiledCovenant} at the time it was built. Covenants can only
+ * be added, which only ever narrows what a facility accepts, so a stale index still yields a superset of the eligible
+ * facilities. Candidates must therefore still be confirmed against the facility itself.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FacilityIndex {
+
+  private final long[] allFacilities;
+  private final CompiledCovenant[] covenants;
+  private final Facility[] facilities;
+  private final long[][] likelihoodMasks;
+  private final float[] likelihoodThresholds;
+  // by state code, null for states that no facility bans
+  private final long[][] stateMasks;
+
+  /**
+   * @param facilities the facilities, in the order they should be offered loans
+   */
+  public FacilityIndex(Collection<Facility> facilities) {
+    this.facilities = facilities.toArray(new Facility[facilities.size()]);
+    this.covenants = new CompiledCovenant[this.facilities.length];
+    for (int rank = 0; rank < this.facilities.length; rank++) {
+      covenants[rank] = this.facilities[rank].getCompiledCovenant();
+    }
+
+    int words = (this.facilities.length + 63) >>> 6;
+    this.allFacilities = new long[words];
+    for (int rank = 0; rank < this.facilities.length; rank++) {
+      set(allFacilities, rank);
+    }
+
+    // states banned by any facility map to the facilities that still allow them; all other states allow all
+    Map<Integer, long[]> bannedStateMasks = new HashMap<>();
+    int maxCode = -1;
+    for (int rank = 0; rank < covenants.length; rank++) {
+      for (String state : covenants[rank].getBannedStates()) {
+        int code = StateCodes.of(state);
+        long[] mask = bannedStateMasks.get(code);
+        if (mask == null) {
+          mask = allFacilities.clone();
+          bannedStateMasks.put(code, mask);
+          maxCode = Math.max(maxCode, code);
+        }
+        clear(mask, rank);
+      }
+    }
+    this.stateMasks = new long[maxCode + 1][];
+    for (Map.Entry<Integer, long[]> entry : bannedStateMasks.entrySet()) {
+      stateMasks[entry.getKey()] = entry.getValue();
+    }
+
+    // likelihoodMasks[i] holds the facilities accepting loans up to likelihoodThresholds[i], with a trailing entry
+    // for the facilities that do not restrict default likelihood at all
+    TreeSet<Float> thresholds = new TreeSet<>();
+    for (CompiledCovenant covenant : covenants) {
+      if (covenant.restrictsDefaultLikelihood()) {
+        thresholds.add(covenant.getMaxDefaultLikelihood());
+      }
+    }
+    this.likelihoodThresholds = new float[thresholds.size()];
+    int i = 0;
+    for (Float threshold : thresholds) {
+      likelihoodThresholds[i++] = threshold;
+    }
+    this.likelihoodMasks = new long[likelihoodThresholds.length + 1][words];
+    for (int rank = 0; rank < covenants.length; rank++) {
+      int maxThreshold = likelihoodThresholds.length;
+      if (covenants[rank].restrictsDefaultLikelihood()) {
+        maxThreshold = Arrays.binarySearch(likelihoodThresholds, covenants[rank].getMaxDefaultLikelihood());
+      }
+      for (int threshold = 0; threshold <= maxThreshold; threshold++) {
+        set(likelihoodMasks[threshold], rank);
+      }
+    }
+  }
+
+  /**
+   * @return the compiled covenant of the facility at the given rank, as of when this index was built
+   */
+  public CompiledCovenant getCompiledCovenant(int rank) {
+    return covenants[rank];
+  }
+
+  /**
+   * @return the facility at the given rank
+   */
+  public Facility getFacility(int rank) {
+    return facilities[rank];
+  }
+
+  /**
+   * @return the bitset of facility ranks that may accept a loan with the given default likelihood
+   */
+  public long[] getLikelihoodMask(float defaultLikelihood) {
+    // find the smallest threshold at or above the default likelihood
+    int low = 0;
+    int high = likelihoodThresholds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (likelihoodThresholds[mid] < defaultLikelihood) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    if (Float.isNaN(defaultLikelihood)) {
+      low = likelihoodThresholds.length;
+    }
+    return likelihoodMasks[low];
+  }
+
+  /**
+   * @return the bitset of facility ranks that may accept a loan from the state with the given {@link StateCodes} code
+   */
+  public long[] getStateMask(int stateCode) {
+    long[] mask = stateCode < stateMasks.length ? stateMasks[stateCode] : null;
+    return mask == null ? allFacilities : mask;
+  }
+
+  public int size() {
+    return facilities.length;
+  }
+
+  private static void clear(long[] mask, int rank) {
+    mask[rank >>> 6] &= ~(1L << rank);
+  }
+
+  private static void set(long[] mask, int rank) {
+    mask[rank >>> 6] |= 1L << rank;
+  }
+}
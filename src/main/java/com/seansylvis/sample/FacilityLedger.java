@@ -0,0 +1,178 @@
+package com.seansylvis.sample;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Running ledger of the loans funded by a single {@link Facility}. The committed amount, expected yield, expected loss
+ * and exposure to each state are kept up to date as loans are funded, so checking whether the facility can take
+ * another loan or reporting its yield does not require rescanning the funded loans. Amounts are tracked in 64-bit
+ * cents so that large facilities cannot overflow.
+ *
+ * <p>Funded loans are kept as columns of primitives in {@link LoanBatch} chunks of {@value #CHUNK_SIZE} loans, taking
+ * 18 bytes per loan rather than a {@link Loan} object and a reference to it. Only the first chunk grows by copying, so
+ * funding a loan allocates no more than the columns it is stored in.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FacilityLedger {
+
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  // full chunks followed by the chunk being filled; the first starts small, for facilities funding few loans
+  private final List<LoanBatch> fundedLoans = new ArrayList<>();
+  private int fundedLoanCount;
+  // replaced when the facility is reloaded, and read by other threads reporting on the ledger
+  private volatile Facility facility;
+  private long committedCents;
+  private long expectedLossCents;
+  private long expectedYield;
+  // funded principal by state, indexed by state code
+  private long[] stateExposureCents = new long[0];
+
+  public FacilityLedger(Facility facility) {
+    this.facility = facility;
+  }
+
+  /**
+   * @return true if the facility has sufficient remaining funds to cover the given loan
+   */
+  public boolean canFund(Loan loan) {
+    return canFund(loan.getAmountCents());
+  }
+
+  /**
+   * @return true if the facility has sufficient remaining funds to cover a loan of the given amount
+   */
+  public boolean canFund(int amountCents) {
+    return amountCents <= getRemainingCents();
+  }
+
+  /**
+   * Records the given loan as funded by the facility.
+   */
+  public void fund(Loan loan) {
+    fund(loan.getLoanId(), loan.getAmountCents(), loan.getDefaultLikelihood(), loan.getInterestRate(),
+        loan.getStateCode());
+  }
+
+  /**
+   * Records a loan with the given attributes as funded by the facility, without a {@link Loan} object.
+   *
+   * @param stateCode the {@link StateCodes} code of the state where the loan originated
+   */
+  public void fund(int loanId, int amountCents, float defaultLikelihood, float interestRate, int stateCode) {
+    committedCents += amountCents;
+    expectedLossCents += Math.round(defaultLikelihood * amountCents);
+    expectedYield += Loan.computeExpectedYield(amountCents, defaultLikelihood, interestRate,
+        facility.getInterestRate());
+
+    if (stateCode >= stateExposureCents.length) {
+      stateExposureCents = Arrays.copyOf(stateExposureCents, Math.max(stateCode + 1, StateCodes.size()));
+    }
+    stateExposureCents[stateCode] += amountCents;
+
+    if (fundedLoanCount >> CHUNK_BITS == fundedLoans.size()) {
+      fundedLoans.add(new LoanBatch(fundedLoans.isEmpty() ? 16 : CHUNK_SIZE));
+    }
+    fundedLoans.get(fundedLoanCount >> CHUNK_BITS).add(loanId, amountCents, defaultLikelihood, interestRate,
+        stateCode);
+    fundedLoanCount++;
+  }
+
+  /**
+   * @return the principal of all loans funded by the facility
+   */
+  public long getCommittedCents() {
+    return committedCents;
+  }
+
+  /**
+   * @return the principal expected to be lost to defaults across all loans funded by the facility, each loan's
+   * default likelihood times its amount
+   */
+  public long getExpectedLossCents() {
+    return expectedLossCents;
+  }
+
+  /**
+   * @return the expected yield of all loans funded by the facility
+   */
+  public long getExpectedYield() {
+    return expectedYield;
+  }
+
+  public Facility getFacility() {
+    return facility;
+  }
+
+  /**
+   * Replaces the facility with a reloaded version of it, which keeps everything funded so far. Loans funded from now
+   * on are subject to the reloaded facility's amount, interest rate and covenants.
+   */
+  void setFacility(Facility facility) {
+    if (facility.getFacilityId() != this.facility.getFacilityId()) {
+      throw new IllegalArgumentException("cannot replace facility " + this.facility.getFacilityId() + " with "
+          + facility.getFacilityId());
+    }
+    this.facility = facility;
+  }
+
+  /**
+   * @return the loans funded by the facility so far, in the order they were funded, each created as it is read
+   */
+  public List<Loan> getFundedLoans() {
+    final LoanBatch[] chunks = fundedLoans.toArray(new LoanBatch[fundedLoans.size()]);
+    final int size = fundedLoanCount;
+    return new AbstractList<Loan>() {
+      @Override
+      public Loan get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("index " + index + " of " + size + " funded loans");
+        }
+        return chunks[index >> CHUNK_BITS].getLoan(index & (CHUNK_SIZE - 1));
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * @return the number of loans funded by the facility
+   */
+  public int getFundedLoanCount() {
+    return fundedLoanCount;
+  }
+
+  public long getRemainingCents() {
+    return facility.getTotalAmountCents() - committedCents;
+  }
+
+  /**
+   * @return the principal of the loans funded by the facility in the given state
+   */
+  public long getStateExposureCents(String state) {
+    // a state without a code has never been funded, and is not registered just by asking
+    int stateCode = StateCodes.find(state);
+    return stateCode != StateCodes.NONE && stateCode < stateExposureCents.length ? stateExposureCents[stateCode] : 0;
+  }
+
+  /**
+   * @return the fraction of the principal funded by the facility that is in the given state, or zero if nothing has
+   * been funded
+   */
+  public double getStateConcentration(String state) {
+    return committedCents == 0 ? 0.0 : (double) getStateExposureCents(state) / committedCents;
+  }
+
+  @Override
+  public String toString() {
+    return facility + "=" + committedCents;
+  }
+}
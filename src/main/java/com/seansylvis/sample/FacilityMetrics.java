@@ -0,0 +1,73 @@
+package com.seansylvis.sample;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of a single {@link Facility} within a {@link LoanProcessor}: the loans it turned down, by reason, along with
+ * its remaining capacity and expected yield as read from its {@link FacilityLedger}. Ledger figures are read without
+ * synchronizing with the loan processor, so they may lag the latest loan.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FacilityMetrics implements FacilityMetricsMBean {
+
+  private final FacilityLedger ledger;
+  private final AtomicLongArray rejections = new AtomicLongArray(LoanProcessorMetrics.Rejection.values().length);
+
+  public FacilityMetrics(FacilityLedger ledger) {
+    this.ledger = ledger;
+  }
+
+  void reject(LoanProcessorMetrics.Rejection rejection) {
+    int i = rejection.ordinal();
+    rejections.lazySet(i, rejections.get(i) + 1);
+  }
+
+  /**
+   * @return the number of loans this facility turned down for the given reason, despite being cheaper than the
+   * facility that funded them, if any
+   */
+  public long getRejections(LoanProcessorMetrics.Rejection rejection) {
+    return rejections.get(rejection.ordinal());
+  }
+
+  @Override
+  public int getFacilityId() {
+    return ledger.getFacility().getFacilityId();
+  }
+
+  @Override
+  public long getCommittedCents() {
+    return ledger.getCommittedCents();
+  }
+
+  @Override
+  public long getRemainingCents() {
+    return ledger.getRemainingCents();
+  }
+
+  @Override
+  public long getExpectedYield() {
+    return ledger.getExpectedYield();
+  }
+
+  @Override
+  public long getCapacityRejections() {
+    return getRejections(LoanProcessorMetrics.Rejection.CAPACITY);
+  }
+
+  @Override
+  public long getBannedStateRejections() {
+    return getRejections(LoanProcessorMetrics.Rejection.BANNED_STATE);
+  }
+
+  @Override
+  public long getDefaultLikelihoodRejections() {
+    return getRejections(LoanProcessorMetrics.Rejection.DEFAULT_LIKELIHOOD);
+  }
+
+  @Override
+  public long getOtherCovenantRejections() {
+    return getRejections(LoanProcessorMetrics.Rejection.OTHER_COVENANT);
+  }
+}
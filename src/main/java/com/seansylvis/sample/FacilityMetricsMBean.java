@@ -0,0 +1,25 @@
+package com.seansylvis.sample;
+
+/**
+ * Management interface of {@link FacilityMetrics}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public interface FacilityMetricsMBean {
+
+  int getFacilityId();
+
+  long getCommittedCents();
+
+  long getRemainingCents();
+
+  long getExpectedYield();
+
+  long getCapacityRejections();
+
+  long getBannedStateRejections();
+
+  long getDefaultLikelihoodRejections();
+
+  long getOtherCovenantRejections();
+}
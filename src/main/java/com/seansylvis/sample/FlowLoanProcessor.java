@@ -0,0 +1,235 @@
+package com.seansylvis.sample;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link LoanProcessor} exposed as a reactive {@link Flow.Processor}, deciding each loan published to it and publishing
+ * an {@link Assignment} for each, funded or not, in the order the loans arrived.
+ *
+ * <p>Loans are only requested from upstream as results are demanded downstream, in micro-batches of at most a given
+ * number of loans per request signal, and the next batch is only requested once the previous one has been decided. A
+ * slow subscriber therefore throttles the publisher of loans, and at most one batch of loans is ever buffered.
+ *
+ * <p>Each processor serves a single subscriber; any other is rejected with an error. Loans are decided on whichever
+ * thread signals the processor, one signal at a time, so the loan processor must not otherwise be used while loans
+ * flow through it.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FlowLoanProcessor implements Flow.Processor<Loan, Assignment> {
+
+  private final LoanProcessor loanProcessor;
+  private final int batchSize;
+  private final Queue<Loan> loans = new ConcurrentLinkedQueue<>();
+  // number of signals waiting for the drain loop, which only runs on one thread at a time
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicReference<Flow.Subscriber<? super Assignment>> subscriber = new AtomicReference<>();
+  private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+  // set once the subscriber's onSubscribe has returned, before which it must not be signalled
+  private volatile boolean subscribed;
+  private volatile boolean done;
+  private volatile Throwable error;
+  private volatile boolean cancelled;
+
+  // only accessed by the drain loop
+  private long outstanding;
+  private boolean terminated;
+
+  /**
+   * @param loanProcessor the loan processor deciding loans
+   * @param batchSize the maximum number of loans requested from upstream at a time
+   */
+  public FlowLoanProcessor(LoanProcessor loanProcessor, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("invalid batch size " + batchSize);
+    }
+    this.loanProcessor = loanProcessor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Assignment> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    if (!this.subscriber.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("processor already has a subscriber"));
+      return;
+    }
+
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        if (n <= 0) {
+          fail(new IllegalArgumentException("non-positive request " + n));
+          return;
+        }
+        long current;
+        long updated;
+        do {
+          current = demand.get();
+          updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, updated));
+        drain();
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+      }
+    });
+    subscribed = true;
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (!upstream.compareAndSet(null, subscription)) {
+      subscription.cancel();
+      return;
+    }
+    // cancelled downstream, or already failed, e.g. by an invalid request
+    if (cancelled || done) {
+      subscription.cancel();
+      return;
+    }
+    drain();
+  }
+
+  @Override
+  public void onNext(Loan loan) {
+    if (loan == null) {
+      throw new NullPointerException("loan");
+    }
+    loans.add(loan);
+    drain();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    if (throwable == null) {
+      throw new NullPointerException("throwable");
+    }
+    error = throwable;
+    done = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    done = true;
+    drain();
+  }
+
+  /**
+   * Stops taking loans and fails the subscriber with the given error as soon as possible.
+   */
+  private void fail(Throwable throwable) {
+    cancelUpstream();
+    loans.clear();
+    error = throwable;
+    done = true;
+    drain();
+  }
+
+  private void cancelUpstream() {
+    Flow.Subscription subscription = upstream.get();
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  /**
+   * Decides queued loans and emits their assignments as far as demand allows, requests the next batch of loans once
+   * all requested have been decided, and completes or fails the subscriber once all loans have been emitted. Runs on
+   * one thread at a time; a signal arriving meanwhile, including one made by the subscriber or upstream from within
+   * this loop, makes the running loop go around again rather than running it on the signalling thread.
+   */
+  private void drain() {
+    if (pending.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      Flow.Subscriber<? super Assignment> subscriber = subscribed ? this.subscriber.get() : null;
+      Flow.Subscription upstream = this.upstream.get();
+      if (subscriber != null && !terminated) {
+        if (cancelled) {
+          loans.clear();
+        } else if (upstream != null) {
+          emit(subscriber, upstream);
+        } else if (done) {
+          // failed before upstream subscribed, so there are no loans to emit first
+          terminate(subscriber);
+        }
+      }
+      missed = pending.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void emit(Flow.Subscriber<? super Assignment> subscriber, Flow.Subscription upstream) {
+    long requested = demand.get();
+    long emitted = 0;
+    while (emitted != requested && !cancelled) {
+      Loan loan = loans.poll();
+      if (loan == null) {
+        break;
+      }
+      outstanding--;
+      Assignment assignment;
+      try {
+        assignment = new Assignment(loan, loanProcessor.process(loan));
+      } catch (RuntimeException e) {
+        terminated = true;
+        cancelUpstream();
+        loans.clear();
+        subscriber.onError(e);
+        return;
+      }
+      subscriber.onNext(assignment);
+      emitted++;
+    }
+    if (emitted != 0 && requested != Long.MAX_VALUE) {
+      requested = demand.addAndGet(-emitted);
+    }
+    if (cancelled) {
+      return;
+    }
+
+    // read done before checking for remaining loans, since loans are queued before done is set
+    boolean finished = done;
+    if (finished && loans.isEmpty()) {
+      terminate(subscriber);
+    } else if (!finished && outstanding <= 0 && loans.isEmpty() && requested > 0) {
+      long batch = Math.min(batchSize, requested);
+      outstanding = batch;
+      upstream.request(batch);
+    }
+  }
+
+  private void terminate(Flow.Subscriber<? super Assignment> subscriber) {
+    terminated = true;
+    Throwable error = this.error;
+    if (error != null) {
+      subscriber.onError(error);
+    } else {
+      subscriber.onComplete();
+    }
+  }
+}
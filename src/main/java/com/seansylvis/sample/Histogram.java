@@ -0,0 +1,70 @@
+package com.seansylvis.sample;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values in power-of-two buckets, cheap enough to record on every loan. Values are only
+ * resolved to within a factor of two, which is enough to tell where latency or work per loan is going. Values must be
+ * recorded by a single thread at a time, but may be read from any thread.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class Histogram {
+
+  // bucket i counts the values whose bit length is i, i.e. zero, then 1, 2-3, 4-7 and so on
+  private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+
+  public void record(long value) {
+    // with a single writer, ordered stores publish each update without the cost of atomic read-modify-writes
+    value = Math.max(value, 0);
+    int bucket = Long.SIZE - Long.numberOfLeadingZeros(value);
+    buckets.lazySet(bucket, buckets.get(bucket) + 1);
+    sum.lazySet(sum.get() + value);
+    count.lazySet(count.get() + 1);
+    if (value > max.get()) {
+      max.lazySet(value);
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  /**
+   * @return the mean of all recorded values, or zero if none have been recorded
+   */
+  public double getMean() {
+    long count = this.count.get();
+    return count == 0 ? 0.0 : (double) sum.get() / count;
+  }
+
+  /**
+   * @param percentile the percentile, between 0 and 100
+   * @return an upper bound on the given percentile of the recorded values, within a factor of two of it, or zero if
+   * none have been recorded
+   */
+  public long getPercentile(double percentile) {
+    long rank = (long) Math.ceil(count.get() * percentile / 100.0);
+    long seen = 0;
+    for (int bucket = 0; bucket < buckets.length(); bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= rank && seen > 0) {
+        long upperBound = bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1;
+        return Math.min(upperBound, max.get());
+      }
+    }
+    return 0;
+  }
+}
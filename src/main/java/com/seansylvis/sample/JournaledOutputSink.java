@@ -0,0 +1,72 @@
+package com.seansylvis.sample;
+
+import java.io.IOException;
+
+/**
+ * {@link OutputSink} that holds back each assignment until its decision is durable in an {@link AssignmentJournal},
+ * so that no output ever records a decision that the journal could lose in a crash. Every assignment must have been
+ * appended to the journal, in the same order, before it is passed to this sink.
+ *
+ * <p>Meant to be the delegate of an {@link AsyncOutputSink}, so that waiting for the journal happens on the writer
+ * thread rather than the thread making decisions. Waiting syncs every decision appended so far, so a single fsync
+ * covers all the assignments of the batch being written and of any batches queued behind it.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class JournaledOutputSink implements OutputSink {
+
+  private final OutputSink delegate;
+  private final AssignmentJournal journal;
+  // sequence number of the last assignment passed on, and of the last record known to be durable
+  private long written;
+  private long durable;
+
+  /**
+   * @param delegate the sink to pass durable assignments on to
+   * @param journal the journal of the decisions
+   * @param written the sequence number of the decision whose assignment the delegate holds last, which the next
+   * assignment passed to this sink follows
+   */
+  public JournaledOutputSink(OutputSink delegate, AssignmentJournal journal, long written) {
+    this.delegate = delegate;
+    this.journal = journal;
+    this.written = written;
+  }
+
+  @Override
+  public void writeAssignment(int loanId, int facilityId) throws IOException {
+    long sequence = ++written;
+    if (sequence > durable) {
+      long appended = journal.getAppended();
+      if (sequence > appended) {
+        throw new IllegalStateException("assignment of loan " + loanId + " was not journaled");
+      }
+      journal.sync(appended);
+      durable = appended;
+    }
+    delegate.writeAssignment(loanId, facilityId);
+  }
+
+  @Override
+  public void writeYield(int facilityId, long expectedYield) throws IOException {
+    delegate.writeYield(facilityId, expectedYield);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    delegate.flush();
+  }
+
+  @Override
+  public long getAssignmentsLength() throws IOException {
+    return delegate.getAssignmentsLength();
+  }
+
+  /**
+   * Closes the delegate, leaving the journal open.
+   */
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -1,10 +1,16 @@
 package com.seansylvis.sample;
 
+import com.google.common.base.Objects;
+
 import java.util.Arrays;
 
 /**
  * Money to be borrowed by a consumer at a given interest rate. We may or may not choose to fund a particular loan.
  *
+ * <p>Loans hold only primitives, with the state interned as a {@link StateCodes} code, so that each takes 32 bytes of
+ * heap on a 64-bit JVM with compressed references: a 12-byte header, four 4-byte fields and a 2-byte state code,
+ * padded to a multiple of 8 bytes.
+ *
  * @author Sean Sylvis (ssylvis@gmail.com)
  */
 public class Loan {
@@ -13,24 +19,44 @@ public class Loan {
   private final float defaultLikelihood;
   private final int loanId;
   private final float interestRate;
-  private final String state;
+  // the state as a StateCodes code, so that loans do not each hold a String and compare states by their characters
+  private final short stateCode;
 
   public Loan(int loanId, int amountCents, float defaultLikelihood, float interestRate, String state) {
+    this(loanId, amountCents, defaultLikelihood, interestRate, StateCodes.of(state));
+  }
+
+  /**
+   * @param stateCode the {@link StateCodes} code of the state where the loan originated
+   */
+  public Loan(int loanId, int amountCents, float defaultLikelihood, float interestRate, int stateCode) {
+    if (stateCode < 0 || stateCode >= StateCodes.size()) {
+      throw new IllegalArgumentException("unknown state code " + stateCode);
+    }
     this.amountCents = amountCents;
     this.defaultLikelihood = defaultLikelihood;
     this.loanId = loanId;
     this.interestRate = interestRate;
-    this.state = state;
+    this.stateCode = (short) stateCode;
   }
 
   /**
    * Computes the expected yield of this loan as funded by the given {@link Facility}.
    */
   public int computeExpectedYield(Facility facility) {
+    return computeExpectedYield(amountCents, defaultLikelihood, interestRate, facility.getInterestRate());
+  }
+
+  /**
+   * Computes the expected yield of a loan with the given attributes as funded by a facility with the given interest
+   * rate.
+   */
+  public static int computeExpectedYield(int amountCents, float defaultLikelihood, float interestRate,
+      float facilityInterestRate) {
     return Math.round(
         ((1.0f - defaultLikelihood) * interestRate * amountCents)
             - (defaultLikelihood * amountCents)
-            - (facility.getInterestRate() * amountCents)
+            - (facilityInterestRate * amountCents)
     );
   }
 
@@ -50,8 +76,41 @@ public class Loan {
     return interestRate;
   }
 
+  /**
+   * @return the state where the loan originated, as the String shared by all loans from that state
+   */
   public String getState() {
-    return state;
+    return StateCodes.name(stateCode);
+  }
+
+  /**
+   * @return the {@link StateCodes} code of the state where the loan originated
+   */
+  public int getStateCode() {
+    return stateCode;
+  }
+
+  /**
+   * Loans are equal if all their attributes are, since loans read back from columns are new objects.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Loan)) {
+      return false;
+    }
+    Loan loan = (Loan) o;
+    return loanId == loan.loanId && amountCents == loan.amountCents
+        && Float.floatToIntBits(defaultLikelihood) == Float.floatToIntBits(loan.defaultLikelihood)
+        && Float.floatToIntBits(interestRate) == Float.floatToIntBits(loan.interestRate)
+        && stateCode == loan.stateCode;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(loanId, amountCents, defaultLikelihood, interestRate, stateCode);
   }
 
   @Override
@@ -60,6 +119,6 @@ public class Loan {
         String.valueOf(loanId),
         String.valueOf(defaultLikelihood),
         String.valueOf(interestRate),
-        String.valueOf(state)).toString();
+        getState()).toString();
   }
 }
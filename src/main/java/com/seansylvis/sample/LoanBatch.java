@@ -0,0 +1,106 @@
+package com.seansylvis.sample;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Columnar batch of loans, holding each loan attribute in its own primitive array rather than as separate
+ * {@link Loan} objects. States are stored as {@link StateCodes}. Bulk loops over a batch run over contiguous memory
+ * without allocating per loan.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanBatch {
+
+  private int[] amountCents;
+  private float[] defaultLikelihoods;
+  private float[] interestRates;
+  private int[] loanIds;
+  private int size;
+  private short[] stateCodes;
+
+  public LoanBatch(int capacity) {
+    this.amountCents = new int[capacity];
+    this.defaultLikelihoods = new float[capacity];
+    this.interestRates = new float[capacity];
+    this.loanIds = new int[capacity];
+    this.stateCodes = new short[capacity];
+  }
+
+  /**
+   * Reads all remaining loans from the given reader into a new batch.
+   */
+  public static LoanBatch read(LoanReader reader) throws IOException {
+    LoanBatch batch = new LoanBatch(1024);
+    Loan loan;
+    while ((loan = reader.next()) != null) {
+      batch.add(loan);
+    }
+    return batch;
+  }
+
+  public void add(Loan loan) {
+    add(loan.getLoanId(), loan.getAmountCents(), loan.getDefaultLikelihood(), loan.getInterestRate(),
+        loan.getStateCode());
+  }
+
+  public void add(int loanId, int amountCents, float defaultLikelihood, float interestRate, int stateCode) {
+    if (size == loanIds.length) {
+      grow();
+    }
+    this.amountCents[size] = amountCents;
+    this.defaultLikelihoods[size] = defaultLikelihood;
+    this.interestRates[size] = interestRate;
+    this.loanIds[size] = loanId;
+    this.stateCodes[size] = (short) stateCode;
+    size++;
+  }
+
+  /**
+   * Removes all loans, keeping the capacity for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  public int getAmountCents(int index) {
+    return amountCents[index];
+  }
+
+  public float getDefaultLikelihood(int index) {
+    return defaultLikelihoods[index];
+  }
+
+  public float getInterestRate(int index) {
+    return interestRates[index];
+  }
+
+  /**
+   * @return the loan at the given index as a {@link Loan} object
+   */
+  public Loan getLoan(int index) {
+    return new Loan(loanIds[index], amountCents[index], defaultLikelihoods[index], interestRates[index],
+        stateCodes[index]);
+  }
+
+  public int getLoanId(int index) {
+    return loanIds[index];
+  }
+
+  public int getStateCode(int index) {
+    return stateCodes[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private void grow() {
+    int capacity = Math.max(16, loanIds.length + (loanIds.length >> 1));
+    amountCents = Arrays.copyOf(amountCents, capacity);
+    defaultLikelihoods = Arrays.copyOf(defaultLikelihoods, capacity);
+    interestRates = Arrays.copyOf(interestRates, capacity);
+    loanIds = Arrays.copyOf(loanIds, capacity);
+    stateCodes = Arrays.copyOf(stateCodes, capacity);
+  }
+}
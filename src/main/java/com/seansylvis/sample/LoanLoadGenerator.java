@@ -0,0 +1,193 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Throwables;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for a {@link LoanServer}, which replays loans over a number of concurrent connections and reports
+ * the latency of decisions as seen by clients and the rate at which they are made. Each connection sends a request,
+ * waits for its response and only then sends the next, so latency is that of a single decision round trip.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanLoadGenerator {
+
+  private final InetSocketAddress address;
+  private final byte[][] requests;
+
+  /**
+   * @param address the address of the server
+   * @param loans the loans to request decisions for, replayed from the start if more requests are made than loans
+   */
+  public LoanLoadGenerator(InetSocketAddress address, List<Loan> loans) {
+    if (loans.isEmpty()) {
+      throw new IllegalArgumentException("no loans to request");
+    }
+    this.address = address;
+    this.requests = new byte[loans.size()][];
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = (LoanServer.formatRequest(loans.get(i)) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  /**
+   * Makes the given number of requests in all, spread evenly over the given number of concurrent connections.
+   */
+  public Report run(final int connections, final int requestCount) throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(connections);
+    try {
+      final CountDownLatch started = new CountDownLatch(1);
+      List<Future<long[]>> results = new ArrayList<>(connections);
+      for (int i = 0; i < connections; i++) {
+        final int connection = i;
+        results.add(executor.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            return request(connection, connections, requestCount, started);
+          }
+        }));
+      }
+
+      long start = System.nanoTime();
+      started.countDown();
+      List<long[]> latencies = new ArrayList<>(connections);
+      for (Future<long[]> result : results) {
+        latencies.add(result.get());
+      }
+      return new Report(latencies, System.nanoTime() - start);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes every request whose number modulo the number of connections is the given connection, over a connection of
+   * its own.
+   *
+   * @return the latency of each request, in nanoseconds
+   */
+  private long[] request(int connection, int connections, int requestCount, CountDownLatch started)
+      throws IOException, InterruptedException {
+    long[] latencies = new long[(requestCount - connection + connections - 1) / connections];
+    try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+      socket.setTcpNoDelay(true);
+      OutputStream output = socket.getOutputStream();
+      BufferedReader input = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      started.await();
+
+      int request = connection;
+      for (int i = 0; i < latencies.length; i++, request += connections) {
+        long start = System.nanoTime();
+        output.write(requests[request % requests.length]);
+        output.flush();
+        String response = input.readLine();
+        latencies[i] = System.nanoTime() - start;
+        if (response == null) {
+          throw new IOException("server closed the connection");
+        }
+        if (response.startsWith("error,")) {
+          throw new IOException("server rejected request: " + response);
+        }
+      }
+    }
+    return latencies;
+  }
+
+  /**
+   * Decision latencies and throughput of a run.
+   */
+  public static class Report {
+
+    private final long[] latencies;
+    private final long elapsedNanos;
+
+    Report(List<long[]> connectionLatencies, long elapsedNanos) {
+      int requests = 0;
+      for (long[] latencies : connectionLatencies) {
+        requests += latencies.length;
+      }
+      this.latencies = new long[requests];
+      int offset = 0;
+      for (long[] latencies : connectionLatencies) {
+        System.arraycopy(latencies, 0, this.latencies, offset, latencies.length);
+        offset += latencies.length;
+      }
+      Arrays.sort(this.latencies);
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getRequests() {
+      return latencies.length;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    public double getRequestsPerSecond() {
+      return latencies.length * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the latency, in nanoseconds, that the given fraction of requests completed within
+     */
+    public long getPercentileNanos(double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(percentile * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(rank, latencies.length - 1))];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d requests in %d ms (%.0f requests/s), latency p50 %d us, p99 %d us, max %d us",
+          latencies.length, elapsedNanos / 1000000, getRequestsPerSecond(), getPercentileNanos(0.5) / 1000,
+          getPercentileNanos(0.99) / 1000, getPercentileNanos(1.0) / 1000);
+    }
+  }
+
+  /**
+   * Usage: {@code LoanLoadGenerator <port> <input-directory> [connections] [requests]}, replaying the loans of
+   * {@code loans.csv} in the input directory against a server on the loopback address.
+   */
+  public static void main(String[] args) throws Exception {
+    int port = Integer.parseInt(args[0]);
+    int connections = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+    List<Loan> loans = new ArrayList<>();
+    try (LoanReader loanReader = new MappedLoanReader(new File(args[1], "loans.csv"))) {
+      Loan loan;
+      while ((loan = loanReader.next()) != null) {
+        loans.add(loan);
+      }
+    }
+    int requests = args.length > 3 ? Integer.parseInt(args[3]) : loans.size();
+
+    LoanLoadGenerator loadGenerator = new LoanLoadGenerator(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), loans);
+    System.out.println(loadGenerator.run(connections, requests));
+  }
+}
@@ -1,43 +1,164 @@
 package com.seansylvis.sample;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
- * Application entry-point for {@link LoanProcessor}, which reads in input files and outputs results.
+ * Application entry-point for {@link LoanProcessor}, which reads in input files and outputs results. Closing it stops
+ * the threads that load inputs, once a run is done with them.
  *
  * @author Sean Sylvis (ssylvis@gmail.com)
  */
-public class LoanMain {
+public class LoanMain implements Closeable {
 
   // input files
   private static final String BANKS = "banks.csv";
   private static final String COVENANTS = "covenants.csv";
   private static final String FACILITIES = "facilities.csv";
   private static final String LOANS = "loans.csv";
+  private static final String LOAN_BOOK = "loans.bin";
 
-  // output files
-  private static final String ASSIGNMENTS = "assignments.csv";
-  private static final String YIELDS = "yields.csv";
+  // input files reloaded when watched, and how long to wait for changes to them to settle
+  private static final Set<String> CONFIGURATION_FILES = ImmutableSet.of(BANKS, COVENANTS, FACILITIES);
+  private static final long RELOAD_DELAY_MILLIS = 200;
+
+  // batch assignment
+  private static final int EXACT_WINDOW_LIMIT = 12;
+  private static final long MAX_SEARCH_NODES = 1000000;
+
+  // output files, besides those of the output sink
+  private static final String CHECKPOINT = "checkpoint.bin";
+  private static final String JOURNAL = "assignments.journal";
+
+  // decisions journaled between fsyncs
+  private static final int JOURNAL_GROUP_SIZE = 4096;
+
+  // results per batch handed to the output thread, and batches queued for it
+  private static final int OUTPUT_BATCH_SIZE = 4096;
+  private static final int OUTPUT_QUEUE_CAPACITY = 16;
+
+  // name of the scenario simulating the facilities as loaded
+  private static final String BASELINE = "baseline";
+
+  // streaming
+  private static final int QUEUE_CAPACITY = 4096;
 
-  private final List<Facility> facilities = new ArrayList<>();
   private final LoanProcessor loanProcessor = new LoanProcessor();
-  private final List<Loan> loans = new ArrayList<>();
+  private final StartupTimings startupTimings = new StartupTimings();
+  private final ListeningExecutorService startupExecutor;
+  private final ListenableFuture<List<Facility>> facilities;
+  private final File inputDirectory;
+  private final File loansFile;
+  private final File loanBookFile;
+  private boolean binaryLoans;
+  private boolean binaryOutput;
+  private int checkpointInterval;
+  private boolean configured;
+  private AssignmentJournal journal;
+  private boolean journaled;
+  private boolean mappedLoans;
+  private File outputDirectory = new File(".");
+  private boolean resume;
+  private boolean startupReported;
+
+  public LoanMain(String inputDirectory) {
+    this.inputDirectory = new File(inputDirectory);
+    this.startupExecutor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("startup-%d").setDaemon(true).build()));
+
+    // facilities load in the background, while options are set and loans are opened
+    facilities = loadFacilities(this.inputDirectory, startupExecutor, startupTimings);
+
+    // loan records are streamed from the file when run
+    loansFile = new File(inputDirectory, LOANS);
+    loanBookFile = new File(inputDirectory, LOAN_BOOK);
+  }
 
-  public LoanMain(String inputDirectory) throws IOException {
-    // parse banking records
+  /**
+   * Parses banks, facilities and covenants from the given input directory. The three files are parsed in parallel on
+   * the given executor, and facilities are bound to their banks, and covenants to their facilities and banks, once all
+   * three are parsed.
+   *
+   * @return the facilities, in order of their ids, with their covenants and those of their banks compiled
+   */
+  private static ListenableFuture<List<Facility>> loadFacilities(final File inputDirectory,
+      ListeningExecutorService executor, final StartupTimings timings) {
+    final ListenableFuture<Map<Integer, Bank>> banks = executor.submit(new Callable<Map<Integer, Bank>>() {
+      @Override
+      public Map<Integer, Bank> call() throws IOException {
+        Map<Integer, Bank> banks = parseBanks(inputDirectory);
+        timings.mark("banks");
+        return banks;
+      }
+    });
+    final ListenableFuture<List<FacilityRecord>> facilityRecords = executor.submit(
+        new Callable<List<FacilityRecord>>() {
+          @Override
+          public List<FacilityRecord> call() throws IOException {
+            List<FacilityRecord> facilityRecords = parseFacilities(inputDirectory);
+            timings.mark("facilities");
+            return facilityRecords;
+          }
+        });
+    final ListenableFuture<List<CovenantRecord>> covenantRecords = executor.submit(
+        new Callable<List<CovenantRecord>>() {
+          @Override
+          public List<CovenantRecord> call() throws IOException {
+            List<CovenantRecord> covenantRecords = parseCovenants(inputDirectory);
+            timings.mark("covenants");
+            return covenantRecords;
+          }
+        });
+
+    // waits for all three even if one fails, and fails with the first failure, so no parse outlives the load
+    return Futures.whenAllComplete(banks, facilityRecords, covenantRecords).call(new Callable<List<Facility>>() {
+      @Override
+      public List<Facility> call() throws Exception {
+        List<Facility> facilities = bind(Futures.getDone(banks), Futures.getDone(facilityRecords),
+            Futures.getDone(covenantRecords));
+        timings.mark("bound");
+        return facilities;
+      }
+    }, executor);
+  }
+
+  private static Map<Integer, Bank> parseBanks(File inputDirectory) throws IOException {
     Map<Integer, Bank> banksMap = new HashMap<>();
     try (FileReader fileReader = new FileReader(new File(inputDirectory, BANKS))) {
       CSVParser csvParser = createParser(fileReader, "id", "name");
@@ -47,9 +168,11 @@ public class LoanMain {
         banksMap.put(bankId, new Bank(bankId, name));
       }
     }
+    return banksMap;
+  }
 
-    // parse facility records
-    Map<Integer, Facility> facilitiesMap = new TreeMap<>();
+  private static List<FacilityRecord> parseFacilities(File inputDirectory) throws IOException {
+    List<FacilityRecord> facilityRecords = new ArrayList<>();
     try (FileReader fileReader = new FileReader(new File(inputDirectory, FACILITIES))) {
       CSVParser csvParser = createParser(fileReader, "amount", "interest_rate", "id", "bank_id");
       for (CSVRecord record : csvParser) {
@@ -57,93 +180,660 @@ public class LoanMain {
         int bankId = Integer.parseInt(record.get("bank_id"));
         int facilityId = Integer.parseInt(record.get("id"));
         float interestRate = Float.parseFloat(record.get("interest_rate"));
-        Facility facility = new Facility(facilityId, banksMap.get(bankId), interestRate,amountCents);
-
-        facilitiesMap.put(facilityId, facility);
+        facilityRecords.add(new FacilityRecord(facilityId, bankId, interestRate, amountCents));
       }
     }
-    // add sorted
-    facilities.addAll(facilitiesMap.values());
+    return facilityRecords;
+  }
 
-    // parse covenants records
+  private static List<CovenantRecord> parseCovenants(File inputDirectory) throws IOException {
+    List<CovenantRecord> covenantRecords = new ArrayList<>();
     try (FileReader fileReader = new FileReader(new File(inputDirectory, COVENANTS))) {
       CSVParser csvParser = createParser(fileReader, "facility_id", "max_default_likelihood", "bank_id",
           "banned_state");
       for (CSVRecord record : csvParser) {
         List<Covenant> covenants = createCovenants(record);
+        if (isRecordSet(record, "facility_id")) {
+          covenantRecords.add(new CovenantRecord(Integer.parseInt(record.get("facility_id")), true, covenants));
+        } else {
+          covenantRecords.add(new CovenantRecord(Integer.parseInt(record.get("bank_id")), false, covenants));
+        }
+      }
+    }
+    return covenantRecords;
+  }
+
+  /**
+   * Creates facilities from the given records, with the given banks and covenants.
+   *
+   * @throws IOException if a facility or covenant refers to a bank or facility that does not exist
+   */
+  private static List<Facility> bind(Map<Integer, Bank> banksMap, List<FacilityRecord> facilityRecords,
+      List<CovenantRecord> covenantRecords) throws IOException {
+    Map<Integer, Facility> facilitiesMap = new TreeMap<>();
+    for (FacilityRecord record : facilityRecords) {
+      Bank bank = banksMap.get(record.bankId);
+      if (bank == null) {
+        throw new IOException("facility " + record.facilityId + " has unknown bank " + record.bankId);
+      }
+      facilitiesMap.put(record.facilityId,
+          new Facility(record.facilityId, bank, record.interestRate, record.amountCents));
+    }
+
+    for (CovenantRecord record : covenantRecords) {
+      if (record.facility) {
+        Facility facility = facilitiesMap.get(record.targetId);
+        if (facility == null) {
+          throw new IOException("covenant for unknown facility " + record.targetId);
+        }
+        for (Covenant covenant : record.covenants) {
+          facility.addCovenant(covenant);
+        }
+      } else {
+        Bank bank = banksMap.get(record.targetId);
+        if (bank == null) {
+          throw new IOException("covenant for unknown bank " + record.targetId);
+        }
+        for (Covenant covenant : record.covenants) {
+          bank.addCovenant(covenant);
+        }
+      }
+    }
+
+    // fuse each facility's covenants with those of its bank now that all covenants are bound
+    List<Facility> facilities = new ArrayList<>(facilitiesMap.values());
+    for (Facility facility : facilities) {
+      facility.getCompiledCovenant();
+    }
+    return facilities;
+  }
+
+  /**
+   * Waits for facilities to finish loading and adds them to the loan processor, if not done already.
+   *
+   * @throws IOException if the facilities failed to load
+   */
+  public void awaitFacilities() throws IOException {
+    if (!configured) {
+      for (Facility facility : await(facilities)) {
+        loanProcessor.addFacility(facility);
+      }
+      configured = true;
+    }
+  }
+
+  /**
+   * Opens the loans with the given task, in parallel with loading facilities, and returns the reader once both are
+   * done. Decisions can start as soon as any remaining startup is done and reported with {@link #reportStartup()}.
+   */
+  private <T extends LoanReader> T openLoansForDecisions(final Callable<T> open) throws IOException {
+    ListenableFuture<T> loans = startupExecutor.submit(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        T loanReader = open.call();
+        startupTimings.mark("loans");
+        return loanReader;
+      }
+    });
+    try {
+      awaitFacilities();
+    } catch (IOException | RuntimeException e) {
+      closeWhenOpened(loans);
+      throw e;
+    }
+    return await(loans);
+  }
+
+  /**
+   * Opens the loans, in parallel with loading facilities, and reports startup timings once decisions can start.
+   */
+  private LoanReader openLoansForDecisions() throws IOException {
+    LoanReader loanReader = openLoansForDecisions(new Callable<LoanReader>() {
+      @Override
+      public LoanReader call() throws IOException {
+        return openLoans();
+      }
+    });
+    reportStartup();
+    return loanReader;
+  }
+
+  /**
+   * Opens the loans from the given offset as with {@link #openSeekableLoans(long)}, in parallel with loading
+   * facilities.
+   */
+  private SeekableLoanReader openSeekableLoansForDecisions(final long offset) throws IOException {
+    return openLoansForDecisions(new Callable<SeekableLoanReader>() {
+      @Override
+      public SeekableLoanReader call() throws IOException {
+        return openSeekableLoans(offset);
+      }
+    });
+  }
+
+  /**
+   * Prints how long each phase of startup took to complete, up to the start of decisions, measured from when
+   * facilities started loading, if asked to.
+   */
+  private void reportStartup() {
+    startupTimings.mark("decisions");
+    if (startupReported) {
+      System.out.println("startup: " + startupTimings);
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for input");
+    }
+  }
+
+  /**
+   * Closes the reader opened by the given task, whenever it is opened.
+   */
+  private static void closeWhenOpened(ListenableFuture<? extends LoanReader> loans) {
+    Futures.addCallback(loans, new FutureCallback<LoanReader>() {
+      @Override
+      public void onSuccess(LoanReader loanReader) {
+        try {
+          loanReader.close();
+        } catch (IOException e) {
+          // nothing more to do with loans that will not be read
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // nothing was opened
+      }
+    });
+  }
+
+  /**
+   * Streams over input loans and outputs results.
+   */
+  public void run() throws IOException {
+    if (checkpointInterval > 0 || resume) {
+      runWithCheckpoints();
+      return;
+    }
+
+    openJournal(0);
+    try (LoanReader loanReader = openLoansForDecisions();
+         OutputSink sink = openOutput(0, 0)) {
+      Loan loan;
+      while ((loan = loanReader.next()) != null) {
+        Facility facility = loanProcessor.process(loan);
+        printAssignment(sink, new Assignment(loan, facility));
+      }
+
+      writeYields(sink);
+    } finally {
+      closeJournal();
+    }
+  }
+
+  /**
+   * Streams over input loans and outputs results as with {@link #run()}, writing a checkpoint every
+   * {@link #checkpointInterval} loans and first resuming from the last checkpoint if asked to. Loans are read from a
+   * memory-mapped file, either CSV or a binary loan book, whose offsets locate the first loan after a checkpoint.
+   */
+  private void runWithCheckpoints() throws IOException {
+    File checkpointFile = new File(outputDirectory, CHECKPOINT);
+    Checkpoint checkpoint = null;
+    long inputOffset = -1;
+    long outputOffset = 0;
+    long loansProcessed = 0;
+    if (resume && checkpointFile.exists()) {
+      checkpoint = Checkpoint.read(checkpointFile);
+      inputOffset = checkpoint.getInputOffset();
+      outputOffset = checkpoint.getOutputOffset();
+      loansProcessed = checkpoint.getLoansProcessed();
+    }
+
+    openJournal(loansProcessed);
+    // any assignments written after the checkpoint are discarded, and written again below
+    try (SeekableLoanReader loanReader = openSeekableLoansForDecisions(inputOffset);
+         OutputSink sink = openOutput(outputOffset, loansProcessed)) {
+      if (checkpoint != null) {
+        checkpoint.restore(loanProcessor);
+      }
+      if (journal != null) {
+        // decisions journaled after the checkpoint are recovered rather than made again
+        long recovered = journal.recover(loansProcessed, loanProcessor, sink);
+        for (long i = 0; i < recovered; i++) {
+          if (loanReader.next() == null) {
+            throw new IOException("journal holds more decisions than there are loans");
+          }
+        }
+        loansProcessed += recovered;
+      }
+      reportStartup();
+
+      Loan loan;
+      while ((loan = loanReader.next()) != null) {
+        Facility facility = loanProcessor.process(loan);
+        printAssignment(sink, new Assignment(loan, facility));
+        if (checkpointInterval > 0 && ++loansProcessed % checkpointInterval == 0) {
+          long assignmentsLength = sink.getAssignmentsLength();
+          syncJournal();
+          Checkpoint.write(checkpointFile, loanProcessor, loanReader.getOffset(), assignmentsLength, loansProcessed);
+        }
+      }
+
+      writeYields(sink);
+    } finally {
+      closeJournal();
+    }
+  }
+
+  /**
+   * Streams over input loans and outputs results as with {@link #run()}, but with reading, deciding and writing loans
+   * running concurrently as stages connected by bounded queues.
+   */
+  public void runStreaming() throws IOException, InterruptedException {
+    openJournal(0);
+    try (LoanReader loanReader = openLoansForDecisions();
+         final OutputSink sink = openOutput(0, 0)) {
+      new StreamingLoanPipeline(QUEUE_CAPACITY).run(loanReader, loanProcessor,
+          new StreamingLoanPipeline.AssignmentWriter() {
+            @Override
+            public void write(Assignment assignment) throws IOException {
+              printAssignment(sink, assignment);
+            }
+          });
+
+      writeYields(sink);
+    } finally {
+      closeJournal();
+    }
+  }
+
+  /**
+   * Streams over input loans and outputs results as with {@link #run()}, reading loans in batches of the given size
+   * and finding each batch's eligible facilities in parallel on all cores, before funding its loans in input order.
+   */
+  public void runParallel(int batchSize) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool();
+    openJournal(0);
+    try (LoanReader loanReader = openLoansForDecisions();
+         OutputSink sink = openOutput(0, 0)) {
+      List<Loan> loans = new ArrayList<>(batchSize);
+      Loan loan;
+      do {
+        loans.clear();
+        while (loans.size() < batchSize && (loan = loanReader.next()) != null) {
+          loans.add(loan);
+        }
+
+        Facility[] facilities = loanProcessor.process(loans, pool);
+        for (int i = 0; i < facilities.length; i++) {
+          printAssignment(sink, new Assignment(loans.get(i), facilities[i]));
+        }
+      } while (loans.size() == batchSize);
+
+      writeYields(sink);
+    } finally {
+      pool.shutdown();
+      closeJournal();
+    }
+  }
+
+  /**
+   * Assigns input loans in windows of the given size so as to maximize the expected yield of each window, outputs
+   * results, and reports the yield improvement over processing loans one at a time.
+   */
+  public void runBatch(int windowSize) throws IOException {
+    BatchAssignmentSolver solver = new BatchAssignmentSolver(EXACT_WINDOW_LIMIT, MAX_SEARCH_NODES);
+    BatchLoanProcessor batchProcessor;
+
+    openJournal(0);
+    try (LoanReader loanReader = openLoansForDecisions();
+         OutputSink sink = openOutput(0, 0)) {
+      // the greedy processor copies the loan processor's facilities, so they must have loaded by now
+      batchProcessor = new BatchLoanProcessor(loanProcessor, solver, windowSize, Long.MAX_VALUE, TimeUnit.NANOSECONDS,
+          true);
+      Loan loan;
+      while ((loan = loanReader.next()) != null) {
+        printAssignments(sink, batchProcessor.submit(loan));
+      }
+      printAssignments(sink, batchProcessor.flush());
+
+      writeYields(sink);
+    } finally {
+      closeJournal();
+    }
+
+    System.out.println("expected yield: " + batchProcessor.getExpectedYield()
+        + ", greedy expected yield: " + batchProcessor.getGreedyExpectedYield()
+        + ", improvement: " + batchProcessor.getYieldImprovement());
+  }
+
+  /**
+   * Runs the loans through the what-if scenarios in the given file, as a {@link Simulation} on all cores, and prints a
+   * table comparing each facility's yield and funding rate between them. The facilities as loaded are always run first,
+   * as the baseline scenario.
+   *
+   * <p>The scenarios file has the columns {@code scenario,facility_id,bank_id,capacity_factor,max_default_likelihood,
+   * banned_state,lifted_state}, and each row overrides a facility, or else a bank, in the named scenario: scaling a
+   * facility's capacity by a factor, adding covenants as in {@code covenants.csv}, or lifting a ban on a state.
+   */
+  public void simulate(File scenariosFile) throws IOException, InterruptedException {
+    List<Scenario> scenarios = new ArrayList<>();
+    scenarios.add(new Scenario(BASELINE));
+    scenarios.addAll(loadScenarios(scenariosFile));
+
+    // facilities are loading in the background meanwhile
+    LoanBatch loans;
+    try (LoanReader loanReader = openLoans()) {
+      loans = LoanBatch.read(loanReader);
+    }
+    startupTimings.mark("loans");
+    Simulation simulation = new Simulation(await(facilities), loans);
+    reportStartup();
+    System.out.print(simulation.run(scenarios, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Parses what-if scenarios, in the order they are first named, from the given file.
+   */
+  private static List<Scenario> loadScenarios(File scenariosFile) throws IOException {
+    Map<String, Scenario> scenarios = new LinkedHashMap<>();
+    try (FileReader fileReader = new FileReader(scenariosFile)) {
+      CSVParser csvParser = createParser(fileReader, "scenario", "facility_id", "bank_id", "capacity_factor",
+          "max_default_likelihood", "banned_state", "lifted_state");
+      for (CSVRecord record : csvParser) {
+        String name = record.get("scenario");
+        Scenario scenario = scenarios.get(name);
+        if (scenario == null) {
+          scenario = new Scenario(name);
+          scenarios.put(name, scenario);
+        }
+        List<Covenant> covenants = createCovenants(record);
 
         if (isRecordSet(record, "facility_id")) {
           int facilityId = Integer.parseInt(record.get("facility_id"));
-          Facility facility = facilitiesMap.get(facilityId);
+          if (isRecordSet(record, "capacity_factor")) {
+            scenario.scaleCapacity(facilityId, Double.parseDouble(record.get("capacity_factor")));
+          }
           for (Covenant covenant : covenants) {
-            facility.addCovenant(covenant);
+            scenario.addFacilityCovenant(facilityId, covenant);
+          }
+          if (isRecordSet(record, "lifted_state")) {
+            scenario.liftFacilityBan(facilityId, record.get("lifted_state"));
           }
         } else {
           int bankId = Integer.parseInt(record.get("bank_id"));
-          Bank bank = banksMap.get(bankId);
           for (Covenant covenant : covenants) {
-            bank.addCovenant(covenant);
+            scenario.addBankCovenant(bankId, covenant);
+          }
+          if (isRecordSet(record, "lifted_state")) {
+            scenario.liftBankBan(bankId, record.get("lifted_state"));
           }
         }
       }
     }
+    return new ArrayList<>(scenarios.values());
+  }
 
-    // parse loan records to be processed (read into memory for convenience)
-    try (FileReader fileReader = new FileReader(new File(inputDirectory, LOANS))) {
-      CSVParser csvParser = createParser(fileReader, "interest_rate", "amount", "id", "default_likelihood", "state");
-      for (CSVRecord record : csvParser) {
-        int amountCents = Integer.parseInt(record.get("amount"));
-        int loanId = Integer.parseInt(record.get("id"));
-        float defaultLikelihood = Float.parseFloat(record.get("default_likelihood"));
-        float interestRate = Float.parseFloat(record.get("interest_rate"));
-        String state = record.get("state");
-        loans.add(new Loan(loanId, amountCents, defaultLikelihood, interestRate, state));
+  /**
+   * Keeps the loaded facilities resident and decides loans requested over a local socket on the given port, as a
+   * {@link LoanServer}, until the JVM is stopped.
+   */
+  public void serve(int port) throws IOException, InterruptedException {
+    awaitFacilities();
+    reportStartup();
+    final LoanServer server = new LoanServer(loanProcessor);
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          server.close();
+          System.out.println("decided " + server.getRequests() + " loans");
+        } catch (IOException e) {
+          System.err.println("failed to close server: " + e);
+        }
       }
+    }));
+
+    System.out.println("listening on port " + server.start(port));
+    server.join();
+  }
+
+  private void printAssignment(OutputSink sink, Assignment assignment) throws IOException {
+    Loan loan = assignment.getLoan();
+    int facilityId = assignment.isFunded() ? assignment.getFacility().getFacilityId() : OutputSink.NO_FACILITY;
+
+    // journal the decision, which the output then holds back until the journal has made it durable
+    if (journal != null) {
+      journal.append(loan, facilityId);
     }
+    sink.writeAssignment(loan.getLoanId(), facilityId);
+  }
 
-    // add all facilities to loan processor
-    for (Facility facility : facilitiesMap.values()) {
-      loanProcessor.addFacility(facility);
+  private void printAssignments(OutputSink sink, List<Assignment> assignments) throws IOException {
+    for (Assignment assignment : assignments) {
+      printAssignment(sink, assignment);
     }
   }
 
   /**
-   * Streams over input loans and outputs results.
+   * Opens the output sink of the configured format in the output directory, keeping only the given length of
+   * assignments already written, for the given number of decisions. Results are written by a separate thread, which
+   * waits for the journal, if decisions are journaled, to make each assignment durable before writing it.
    */
-  public void run() throws IOException {
-    try (FileWriter fileWriter = new FileWriter(ASSIGNMENTS)) {
-      CSVPrinter csvPrinter = new CSVPrinter(fileWriter, createFormat("loan_id", "facility_id"));
+  private OutputSink openOutput(long assignmentsLength, long decisions) throws IOException {
+    OutputSink sink = binaryOutput
+        ? new BinaryOutputSink(outputDirectory, assignmentsLength)
+        : new CsvOutputSink(outputDirectory, assignmentsLength);
+    if (journal != null) {
+      sink = new JournaledOutputSink(sink, journal, decisions);
+    }
+    return new AsyncOutputSink(sink, OUTPUT_BATCH_SIZE, OUTPUT_QUEUE_CAPACITY);
+  }
 
-      for (Loan loan : loans) {
-        Facility facility = loanProcessor.process(loan);
-        if (facility == null) {
-          csvPrinter.printRecord(loan.getLoanId(), "");
-        } else {
-          csvPrinter.printRecord(loan.getLoanId(), facility.getFacilityId());
-        }
+  /**
+   * Opens the journal, if decisions are journaled, which must hold at least the given number of decisions already
+   * made. Only a resumed run may open a journal holding decisions, since a new run would otherwise destroy them.
+   */
+  private void openJournal(long decisions) throws IOException {
+    if (journaled) {
+      File file = new File(outputDirectory, JOURNAL);
+      journal = new AssignmentJournal(file, JOURNAL_GROUP_SIZE);
+      long held = journal.getAppended();
+      if (!resume && held > 0) {
+        closeJournal();
+        throw new IOException(file + " holds " + held + " decisions; resume with --resume or remove it");
+      }
+      if (held < decisions) {
+        closeJournal();
+        throw new IOException(file + " holds " + held + " decisions but the checkpoint covers " + decisions);
       }
     }
+  }
 
-    try (FileWriter fileWriter = new FileWriter(YIELDS)) {
-      CSVPrinter csvPrinter = new CSVPrinter(fileWriter, createFormat("facility_id", "expected_yield"));
+  private void syncJournal() throws IOException {
+    if (journal != null) {
+      journal.sync(journal.getAppended());
+    }
+  }
+
+  private void closeJournal() throws IOException {
+    if (journal != null) {
+      try {
+        journal.close();
+      } finally {
+        journal = null;
+      }
+    }
+  }
+
+  private void writeYields(OutputSink sink) throws IOException {
+    // in order of facility id, covering the facilities as last reloaded
+    Map<Integer, FacilityLedger> ledgers = new TreeMap<>();
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      ledgers.put(ledger.getFacility().getFacilityId(), ledger);
+    }
+    for (FacilityLedger ledger : ledgers.values()) {
+      sink.writeYield(ledger.getFacility().getFacilityId(), ledger.getExpectedYield());
+    }
+  }
+
+  /**
+   * Reparses banks, facilities and covenants from the input directory and reloads them into the loan processor, which
+   * keeps processing loans meanwhile. Facilities that remain keep what they have funded.
+   */
+  public void reload() throws IOException {
+    loanProcessor.reload(await(loadFacilities(inputDirectory, startupExecutor, new StartupTimings())));
+  }
+
+  /**
+   * Watches the input directory on a daemon thread, reloading banks, facilities and covenants with {@link #reload()}
+   * whenever their files change. Input that fails to parse, e.g. because it is still being written, is reported and
+   * leaves the current facilities in place until the next change.
+   */
+  public void watchInputs() throws IOException {
+    final WatchService watchService = FileSystems.getDefault().newWatchService();
+    inputDirectory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
 
-      for (Facility facility : facilities) {
-        List<Loan> fundedLoans = loanProcessor.getFundedLoans(facility);
-        int expectedYield = facility.computeExpectedYield(fundedLoans);
-        csvPrinter.printRecord(facility.getFacilityId(), expectedYield);
+    Thread watcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            WatchKey key = watchService.take();
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+              changed |= CONFIGURATION_FILES.contains(String.valueOf(event.context()));
+            }
+            key.reset();
+            if (changed) {
+              // let a burst of writes to the files settle before reparsing them
+              Thread.sleep(RELOAD_DELAY_MILLIS);
+              reloadQuietly();
+            }
+          }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+          // stop watching
+        }
       }
+    }, "input-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  private void reloadQuietly() {
+    try {
+      reload();
+      System.out.println("reloaded facilities from " + inputDirectory);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("failed to reload facilities, keeping current ones: " + e);
+    }
+  }
+
+  /**
+   * Records the decisions of the loan processor and exposes them as MBeans on the platform MBean server, where they
+   * can be watched with any JMX console while loans are processed.
+   */
+  public void enableMetrics() throws JMException {
+    LoanProcessorMetrics metrics = new LoanProcessorMetrics();
+    loanProcessor.setMetrics(metrics);
+    metrics.register(ManagementFactory.getPlatformMBeanServer(), "LoanMain");
+  }
+
+  /**
+   * Sets the number of loans between checkpoints written by {@link #run()}, or zero to write none.
+   */
+  public void setCheckpointInterval(int checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * Sets whether each decision is written to a durable {@link AssignmentJournal} ahead of any other output. Journal
+   * records are fsynced in groups, whenever the output thread is about to write assignments that are not durable
+   * yet or {@link #JOURNAL_GROUP_SIZE} decisions are buffered.
+   */
+  public void setJournaled(boolean journaled) {
+    this.journaled = journaled;
+  }
+
+  /**
+   * Sets whether {@link #run()} resumes from the last checkpoint, if there is one, rather than starting over. Decisions
+   * journaled after the checkpoint, if decisions are journaled, are recovered from the journal.
+   */
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
+  /**
+   * Sets whether how long each phase of startup took is printed once decisions start.
+   */
+  public void setStartupReported(boolean startupReported) {
+    this.startupReported = startupReported;
+  }
+
+  /**
+   * Sets the directory that results, checkpoints and the journal are written to, the working directory by default.
+   */
+  public void setOutputDirectory(File outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  /**
+   * Sets whether results are written as fixed-width binary records by a {@link BinaryOutputSink} rather than as CSV.
+   */
+  public void setBinaryOutput(boolean binaryOutput) {
+    this.binaryOutput = binaryOutput;
+  }
+
+  /**
+   * Sets whether loans are parsed directly from a memory-mapped file rather than through the generic CSV parser.
+   */
+  public void setMappedLoans(boolean mappedLoans) {
+    this.mappedLoans = mappedLoans;
+  }
+
+  /**
+   * Sets whether loans are read from {@code loans.bin}, a binary loan book converted from {@code loans.csv} by
+   * {@link BinaryLoanWriter}, rather than from {@code loans.csv} itself.
+   */
+  public void setBinaryLoans(boolean binaryLoans) {
+    this.binaryLoans = binaryLoans;
+  }
+
+  private LoanReader openLoans() throws IOException {
+    if (binaryLoans) {
+      return new BinaryLoanReader(loanBookFile);
     }
+    return mappedLoans ? new MappedLoanReader(loansFile) : new CsvLoanReader(loansFile);
   }
 
-  private CSVFormat createFormat(String... header) {
+  /**
+   * Opens a memory-mapped reader over the loans from the given offset, or from the first loan if negative.
+   */
+  private SeekableLoanReader openSeekableLoans(long offset) throws IOException {
+    if (binaryLoans) {
+      return offset < 0 ? new BinaryLoanReader(loanBookFile) : new BinaryLoanReader(loanBookFile, offset);
+    }
+    return offset < 0 ? new MappedLoanReader(loansFile) : new MappedLoanReader(loansFile, offset);
+  }
+
+  private static CSVFormat createFormat(String... header) {
     return CSVFormat.DEFAULT.withHeader(header);
   }
 
-  private CSVParser createParser(FileReader fileReader, String... header) throws IOException {
+  private static CSVParser createParser(FileReader fileReader, String... header) throws IOException {
     return createFormat(header).withSkipHeaderRecord().parse(fileReader);
   }
 
-  private List<Covenant> createCovenants(CSVRecord record) {
+  private static List<Covenant> createCovenants(CSVRecord record) {
     List<Covenant> covenants = new ArrayList<>();
     if (isRecordSet(record, "max_default_likelihood")) {
       float maxDefaultLikelihood = Float.parseFloat(record.get("max_default_likelihood"));
@@ -156,11 +846,137 @@ public class LoanMain {
     return covenants;
   }
 
-  private boolean isRecordSet(CSVRecord record, String name) {
+  private static boolean isRecordSet(CSVRecord record, String name) {
     return record.isSet(name) && !record.get(name).isEmpty();
   }
 
+  /**
+   * Stops the threads that load inputs, letting any loading already started finish. Facilities cannot be reloaded
+   * afterwards.
+   */
+  @Override
+  public void close() {
+    startupExecutor.shutdown();
+  }
+
+  /**
+   * Usage: {@code LoanMain <input-directory> [--output=<directory>] [--format=csv|binary] [--mapped | --binary-loans]
+   * [--metrics] [--startup-timings] [--journal] [--reload] [--batch=<window-size> | --streaming |
+   * --parallel=<batch-size> | --serve=<port> | --simulate=<scenarios-file> | [--checkpoint=<loans>] [--resume]]}
+   */
   public static void main(String[] args) throws Exception {
-    new LoanMain(args[0]).run();
+    try (LoanMain loanMain = new LoanMain(args[0])) {
+      String mode = "";
+      boolean checkpoints = false;
+      for (int i = 1; i < args.length; i++) {
+        if (args[i].startsWith("--output=")) {
+          loanMain.setOutputDirectory(new File(args[i].substring("--output=".length())));
+        } else if (args[i].equals("--format=binary")) {
+          loanMain.setBinaryOutput(true);
+        } else if (args[i].equals("--format=csv")) {
+          loanMain.setBinaryOutput(false);
+        } else if (args[i].equals("--binary-loans")) {
+          loanMain.setBinaryLoans(true);
+        } else if (args[i].equals("--mapped")) {
+          loanMain.setMappedLoans(true);
+        } else if (args[i].equals("--metrics")) {
+          loanMain.enableMetrics();
+        } else if (args[i].equals("--startup-timings")) {
+          loanMain.setStartupReported(true);
+        } else if (args[i].equals("--reload")) {
+          loanMain.watchInputs();
+        } else if (args[i].equals("--journal")) {
+          loanMain.setJournaled(true);
+        } else if (args[i].startsWith("--checkpoint=")) {
+          loanMain.setCheckpointInterval(Integer.parseInt(args[i].substring("--checkpoint=".length())));
+          checkpoints = true;
+        } else if (args[i].equals("--resume")) {
+          loanMain.setResume(true);
+          checkpoints = true;
+        } else {
+          mode = args[i];
+        }
+      }
+
+      if (checkpoints && !mode.isEmpty()) {
+        throw new IllegalArgumentException("checkpoints are not supported with " + mode);
+      }
+      if (mode.startsWith("--batch=")) {
+        loanMain.runBatch(Integer.parseInt(mode.substring("--batch=".length())));
+      } else if (mode.equals("--streaming")) {
+        loanMain.runStreaming();
+      } else if (mode.startsWith("--parallel=")) {
+        loanMain.runParallel(Integer.parseInt(mode.substring("--parallel=".length())));
+      } else if (mode.startsWith("--serve=")) {
+        loanMain.serve(Integer.parseInt(mode.substring("--serve=".length())));
+      } else if (mode.startsWith("--simulate=")) {
+        loanMain.simulate(new File(mode.substring("--simulate=".length())));
+      } else if (mode.isEmpty()) {
+        loanMain.run();
+      } else {
+        throw new IllegalArgumentException("unknown option: " + mode);
+      }
+    }
+  }
+
+  /**
+   * Facility as parsed, before it is bound to its bank.
+   */
+  private static final class FacilityRecord {
+
+    final int facilityId;
+    final int bankId;
+    final float interestRate;
+    final int amountCents;
+
+    FacilityRecord(int facilityId, int bankId, float interestRate, int amountCents) {
+      this.facilityId = facilityId;
+      this.bankId = bankId;
+      this.interestRate = interestRate;
+      this.amountCents = amountCents;
+    }
+  }
+
+  /**
+   * Covenants as parsed, before they are bound to the facility or bank they apply to.
+   */
+  private static final class CovenantRecord {
+
+    final int targetId;
+    // whether the target is a facility rather than a bank
+    final boolean facility;
+    final List<Covenant> covenants;
+
+    CovenantRecord(int targetId, boolean facility, List<Covenant> covenants) {
+      this.targetId = targetId;
+      this.facility = facility;
+      this.covenants = covenants;
+    }
+  }
+
+  /**
+   * Times at which phases of startup complete, in order of completion, measured from when facilities started loading.
+   */
+  private static final class StartupTimings {
+
+    private final long start = System.nanoTime();
+    // guarded by this
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    synchronized void mark(String phase) {
+      phases.put(phase, System.nanoTime() - start);
+    }
+
+    @Override
+    public synchronized String toString() {
+      StringBuilder timings = new StringBuilder();
+      for (Map.Entry<String, Long> phase : phases.entrySet()) {
+        if (timings.length() > 0) {
+          timings.append(", ");
+        }
+        timings.append(String.format("%s %.1f ms", phase.getKey(), phase.getValue() / 1e6));
+      }
+      return timings.toString();
+    }
   }
 }
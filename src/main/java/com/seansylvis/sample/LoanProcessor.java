@@ -1,43 +1,125 @@
 package com.seansylvis.sample;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Simple streaming loan processor containing a set of {@link Facility}s. Loans are processed via a call to
  * {@link #process(Loan)}, which might result in a facility assigned to the loan.
  *
+ * <p>Loans are processed by one thread at a time, but another thread may {@link #reload(Collection)} the facilities
+ * at any time without waiting for, or holding up, the processing thread.
+ *
  * @author Sean Sylvis (ssylvis@gmail.com)
  */
 public class LoanProcessor {
 
-  private final SortedSet<Facility> facilities;
-  private final Multimap<Facility, Loan> fundedLoans;
+  private static final int NO_FACILITY = -1;
+
+  // loans whose eligibility is evaluated by a single fork-join task
+  private static final int ELIGIBILITY_CHUNK = 256;
+
+  // every ledger ever added, by facility id, so that a facility removed and later reloaded keeps what it funded
+  private final Map<Integer, FacilityLedger> ledgersById = new HashMap<>();
+  private final AtomicReference<Configuration> pendingConfiguration = new AtomicReference<>();
+  private SortedMap<Facility, FacilityLedger> ledgers;
+  private FacilityIndex index;
+  private FacilityLedger[] rankedLedgers;
+  private LoanProcessorMetrics metrics;
 
   public LoanProcessor() {
-    this.facilities = new TreeSet<>(new FacilityInterestRate());
-    this.fundedLoans = HashMultimap.create();
+    this.ledgers = new TreeMap<>(new FacilityInterestRate());
   }
 
   /**
    * Adds a facility to this loan processor.
    */
   public void addFacility(Facility facility) {
-    facilities.add(facility);
+    if (!ledgers.containsKey(facility)) {
+      FacilityLedger ledger = new FacilityLedger(facility);
+      ledgers.put(facility, ledger);
+      ledgersById.put(facility.getFacilityId(), ledger);
+      index = null;
+      if (metrics != null) {
+        metrics.addFacility(ledger);
+      }
+    }
+  }
+
+  /**
+   * Replaces all facilities of this loan processor with the given ones, e.g. as reparsed with changed covenants,
+   * taking effect from the next loan processed. A facility with the same id as one already added keeps the loans it
+   * has funded, and so its committed capacity, but is subject to its reloaded amount, interest rate and covenants from
+   * then on.
+   *
+   * <p>Safe to call from any thread while loans are being processed. The reloaded facilities are ranked and indexed
+   * on the calling thread, and the result is published for the processing thread to install before the next loan, so
+   * no loan ever sees some facilities reloaded and others not. The given facilities and their covenants must not be
+   * changed afterwards.
+   */
+  public void reload(Collection<Facility> facilities) {
+    TreeSet<Facility> ranked = new TreeSet<>(new FacilityInterestRate());
+    Set<Integer> facilityIds = new HashSet<>();
+    for (Facility facility : facilities) {
+      if (!facilityIds.add(facility.getFacilityId())) {
+        throw new IllegalArgumentException("duplicate facility " + facility.getFacilityId());
+      }
+      ranked.add(facility);
+    }
+    // compiles every facility's covenants, so that the processing thread does not have to
+    pendingConfiguration.set(new Configuration(ranked, new FacilityIndex(ranked)));
+  }
+
+  /**
+   * Sets the metrics recording each decision of this loan processor, or null to stop recording. Without metrics,
+   * processing a loan does no recording work at all.
+   */
+  public void setMetrics(LoanProcessorMetrics metrics) {
+    if (metrics != null) {
+      for (FacilityLedger ledger : ledgers.values()) {
+        metrics.addFacility(ledger);
+      }
+    }
+    this.metrics = metrics;
+  }
+
+  public LoanProcessorMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the ledgers of all facilities, in the order facilities are offered loans
+   */
+  public Collection<FacilityLedger> getLedgers() {
+    return Collections.unmodifiableCollection(ledgers.values());
   }
 
   /**
    * @return the list of loans being funded by the given facility
    */
   public List<Loan> getFundedLoans(Facility facility) {
-    return new ArrayList<>(fundedLoans.get(facility));
+    FacilityLedger ledger = ledgers.get(facility);
+    return ledger == null ? Collections.<Loan>emptyList() : ledger.getFundedLoans();
+  }
+
+  /**
+   * @return the ledger of the given facility, or null if the facility was not added to this processor
+   */
+  public FacilityLedger getLedger(Facility facility) {
+    return ledgers.get(facility);
   }
 
   /**
@@ -45,49 +127,307 @@ public class LoanProcessor {
    * 1. whose {@link Covenant}s, or banking partner covenants, do not disallow the loan
    * 2. has sufficient funds available
    *
+   * <p>Deciding a loan allocates nothing, with or without metrics, once the index is built; only funding it grows the
+   * facility's record of funded loans.
+   *
    * @param loan the loan to process
    * @return the {@link Facility} assigned to the loan, or null if none is available
    */
   public Facility process(Loan loan) {
-    // iterate over available facilities, starting with one with the lowest interest rate
-    for (Facility facility : facilities) {
-      if (canAssignLoan(facility, loan)) {
-        fundedLoans.put(facility, loan);
-        return facility;
+    installReloadedConfiguration();
+    LoanProcessorMetrics metrics = this.metrics;
+    long start = metrics == null ? 0 : metrics.startTimer();
+    FacilityIndex index = getIndex();
+    int rank = selectFacility(index, loan.getAmountCents(), loan.getDefaultLikelihood(), loan.getStateCode(), loan,
+        null, 0);
+    if (metrics != null) {
+      metrics.record(index, rankedLedgers, rank, loan.getAmountCents(), loan.getDefaultLikelihood(),
+          loan.getStateCode(), start);
+    }
+    if (rank == NO_FACILITY) {
+      return null;
+    }
+
+    FacilityLedger ledger = rankedLedgers[rank];
+    ledger.fund(loan);
+    return ledger.getFacility();
+  }
+
+  /**
+   * Processes each loan of the given batch in order, as with {@link #process(Loan)}, reading loan attributes directly
+   * from the batch's columns. A {@link Loan} object is only created for loans that are checked against covenants that
+   * cannot be evaluated on the columns alone.
+   *
+   * @param loans the loans to process
+   * @return for each loan, the {@link Facility} assigned to it, or null if none is available
+   */
+  public Facility[] process(LoanBatch loans) {
+    installReloadedConfiguration();
+    Facility[] facilities = new Facility[loans.size()];
+    LoanProcessorMetrics metrics = this.metrics;
+    for (int i = 0; i < loans.size(); i++) {
+      long start = metrics == null ? 0 : metrics.startTimer();
+      FacilityIndex index = getIndex();
+      int stateCode = loans.getStateCode(i);
+      int rank = selectFacility(index, loans.getAmountCents(i), loans.getDefaultLikelihood(i), stateCode, null, loans,
+          i);
+      if (metrics != null) {
+        metrics.record(index, rankedLedgers, rank, loans.getAmountCents(i), loans.getDefaultLikelihood(i), stateCode,
+            start);
+      }
+      if (rank != NO_FACILITY) {
+        FacilityLedger ledger = rankedLedgers[rank];
+        ledger.fund(loans.getLoanId(i), loans.getAmountCents(i), loans.getDefaultLikelihood(i),
+            loans.getInterestRate(i), stateCode);
+        facilities[i] = ledger.getFacility();
+      }
+    }
+    return facilities;
+  }
+
+  /**
+   * Processes each loan of the given list in order, with the same result as calling {@link #process(Loan)} on each
+   * in turn, but with each loan's eligible facilities found in parallel on the given pool. Which facilities a loan is
+   * eligible for depends only on their covenants, so it can be evaluated for all loans at once; only funding depends
+   * on the loans before it, so the calling thread then funds each loan in order from the cheapest eligible facility
+   * with sufficient funds available.
+   *
+   * <p>Covenants must not be added while the loans are processed.
+   *
+   * @param loans the loans to process
+   * @param pool the pool to find eligible facilities on
+   * @return for each loan, the {@link Facility} assigned to it, or null if none is available
+   */
+  public Facility[] process(List<Loan> loans, ForkJoinPool pool) {
+    installReloadedConfiguration();
+    FacilityIndex index = getCurrentIndex();
+    int words = (index.size() + 63) >>> 6;
+    Loan[] loanArray = loans.toArray(new Loan[loans.size()]);
+    long[] residualMask = new long[words];
+    for (int rank = 0; rank < index.size(); rank++) {
+      if (index.getCompiledCovenant(rank).hasResidualCovenants()) {
+        residualMask[rank >>> 6] |= 1L << rank;
       }
     }
+    long[] eligible = new long[loanArray.length * words];
+    pool.invoke(new EligibilityTask(index, residualMask, loanArray, eligible, words, 0, loanArray.length));
 
-    // No acceptable facility found, so return null
-    return null;
+    Facility[] facilities = new Facility[loanArray.length];
+    LoanProcessorMetrics metrics = this.metrics;
+    for (int i = 0; i < loanArray.length; i++) {
+      long start = metrics == null ? 0 : metrics.startTimer();
+      Loan loan = loanArray[i];
+      int rank = selectEligibleFacility(eligible, i * words, words, loan.getAmountCents());
+      if (metrics != null) {
+        metrics.record(index, rankedLedgers, rank, loan.getAmountCents(), loan.getDefaultLikelihood(),
+            loan.getStateCode(), start);
+      }
+      if (rank != NO_FACILITY) {
+        FacilityLedger ledger = rankedLedgers[rank];
+        ledger.fund(loan);
+        facilities[i] = ledger.getFacility();
+      }
+    }
+    return facilities;
   }
 
   @Override
   public String toString() {
-    return facilities.toString();
+    return ledgers.keySet().toString();
+  }
+
+  /**
+   * Finds the facility with the lowest interest rate that allows the given loan and has sufficient funds available.
+   * The loan is given either as a {@link Loan} or as an index into a {@link LoanBatch}.
+   *
+   * @return the rank of the selected facility in the index, or {@link #NO_FACILITY} if none is available
+   */
+  private int selectFacility(FacilityIndex index, int amountCents, float defaultLikelihood, int stateCode, Loan loan,
+      LoanBatch loans, int loanIndex) {
+    // iterate over facilities whose covenants may allow the loan, starting with the one with the lowest interest rate
+    long[] stateMask = index.getStateMask(stateCode);
+    long[] likelihoodMask = index.getLikelihoodMask(defaultLikelihood);
+    for (int word = 0; word < stateMask.length; word++) {
+      long candidates = stateMask[word] & likelihoodMask[word];
+      while (candidates != 0) {
+        int rank = (word << 6) + Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+
+        FacilityLedger ledger = rankedLedgers[rank];
+        CompiledCovenant covenant = ledger.getFacility().getCompiledCovenant();
+        if (covenant != index.getCompiledCovenant(rank)) {
+          // covenants were added since the index was built, so rebuild it before the next loan
+          this.index = null;
+        }
+
+        // if the facility allows the loan AND has available funds, then assign the loan
+        if (ledger.canFund(amountCents) && covenant.accepts(defaultLikelihood, stateCode)) {
+          if (!covenant.hasResidualCovenants()) {
+            return rank;
+          }
+          if (loan == null) {
+            loan = loans.getLoan(loanIndex);
+          }
+          if (covenant.applyResidualCovenants(loan)) {
+            return rank;
+          }
+        }
+      }
+    }
+
+    // No acceptable facility found
+    return NO_FACILITY;
+  }
+
+  /**
+   * Finds the facility with the lowest interest rate among those whose bits are set in the given bitset, and that has
+   * sufficient funds available.
+   *
+   * @return the rank of the selected facility, or {@link #NO_FACILITY} if none is available
+   */
+  private int selectEligibleFacility(long[] eligible, int offset, int words, int amountCents) {
+    for (int word = 0; word < words; word++) {
+      long candidates = eligible[offset + word];
+      while (candidates != 0) {
+        int rank = (word << 6) + Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+        if (rankedLedgers[rank].canFund(amountCents)) {
+          return rank;
+        }
+      }
+    }
+    return NO_FACILITY;
+  }
+
+  /**
+   * Installs the facilities last passed to {@link #reload(Collection)}, if they are not installed yet. Only called by
+   * the processing thread, between loans.
+   */
+  private void installReloadedConfiguration() {
+    if (pendingConfiguration.get() == null) {
+      return;
+    }
+    Configuration configuration = pendingConfiguration.getAndSet(null);
+
+    SortedMap<Facility, FacilityLedger> reloaded = new TreeMap<>(new FacilityInterestRate());
+    FacilityLedger[] ranked = new FacilityLedger[configuration.facilities.size()];
+    int rank = 0;
+    for (Facility facility : configuration.facilities) {
+      FacilityLedger ledger = ledgersById.get(facility.getFacilityId());
+      if (ledger == null) {
+        ledger = new FacilityLedger(facility);
+        ledgersById.put(facility.getFacilityId(), ledger);
+      } else {
+        ledger.setFacility(facility);
+      }
+      reloaded.put(facility, ledger);
+      ranked[rank++] = ledger;
+      if (metrics != null) {
+        metrics.addFacility(ledger);
+      }
+    }
+    ledgers = reloaded;
+    rankedLedgers = ranked;
+    index = configuration.index;
   }
 
-  private boolean canAssignLoan(Facility facility, Loan loan) {
-    // if the facility allows the loan AND has available funds, then assign the loan
-    if (!facility.apply(loan)) {
-      return false;
+  /**
+   * @return the index, rebuilt first if any covenants were added since it was built
+   */
+  private FacilityIndex getCurrentIndex() {
+    FacilityIndex index = getIndex();
+    for (int rank = 0; rank < index.size(); rank++) {
+      if (rankedLedgers[rank].getFacility().getCompiledCovenant() != index.getCompiledCovenant(rank)) {
+        this.index = null;
+        return getIndex();
+      }
     }
+    return index;
+  }
 
-    int projectedSum = sumOfLoans(fundedLoans.get(facility)) + loan.getAmountCents();
-    return projectedSum <= facility.getTotalAmountCents();
+  private FacilityIndex getIndex() {
+    if (index == null) {
+      index = new FacilityIndex(ledgers.keySet());
+      rankedLedgers = ledgers.values().toArray(new FacilityLedger[ledgers.size()]);
+    }
+    return index;
   }
 
-  private int sumOfLoans(Collection<Loan> loans) {
-    int sum = 0;
-    for (Loan loan : loans) {
-      sum += loan.getAmountCents();
+  /**
+   * Facilities passed to {@link #reload(Collection)}, ranked in the order they should be offered loans, along with
+   * their index.
+   */
+  private static final class Configuration {
+
+    final SortedSet<Facility> facilities;
+    final FacilityIndex index;
+
+    Configuration(SortedSet<Facility> facilities, FacilityIndex index) {
+      this.facilities = facilities;
+      this.index = index;
+    }
+  }
+
+  /**
+   * Finds the facilities whose covenants accept each loan in a range, as a bitset over facility ranks per loan,
+   * splitting the range in half until it is small enough to evaluate directly.
+   */
+  private static class EligibilityTask extends RecursiveAction {
+
+    private final FacilityIndex index;
+    private final long[] residualMask;
+    private final Loan[] loans;
+    private final long[] eligible;
+    private final int words;
+    private final int from;
+    private final int to;
+
+    EligibilityTask(FacilityIndex index, long[] residualMask, Loan[] loans, long[] eligible, int words, int from,
+        int to) {
+      this.index = index;
+      this.residualMask = residualMask;
+      this.loans = loans;
+      this.eligible = eligible;
+      this.words = words;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > ELIGIBILITY_CHUNK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new EligibilityTask(index, residualMask, loans, eligible, words, from, mid),
+            new EligibilityTask(index, residualMask, loans, eligible, words, mid, to));
+        return;
+      }
+
+      for (int i = from; i < to; i++) {
+        Loan loan = loans[i];
+        long[] stateMask = index.getStateMask(loan.getStateCode());
+        long[] likelihoodMask = index.getLikelihoodMask(loan.getDefaultLikelihood());
+        for (int word = 0; word < words; word++) {
+          long accepted = stateMask[word] & likelihoodMask[word];
+          // the masks of a current index are exact for fused covenants, leaving only residual covenants to apply
+          long residual = accepted & residualMask[word];
+          while (residual != 0) {
+            long bit = Long.lowestOneBit(residual);
+            residual ^= bit;
+            int rank = (word << 6) + Long.numberOfTrailingZeros(bit);
+            if (!index.getCompiledCovenant(rank).applyResidualCovenants(loan)) {
+              accepted ^= bit;
+            }
+          }
+          eligible[i * words + word] = accepted;
+        }
+      }
     }
-    return sum;
   }
 
   /**
    * Sorts facilities by their interest rate, using the facilityId as a trivial tie-breaker.
    */
-  private static class FacilityInterestRate implements Comparator<Facility> {
+  static class FacilityInterestRate implements Comparator<Facility> {
 
     @Override
     public int compare(Facility facility1, Facility facility2) {
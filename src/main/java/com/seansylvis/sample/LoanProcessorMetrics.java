@@ -0,0 +1,297 @@
+package com.seansylvis.sample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the decisions made by a {@link LoanProcessor}, exposed as MBeans. Enable them with
+ * {@link LoanProcessor#setMetrics(LoanProcessorMetrics)}; a loan processor without metrics does not record anything.
+ *
+ * <p>A facility rejects a loan when it is cheaper than the facility that funded the loan, or when no facility funded
+ * it, but did not take the loan. Rejections are counted per facility and reason: insufficient capacity, a banned
+ * state, the default likelihood, or any other covenant. Facilities ruled out by the {@link FacilityIndex} are
+ * attributed from the index bitsets without being scanned, so recording a loan only visits the facilities the loan
+ * processor scanned plus those that rejected the loan.
+ *
+ * <p>Metrics are recorded by the loan processor's thread only, so counters are updated with ordered stores rather than
+ * atomic instructions, and may be read from any thread. Latency is sampled from one in every
+ * {@value #LATENCY_SAMPLE_INTERVAL} loans.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanProcessorMetrics implements LoanProcessorMetricsMBean {
+
+  private static final String DOMAIN = "com.seansylvis.sample";
+  // latency is timed for one in this many loans, since reading the clock costs as much as a simple decision
+  private static final int LATENCY_SAMPLE_INTERVAL = 16;
+  private static final long NOT_TIMED = Long.MIN_VALUE;
+
+  // by facility id, which outlives any one version of a facility that is reloaded
+  private final Map<Integer, FacilityMetrics> facilityMetrics = new HashMap<>();
+  private final AtomicLong loansFunded = new AtomicLong();
+  private final AtomicLong loansProcessed = new AtomicLong();
+  private final AtomicLongArray rejections = new AtomicLongArray(Rejection.values().length);
+  private final Histogram facilitiesScanned = new Histogram();
+  private final Histogram latencyNanos = new Histogram();
+
+  // registration, guarded by this
+  private final List<ObjectName> registeredNames = new ArrayList<>();
+  private MBeanServer server;
+  private String name;
+
+  // facility metrics by rank in the last index seen, only used by the loan processor thread
+  private FacilityIndex rankedIndex;
+  private FacilityMetrics[] rankedMetrics;
+
+  /**
+   * Registers these metrics and those of each facility with the given server, under the given name. Facilities added
+   * to the loan processor afterwards are registered as they are added.
+   */
+  public synchronized void register(MBeanServer server, String name) throws JMException {
+    unregister();
+    this.server = server;
+    this.name = name;
+    register(this, new ObjectName(DOMAIN + ":type=LoanProcessor,name=" + ObjectName.quote(name)));
+    for (FacilityMetrics metrics : facilityMetrics.values()) {
+      register(metrics);
+    }
+  }
+
+  /**
+   * Unregisters all MBeans registered by {@link #register(MBeanServer, String)}.
+   */
+  public synchronized void unregister() throws JMException {
+    for (ObjectName objectName : registeredNames) {
+      server.unregisterMBean(objectName);
+    }
+    registeredNames.clear();
+    server = null;
+  }
+
+  /**
+   * @return the metrics of the given facility, or null if it was not added to the loan processor
+   */
+  public synchronized FacilityMetrics getFacilityMetrics(Facility facility) {
+    return facilityMetrics.get(facility.getFacilityId());
+  }
+
+  /**
+   * @return the number of loans rejected by any facility for the given reason
+   */
+  public long getRejections(Rejection rejection) {
+    return rejections.get(rejection.ordinal());
+  }
+
+  @Override
+  public long getLoansProcessed() {
+    return loansProcessed.get();
+  }
+
+  @Override
+  public long getLoansFunded() {
+    return loansFunded.get();
+  }
+
+  @Override
+  public long getLoansUnfunded() {
+    return loansProcessed.get() - loansFunded.get();
+  }
+
+  @Override
+  public long getCapacityRejections() {
+    return getRejections(Rejection.CAPACITY);
+  }
+
+  @Override
+  public long getBannedStateRejections() {
+    return getRejections(Rejection.BANNED_STATE);
+  }
+
+  @Override
+  public long getDefaultLikelihoodRejections() {
+    return getRejections(Rejection.DEFAULT_LIKELIHOOD);
+  }
+
+  @Override
+  public long getOtherCovenantRejections() {
+    return getRejections(Rejection.OTHER_COVENANT);
+  }
+
+  @Override
+  public long getFacilitiesScanned() {
+    return facilitiesScanned.getSum();
+  }
+
+  @Override
+  public double getMeanFacilitiesScannedPerLoan() {
+    return facilitiesScanned.getMean();
+  }
+
+  @Override
+  public long getMaxFacilitiesScannedPerLoan() {
+    return facilitiesScanned.getMax();
+  }
+
+  @Override
+  public double getMeanLatencyNanos() {
+    return latencyNanos.getMean();
+  }
+
+  @Override
+  public long getLatencyP50Nanos() {
+    return latencyNanos.getPercentile(50);
+  }
+
+  @Override
+  public long getLatencyP99Nanos() {
+    return latencyNanos.getPercentile(99);
+  }
+
+  @Override
+  public long getMaxLatencyNanos() {
+    return latencyNanos.getMax();
+  }
+
+  /**
+   * Creates the metrics of a facility added to the loan processor, registering them if these metrics are registered.
+   */
+  synchronized void addFacility(FacilityLedger ledger) {
+    Facility facility = ledger.getFacility();
+    if (!facilityMetrics.containsKey(facility.getFacilityId())) {
+      FacilityMetrics metrics = new FacilityMetrics(ledger);
+      facilityMetrics.put(facility.getFacilityId(), metrics);
+      if (server != null) {
+        try {
+          register(metrics);
+        } catch (JMException e) {
+          throw new IllegalStateException("cannot register metrics of facility " + facility, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the time at which the loan processor started deciding a loan, to be passed to {@link #record}, if this
+   * loan's latency is sampled
+   */
+  long startTimer() {
+    return loansProcessed.get() % LATENCY_SAMPLE_INTERVAL == 0 ? System.nanoTime() : NOT_TIMED;
+  }
+
+  /**
+   * Records the decision for a single loan, before the selected facility, if any, is funded.
+   *
+   * @param selectedRank the rank of the selected facility, or negative if the loan was not funded
+   * @param start the value returned by {@link #startTimer()} when the loan processor started deciding the loan
+   */
+  void record(FacilityIndex index, FacilityLedger[] rankedLedgers, int selectedRank, int amountCents,
+      float defaultLikelihood, int stateCode, long start) {
+    FacilityMetrics[] metrics = getRankedMetrics(index);
+    long[] stateMask = index.getStateMask(stateCode);
+    long[] likelihoodMask = index.getLikelihoodMask(defaultLikelihood);
+
+    // every facility ranked ahead of the selected one rejected the loan
+    int rejectedRanks = selectedRank < 0 ? index.size() : selectedRank;
+    long scanned = selectedRank < 0 ? 0 : 1;
+    for (int word = 0; word << 6 < rejectedRanks; word++) {
+      long rejected = word < rejectedRanks >>> 6 ? -1L : (1L << (rejectedRanks & 63)) - 1;
+      long candidates = stateMask[word] & likelihoodMask[word] & rejected;
+      scanned += Long.bitCount(candidates);
+      reject(metrics, word, ~stateMask[word] & rejected, Rejection.BANNED_STATE);
+      reject(metrics, word, stateMask[word] & ~likelihoodMask[word] & rejected, Rejection.DEFAULT_LIKELIHOOD);
+
+      // candidates were scanned, so find out why each one turned the loan down, in the order they were checked
+      while (candidates != 0) {
+        int rank = (word << 6) + Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+
+        FacilityLedger ledger = rankedLedgers[rank];
+        CompiledCovenant covenant = ledger.getFacility().getCompiledCovenant();
+        Rejection rejection;
+        if (!ledger.canFund(amountCents)) {
+          rejection = Rejection.CAPACITY;
+        } else if (covenant.bansState(stateCode)) {
+          rejection = Rejection.BANNED_STATE;
+        } else if (!covenant.accepts(defaultLikelihood, stateCode)) {
+          rejection = Rejection.DEFAULT_LIKELIHOOD;
+        } else {
+          rejection = Rejection.OTHER_COVENANT;
+        }
+        increment(rejections, rejection.ordinal(), 1);
+        metrics[rank].reject(rejection);
+      }
+    }
+
+    loansProcessed.lazySet(loansProcessed.get() + 1);
+    if (selectedRank >= 0) {
+      loansFunded.lazySet(loansFunded.get() + 1);
+    }
+    facilitiesScanned.record(scanned);
+    if (start != NOT_TIMED) {
+      latencyNanos.record(System.nanoTime() - start);
+    }
+  }
+
+  private void reject(FacilityMetrics[] metrics, int word, long ranks, Rejection rejection) {
+    if (ranks != 0) {
+      increment(rejections, rejection.ordinal(), Long.bitCount(ranks));
+      while (ranks != 0) {
+        metrics[(word << 6) + Long.numberOfTrailingZeros(ranks)].reject(rejection);
+        ranks &= ranks - 1;
+      }
+    }
+  }
+
+  /**
+   * Adds to a counter that only the loan processor thread writes, publishing it with an ordered store rather than an
+   * atomic read-modify-write.
+   */
+  private static void increment(AtomicLongArray counters, int i, long delta) {
+    counters.lazySet(i, counters.get(i) + delta);
+  }
+
+  private FacilityMetrics[] getRankedMetrics(FacilityIndex index) {
+    if (index != rankedIndex) {
+      FacilityMetrics[] metrics = new FacilityMetrics[index.size()];
+      synchronized (this) {
+        for (int rank = 0; rank < metrics.length; rank++) {
+          metrics[rank] = facilityMetrics.get(index.getFacility(rank).getFacilityId());
+        }
+      }
+      rankedMetrics = metrics;
+      rankedIndex = index;
+    }
+    return rankedMetrics;
+  }
+
+  private void register(FacilityMetrics metrics) throws JMException {
+    register(metrics, new ObjectName(DOMAIN + ":type=Facility,processor=" + ObjectName.quote(name)
+        + ",id=" + metrics.getFacilityId()));
+  }
+
+  private void register(Object mbean, ObjectName objectName) throws JMException {
+    server.registerMBean(mbean, objectName);
+    registeredNames.add(objectName);
+  }
+
+  /**
+   * Reason a facility turned down a loan.
+   */
+  public enum Rejection {
+    /** the facility did not have enough remaining capacity */
+    CAPACITY,
+    /** a {@link BannedStateCovenant} of the facility or its bank bans the loan's state */
+    BANNED_STATE,
+    /** a {@link DefaultLikelihoodCovenant} of the facility or its bank caps the loan's default likelihood */
+    DEFAULT_LIKELIHOOD,
+    /** any other covenant of the facility or its bank disallowed the loan */
+    OTHER_COVENANT
+  }
+}
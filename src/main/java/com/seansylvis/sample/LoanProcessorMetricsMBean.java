@@ -0,0 +1,37 @@
+package com.seansylvis.sample;
+
+/**
+ * Management interface of {@link LoanProcessorMetrics}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public interface LoanProcessorMetricsMBean {
+
+  long getLoansProcessed();
+
+  long getLoansFunded();
+
+  long getLoansUnfunded();
+
+  long getCapacityRejections();
+
+  long getBannedStateRejections();
+
+  long getDefaultLikelihoodRejections();
+
+  long getOtherCovenantRejections();
+
+  long getFacilitiesScanned();
+
+  double getMeanFacilitiesScannedPerLoan();
+
+  long getMaxFacilitiesScannedPerLoan();
+
+  double getMeanLatencyNanos();
+
+  long getLatencyP50Nanos();
+
+  long getLatencyP99Nanos();
+
+  long getMaxLatencyNanos();
+}
@@ -0,0 +1,17 @@
+package com.seansylvis.sample;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential source of {@link Loan}s to be processed, read one at a time so that input of any size can be streamed.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public interface LoanReader extends Closeable {
+
+  /**
+   * @return the next loan, or null if there are no more loans
+   */
+  Loan next() throws IOException;
+}
@@ -0,0 +1,314 @@
+package com.seansylvis.sample;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-running server deciding loans in real time against a resident {@link LoanProcessor}, so that facilities and
+ * covenants are loaded once rather than on every run. Clients connect over a local socket and exchange lines of text:
+ *
+ * <ul>
+ *   <li>each request is a loan in the columns of {@code loans.csv}, i.e.
+ *   {@code interest_rate,amount,id,default_likelihood,state}</li>
+ *   <li>each response is {@code loan_id,facility_id}, as in {@code assignments.csv}, with an empty facility id if the
+ *   loan is not funded, or {@code error,<message>} if the request is not a valid loan or cannot be decided</li>
+ * </ul>
+ *
+ * <p>Requests never register new states with {@link StateCodes}, so clients cannot exhaust its codes: a state that has
+ * no code yet, which no covenant can therefore ban, is decided and funded as {@link #UNKNOWN_STATE}.
+ *
+ * <p>Responses are sent in request order, and a client may pipeline requests. Each connection is served by its own
+ * thread: a virtual thread when the JVM supports them, or otherwise a thread from a cached pool. Decisions are
+ * serialized by a lock, which a virtual thread can wait on without pinning its carrier thread, so funding is exactly
+ * as if the loans had been processed one at a time in the order they were decided.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanServer implements Closeable {
+
+  // the state that requested loans from states without a code are funded as
+  static final String UNKNOWN_STATE = "?";
+  private static final int UNKNOWN_STATE_CODE = StateCodes.of(UNKNOWN_STATE);
+  private static final int MAX_STATE_LENGTH = 64;
+  // backoff between failed accepts, e.g. while out of file descriptors, doubling up to the maximum
+  private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+  private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+  private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+  private final ExecutorService connectionExecutor;
+  private final Lock lock = new ReentrantLock();
+  private final LoanProcessor loanProcessor;
+  private final AtomicLong requests = new AtomicLong();
+  private Thread acceptor;
+  private volatile boolean closed;
+  private ServerSocket serverSocket;
+
+  public LoanServer(LoanProcessor loanProcessor) {
+    this.loanProcessor = loanProcessor;
+    this.connectionExecutor = newConnectionExecutor();
+  }
+
+  /**
+   * Starts accepting connections on the given port of the loopback address, or on any free port if zero.
+   *
+   * @return the port accepting connections
+   */
+  public synchronized int start(int port) throws IOException {
+    if (serverSocket != null) {
+      throw new IllegalStateException("server already started");
+    }
+    serverSocket = new ServerSocket();
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+    acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        accept();
+      }
+    }, "loan-server-acceptor");
+    acceptor.start();
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Blocks until the server is closed.
+   */
+  public void join() throws InterruptedException {
+    Thread acceptor;
+    synchronized (this) {
+      acceptor = this.acceptor;
+    }
+    if (acceptor != null) {
+      acceptor.join();
+    }
+  }
+
+  /**
+   * Waits up to the given time for all connections to finish after the server is closed.
+   *
+   * @return whether all connections finished
+   */
+  public boolean awaitConnections(long timeout, TimeUnit unit) throws InterruptedException {
+    return connectionExecutor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Decides the given loan, as {@link LoanProcessor#process(Loan)} does, serialized with all other decisions.
+   */
+  public Facility decide(Loan loan) {
+    lock.lock();
+    try {
+      requests.incrementAndGet();
+      return loanProcessor.process(loan);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of loans decided since the server started
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Stops accepting connections and closes all open connections.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    try {
+      synchronized (this) {
+        if (serverSocket != null) {
+          serverSocket.close();
+        }
+      }
+      for (Socket connection : connections) {
+        connection.close();
+      }
+    } finally {
+      connectionExecutor.shutdown();
+    }
+  }
+
+  private void accept() {
+    long backoffMillis = 0;
+    while (!closed) {
+      final Socket connection;
+      try {
+        connection = serverSocket.accept();
+      } catch (IOException e) {
+        if (closed || serverSocket.isClosed()) {
+          break;
+        }
+        // report only the first of a run of failures, and back off rather than spin while they last
+        if (backoffMillis == 0) {
+          System.err.println("failed to accept connection, backing off: " + e);
+        }
+        backoffMillis = Math.min(Math.max(2 * backoffMillis, MIN_ACCEPT_BACKOFF_MILLIS), MAX_ACCEPT_BACKOFF_MILLIS);
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        continue;
+      }
+      backoffMillis = 0;
+
+      connections.add(connection);
+      if (closed) {
+        // closed while accepting, possibly after closing all known connections
+        closeQuietly(connection);
+        break;
+      }
+      try {
+        connectionExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            serve(connection);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        closeQuietly(connection);
+      }
+    }
+  }
+
+  /**
+   * Answers requests on the given connection until the client closes it.
+   */
+  private void serve(Socket connection) {
+    try {
+      connection.setTcpNoDelay(true);
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+      Writer writer = new BufferedWriter(
+          new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.US_ASCII));
+
+      String request;
+      while ((request = reader.readLine()) != null) {
+        writer.write(respond(request));
+        writer.write('\n');
+        // only flush once the client has no further requests pipelined
+        if (!reader.ready()) {
+          writer.flush();
+        }
+      }
+      writer.flush();
+    } catch (IOException e) {
+      if (!closed) {
+        System.err.println("connection failed: " + e);
+      }
+    } finally {
+      connections.remove(connection);
+      closeQuietly(connection);
+    }
+  }
+
+  private String respond(String request) {
+    Loan loan;
+    try {
+      loan = parseRequest(request);
+    } catch (IllegalArgumentException e) {
+      return "error," + e.getMessage();
+    }
+
+    Facility facility;
+    try {
+      facility = decide(loan);
+    } catch (RuntimeException e) {
+      return "error," + e;
+    }
+    return facility == null ? loan.getLoanId() + "," : loan.getLoanId() + "," + facility.getFacilityId();
+  }
+
+  /**
+   * Parses a loan in the columns of {@code loans.csv}, with a state that has no {@link StateCodes} code yet parsed as
+   * {@link #UNKNOWN_STATE}.
+   *
+   * @throws IllegalArgumentException if the request is not a valid loan
+   */
+  static Loan parseRequest(String request) {
+    String[] columns = request.split(",", -1);
+    if (columns.length != 5) {
+      throw new IllegalArgumentException("expected interest_rate,amount,id,default_likelihood,state");
+    }
+    float interestRate;
+    int amountCents;
+    int loanId;
+    float defaultLikelihood;
+    try {
+      interestRate = Float.parseFloat(columns[0]);
+      amountCents = Integer.parseInt(columns[1]);
+      loanId = Integer.parseInt(columns[2]);
+      defaultLikelihood = Float.parseFloat(columns[3]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed number in " + request);
+    }
+    if (amountCents <= 0) {
+      throw new IllegalArgumentException("amount must be positive: " + amountCents);
+    }
+    String state = columns[4];
+    if (state.isEmpty() || state.length() > MAX_STATE_LENGTH) {
+      throw new IllegalArgumentException("state must be 1 to " + MAX_STATE_LENGTH + " characters");
+    }
+    int stateCode = StateCodes.find(state);
+    return new Loan(loanId, amountCents, defaultLikelihood, interestRate,
+        stateCode == StateCodes.NONE ? UNKNOWN_STATE_CODE : stateCode);
+  }
+
+  /**
+   * Formats a loan as a request, the inverse of {@link #parseRequest(String)}.
+   */
+  static String formatRequest(Loan loan) {
+    return loan.getInterestRate() + "," + loan.getAmountCents() + "," + loan.getLoanId() + ","
+        + loan.getDefaultLikelihood() + "," + loan.getState();
+  }
+
+  /**
+   * @return an executor starting a virtual thread per task if the JVM supports them, or else a cached thread pool
+   */
+  static ExecutorService newConnectionExecutor() {
+    // looked up reflectively, since virtual threads are newer than the Java version this project targets
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      // not supported, or a preview feature that is not enabled
+      return Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setNameFormat("loan-server-%d").setDaemon(true).build());
+    }
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // nothing more to do with a failed connection
+    }
+  }
+}
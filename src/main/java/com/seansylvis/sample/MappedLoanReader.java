@@ -0,0 +1,434 @@
+package com.seansylvis.sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link LoanReader} specialized for the loans CSV schema, which parses records directly from a memory-mapped file
+ * rather than going through intermediate records and Strings. Numbers are parsed straight from the mapped bytes, and
+ * states are interned as {@link StateCodes} without creating a String per loan. Columns may appear in any order, as
+ * given by the header, but fields must not be quoted.
+ *
+ * <p>A file can be {@link #split(File, int)} at line boundaries into readers over disjoint ranges, so that several
+ * threads can parse it in parallel.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class MappedLoanReader implements SeekableLoanReader {
+
+  // column kinds
+  private static final int AMOUNT = 0;
+  private static final int DEFAULT_LIKELIHOOD = 1;
+  private static final int ID = 2;
+  private static final int INTEREST_RATE = 3;
+  private static final int STATE = 4;
+  private static final int IGNORED = 5;
+  private static final String[] COLUMNS = {"amount", "default_likelihood", "id", "interest_rate", "state"};
+
+  // powers of ten that are exactly representable as doubles
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+      1e20, 1e21, 1e22};
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  // bits of a double mantissa below float precision, and their value when the double is halfway between two floats
+  private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+  private static final long FLOAT_MIDPOINT_BITS = 1L << 28;
+
+  // state of loans in files without a state column
+  private static final int NO_STATE = StateCodes.of("");
+
+  // mapped windows are remapped before a record could straddle their end
+  private static final int MAX_LINE_LENGTH = 4096;
+  private static final long WINDOW_SIZE = 1L << 30;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final int[] columnKinds;
+  private final long end;
+  // state code plus one by the bytes of states of up to two bytes, or zero if not yet seen
+  private final int[] stateCodes;
+
+  private MappedByteBuffer buffer;
+  private long bufferOffset;
+
+  // fields of the last record parsed
+  private int amountCents;
+  private float defaultLikelihood;
+  private int loanId;
+  private float interestRate;
+  private int stateCode;
+
+  /**
+   * Opens a reader over all loans in the given file.
+   */
+  public MappedLoanReader(File file) throws IOException {
+    this(file, -1, -1, null);
+  }
+
+  /**
+   * Opens a reader over the loans in the given file starting at the given byte offset, which must be the start of a
+   * record as returned by {@link #getOffset()}.
+   */
+  public MappedLoanReader(File file, long offset) throws IOException {
+    this(file, offset, -1, null);
+  }
+
+  private MappedLoanReader(File file, long start, long end, int[] columnKinds) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.end = end < 0 ? channel.size() : end;
+    this.stateCodes = new int[1 << 16];
+
+    try {
+      map(0);
+      this.columnKinds = columnKinds == null ? parseHeader() : columnKinds;
+      if (start >= 0) {
+        map(start);
+      }
+    } catch (IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Splits the given file at line boundaries into readers over roughly equal, disjoint ranges of loans, in file order.
+   */
+  public static List<MappedLoanReader> split(File file, int parts) throws IOException {
+    List<MappedLoanReader> readers = new ArrayList<>(parts);
+    try (MappedLoanReader reader = new MappedLoanReader(file)) {
+      long start = reader.getOffset();
+      long size = reader.end;
+      for (int i = 1; i <= parts; i++) {
+        long end = i == parts ? size : reader.findLineStart(start + (size - start) / (parts - i + 1));
+        if (end > start) {
+          readers.add(new MappedLoanReader(file, start, end, reader.columnKinds));
+        }
+        start = end;
+      }
+    }
+    return readers;
+  }
+
+  @Override
+  public long getOffset() {
+    return bufferOffset + buffer.position();
+  }
+
+  @Override
+  public Loan next() throws IOException {
+    if (!parseRecord()) {
+      return null;
+    }
+    return new Loan(loanId, amountCents, defaultLikelihood, interestRate, stateCode);
+  }
+
+  /**
+   * Reads up to the given number of loans directly into the given batch, without creating {@link Loan} objects.
+   *
+   * @return the number of loans read, which is less than the maximum only once there are no more loans
+   */
+  public int read(LoanBatch batch, int maxLoans) throws IOException {
+    int count = 0;
+    while (count < maxLoans && parseRecord()) {
+      batch.add(loanId, amountCents, defaultLikelihood, interestRate, stateCode);
+      count++;
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Parses the next record into the fields of this reader.
+   *
+   * @return false if there are no more records
+   */
+  private boolean parseRecord() throws IOException {
+    // skip blank lines
+    while (getOffset() < end && isLineEnd(peek())) {
+      advance();
+    }
+    if (getOffset() >= end) {
+      return false;
+    }
+
+    amountCents = 0;
+    defaultLikelihood = 0.0f;
+    loanId = 0;
+    interestRate = 0.0f;
+    stateCode = NO_STATE;
+    for (int kind : columnKinds) {
+      switch (kind) {
+        case AMOUNT:
+          amountCents = parseInt();
+          break;
+        case DEFAULT_LIKELIHOOD:
+          defaultLikelihood = parseFloat();
+          break;
+        case ID:
+          loanId = parseInt();
+          break;
+        case INTEREST_RATE:
+          interestRate = parseFloat();
+          break;
+        case STATE:
+          stateCode = parseState();
+          break;
+        default:
+          skipField();
+      }
+      // consume the field delimiter
+      if (peek() == ',') {
+        advance();
+      }
+    }
+    skipLine();
+    return true;
+  }
+
+  private int parseInt() throws IOException {
+    boolean negative = false;
+    if (peek() == '-') {
+      negative = true;
+      advance();
+    }
+    long value = 0;
+    int digits = 0;
+    byte b;
+    while ((b = peek()) >= '0' && b <= '9') {
+      value = value * 10 + (b - '0');
+      if (++digits > 10) {
+        throw malformed("integer out of range");
+      }
+      advance();
+    }
+    // the field must end with its digits, as for Integer.parseInt, rather than a trailing suffix being ignored
+    if (digits == 0 || !isFieldEnd(b)) {
+      throw malformed("expected an integer");
+    }
+    value = negative ? -value : value;
+    if (value != (int) value) {
+      throw malformed("integer out of range");
+    }
+    return (int) value;
+  }
+
+  private float parseFloat() throws IOException {
+    long start = getOffset();
+    boolean negative = false;
+    if (peek() == '-') {
+      negative = true;
+      advance();
+    }
+    long mantissa = 0;
+    int scale = 0;
+    int digits = 0;
+    boolean fraction = false;
+    byte b;
+    while (!isFieldEnd(b = peek())) {
+      if (b >= '0' && b <= '9') {
+        if (mantissa > MAX_EXACT_MANTISSA / 10) {
+          return parseFloatSlowly(start);
+        }
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+        if (fraction) {
+          scale++;
+        }
+      } else if (b == '.' && !fraction) {
+        fraction = true;
+      } else {
+        // exponents and other unusual forms are left to the JDK
+        return parseFloatSlowly(start);
+      }
+      advance();
+    }
+    if (digits == 0) {
+      throw malformed("expected a number");
+    }
+
+    // a mantissa and power of ten that are both exact doubles give a correctly rounded double quotient, which rounds
+    // correctly to a float unless it landed exactly halfway between two floats
+    if (mantissa > MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+      return parseFloatSlowly(start);
+    }
+    double value = mantissa / POWERS_OF_TEN[scale];
+    if ((Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS) == FLOAT_MIDPOINT_BITS) {
+      return parseFloatSlowly(start);
+    }
+    return (float) (negative ? -value : value);
+  }
+
+  private float parseFloatSlowly(long start) throws IOException {
+    seek(start);
+    StringBuilder builder = new StringBuilder();
+    byte b;
+    while (!isFieldEnd(b = peek())) {
+      builder.append((char) b);
+      advance();
+    }
+    try {
+      return Float.parseFloat(builder.toString());
+    } catch (NumberFormatException e) {
+      throw malformed("expected a number");
+    }
+  }
+
+  /**
+   * @return the {@link StateCodes} code of the state
+   */
+  private int parseState() throws IOException {
+    long start = getOffset();
+    int length = 0;
+    int key = 0;
+    byte b;
+    while (!isFieldEnd(b = peek())) {
+      if (b == '"') {
+        throw malformed("quoted fields are not supported");
+      }
+      key = (key << 8) | (b & 0xff);
+      length++;
+      advance();
+    }
+
+    // states of up to two bytes, as in all state codes, are only decoded the first time; a key of zero is only ever
+    // the empty state, a key below 256 a state of one byte, and any other key a state of two bytes
+    if (length <= 2) {
+      int code = stateCodes[key] - 1;
+      if (code < 0) {
+        code = StateCodes.of(decode(start, length));
+        stateCodes[key] = code + 1;
+      }
+      return code;
+    }
+    return StateCodes.of(decode(start, length));
+  }
+
+  private String decode(long start, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get((int) (start - bufferOffset) + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void skipField() throws IOException {
+    while (!isFieldEnd(peek())) {
+      advance();
+    }
+  }
+
+  private void skipLine() throws IOException {
+    while (peek() != '\n') {
+      advance();
+    }
+    if (getOffset() < end) {
+      advance();
+    }
+    if (buffer.remaining() < MAX_LINE_LENGTH && bufferOffset + buffer.limit() < end) {
+      map(getOffset());
+    }
+  }
+
+  private int[] parseHeader() throws IOException {
+    List<String> names = new ArrayList<>();
+    StringBuilder name = new StringBuilder();
+    while (peek() != '\n') {
+      byte b = peek();
+      if (b == ',') {
+        names.add(name.toString());
+        name.setLength(0);
+      } else if (b != '\r') {
+        name.append((char) b);
+      }
+      advance();
+    }
+    names.add(name.toString());
+    skipLine();
+
+    int[] kinds = new int[names.size()];
+    boolean[] found = new boolean[COLUMNS.length];
+    for (int i = 0; i < kinds.length; i++) {
+      kinds[i] = IGNORED;
+      for (int kind = 0; kind < COLUMNS.length; kind++) {
+        if (COLUMNS[kind].equals(names.get(i).trim())) {
+          kinds[i] = kind;
+          found[kind] = true;
+        }
+      }
+    }
+    for (int kind = 0; kind < COLUMNS.length; kind++) {
+      if (!found[kind]) {
+        throw new IOException("missing column " + COLUMNS[kind] + " in header " + names);
+      }
+    }
+    return kinds;
+  }
+
+  /**
+   * @return the offset of the first line starting at or after the given offset
+   */
+  private long findLineStart(long offset) throws IOException {
+    if (offset <= 0) {
+      return 0;
+    }
+    map(offset - 1);
+    while (peek() != '\n') {
+      advance();
+    }
+    return Math.min(getOffset() + 1, end);
+  }
+
+  private void seek(long offset) throws IOException {
+    if (offset >= bufferOffset && offset <= bufferOffset + buffer.limit()) {
+      buffer.position((int) (offset - bufferOffset));
+    } else {
+      map(offset);
+    }
+  }
+
+  private void map(long offset) throws IOException {
+    long size = Math.min(WINDOW_SIZE, channel.size() - offset);
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(size, 0));
+    bufferOffset = offset;
+  }
+
+  /**
+   * @return the next byte without consuming it, or a line end once the end of the range is reached
+   */
+  private byte peek() throws IOException {
+    if (getOffset() >= end) {
+      return '\n';
+    }
+    if (!buffer.hasRemaining()) {
+      map(getOffset());
+    }
+    return buffer.get(buffer.position());
+  }
+
+  private void advance() {
+    buffer.position(buffer.position() + 1);
+  }
+
+  private IOException malformed(String message) {
+    return new IOException(message + " at offset " + getOffset());
+  }
+
+  private static boolean isFieldEnd(byte b) {
+    return b == ',' || isLineEnd(b);
+  }
+
+  private static boolean isLineEnd(byte b) {
+    return b == '\n' || b == '\r';
+  }
+}
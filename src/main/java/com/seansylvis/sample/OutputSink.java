@@ -0,0 +1,33 @@
+package com.seansylvis.sample;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the results of a run: the assignment of each loan, in input order, followed by the expected yield of
+ * each facility. Results are passed as primitives so that sinks can encode them without intermediate objects.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public interface OutputSink extends Closeable {
+
+  int NO_FACILITY = -1;
+
+  /**
+   * Writes the assignment of a loan to a facility, or to {@link #NO_FACILITY} if the loan was not funded.
+   */
+  void writeAssignment(int loanId, int facilityId) throws IOException;
+
+  void writeYield(int facilityId, long expectedYield) throws IOException;
+
+  /**
+   * Writes all results passed to this sink so far to its files.
+   */
+  void flush() throws IOException;
+
+  /**
+   * Flushes this sink and returns the length of its assignments output, from which a sink can later be reopened to
+   * append further assignments.
+   */
+  long getAssignmentsLength() throws IOException;
+}
@@ -0,0 +1,252 @@
+package com.seansylvis.sample;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates a synthetic portfolio of banks, facilities, covenants and loans in the input format read by
+ * {@link LoanMain}, at any scale. Generation is deterministic for a given seed, and the distributions of states,
+ * default likelihoods, interest rates and covenant density are configurable.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class PortfolioGenerator {
+
+  private static final String[] STATES = {
+      "AK", "AL", "AR", "AZ", "CA", "CO", "CT", "DE", "FL", "GA", "HI", "IA", "ID", "IL", "IN", "KS", "KY", "LA",
+      "MA", "MD", "ME", "MI", "MN", "MO", "MS", "MT", "NC", "ND", "NE", "NH", "NJ", "NM", "NV", "NY", "OH", "OK",
+      "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VA", "VT", "WA", "WI", "WV", "WY"};
+
+  private int banks = 5;
+  private int bankCovenants = 1;
+  private double capacityRatio = 0.8;
+  private double facilityCovenants = 2.0;
+  private int facilities = 15;
+  private float[] facilityInterestRates = {0.01f, 0.02f, 0.03f, 0.04f, 0.05f, 0.06f, 0.07f, 0.08f, 0.09f, 0.1f};
+  private float[] loanInterestRates = {0.15f, 0.25f, 0.35f};
+  private int loans = 425;
+  private int maxLoanAmountCents = 100000;
+  private float maxDefaultLikelihood = 0.1f;
+  private int minLoanAmountCents = 1000;
+  private long seed = 0;
+  private double stateSkew = 0.0;
+  private String[] states = STATES;
+
+  /**
+   * Writes banks.csv, facilities.csv, covenants.csv and loans.csv to the given directory.
+   */
+  public void generate(File directory) throws IOException {
+    Random random = new Random(seed);
+    double[] stateWeights = createStateWeights();
+
+    try (CSVPrinter csvPrinter = createPrinter(new File(directory, "banks.csv"), "id", "name")) {
+      for (int bankId = 1; bankId <= banks; bankId++) {
+        csvPrinter.printRecord(bankId, "Bank " + bankId);
+      }
+    }
+
+    // spread the capacity of all facilities so that it covers the given ratio of the expected loan amounts
+    double totalCapacity = capacityRatio * loans * (minLoanAmountCents + maxLoanAmountCents) / 2.0;
+    double[] shares = new double[facilities];
+    double totalShares = 0;
+    for (int i = 0; i < facilities; i++) {
+      shares[i] = 0.5 + random.nextDouble();
+      totalShares += shares[i];
+    }
+    int[] facilityBanks = new int[facilities];
+    try (CSVPrinter csvPrinter = createPrinter(new File(directory, "facilities.csv"),
+        "amount", "interest_rate", "id", "bank_id")) {
+      for (int i = 0; i < facilities; i++) {
+        facilityBanks[i] = 1 + random.nextInt(banks);
+        long amount = Math.min(Integer.MAX_VALUE, Math.round(totalCapacity * shares[i] / totalShares));
+        float interestRate = facilityInterestRates[random.nextInt(facilityInterestRates.length)];
+        csvPrinter.printRecord((double) amount, interestRate, i + 1, facilityBanks[i]);
+      }
+    }
+
+    try (CSVPrinter csvPrinter = createPrinter(new File(directory, "covenants.csv"),
+        "facility_id", "max_default_likelihood", "bank_id", "banned_state")) {
+      for (int bankId = 1; bankId <= banks; bankId++) {
+        for (int i = 0; i < bankCovenants; i++) {
+          csvPrinter.printRecord("", "", bankId, states[random.nextInt(states.length)]);
+        }
+      }
+      for (int i = 0; i < facilities; i++) {
+        // each facility gets the whole part of the covenant density, plus one more with the fractional probability
+        int count = (int) facilityCovenants + (random.nextDouble() < facilityCovenants % 1 ? 1 : 0);
+        for (int j = 0; j < count; j++) {
+          String covenantLikelihood = random.nextBoolean()
+              ? String.valueOf(roundToHundredths(maxDefaultLikelihood * (0.5f + random.nextFloat() / 2))) : "";
+          String bannedState = random.nextBoolean() ? states[random.nextInt(states.length)] : "";
+          if (covenantLikelihood.isEmpty() && bannedState.isEmpty()) {
+            bannedState = states[random.nextInt(states.length)];
+          }
+          csvPrinter.printRecord(i + 1, covenantLikelihood, facilityBanks[i], bannedState);
+        }
+      }
+    }
+
+    try (CSVPrinter csvPrinter = createPrinter(new File(directory, "loans.csv"),
+        "interest_rate", "amount", "id", "default_likelihood", "state")) {
+      for (int loanId = 1; loanId <= loans; loanId++) {
+        float interestRate = loanInterestRates[random.nextInt(loanInterestRates.length)];
+        int amountCents = minLoanAmountCents + random.nextInt(maxLoanAmountCents - minLoanAmountCents + 1);
+        float defaultLikelihood = roundToHundredths(random.nextFloat() * maxDefaultLikelihood);
+        String state = states[sample(random, stateWeights)];
+        csvPrinter.printRecord(interestRate, amountCents, loanId, defaultLikelihood, state);
+      }
+    }
+  }
+
+  public PortfolioGenerator setBanks(int banks) {
+    this.banks = banks;
+    return this;
+  }
+
+  /**
+   * Sets the number of banned-state covenants applying to all facilities of each bank.
+   */
+  public PortfolioGenerator setBankCovenants(int bankCovenants) {
+    this.bankCovenants = bankCovenants;
+    return this;
+  }
+
+  /**
+   * Sets the total capacity of all facilities as a ratio of the expected total amount of all loans.
+   */
+  public PortfolioGenerator setCapacityRatio(double capacityRatio) {
+    this.capacityRatio = capacityRatio;
+    return this;
+  }
+
+  /**
+   * Sets the average number of covenants per facility, each restricting the default likelihood, a state or both.
+   */
+  public PortfolioGenerator setFacilityCovenants(double facilityCovenants) {
+    this.facilityCovenants = facilityCovenants;
+    return this;
+  }
+
+  public PortfolioGenerator setFacilities(int facilities) {
+    this.facilities = facilities;
+    return this;
+  }
+
+  /**
+   * Sets the interest rates from which each facility's rate is drawn uniformly.
+   */
+  public PortfolioGenerator setFacilityInterestRates(float... facilityInterestRates) {
+    this.facilityInterestRates = facilityInterestRates;
+    return this;
+  }
+
+  /**
+   * Sets the interest rates from which each loan's rate is drawn uniformly.
+   */
+  public PortfolioGenerator setLoanInterestRates(float... loanInterestRates) {
+    this.loanInterestRates = loanInterestRates;
+    return this;
+  }
+
+  /**
+   * Sets the range from which each loan's amount is drawn uniformly.
+   */
+  public PortfolioGenerator setLoanAmountCents(int minLoanAmountCents, int maxLoanAmountCents) {
+    this.minLoanAmountCents = minLoanAmountCents;
+    this.maxLoanAmountCents = maxLoanAmountCents;
+    return this;
+  }
+
+  public PortfolioGenerator setLoans(int loans) {
+    this.loans = loans;
+    return this;
+  }
+
+  /**
+   * Sets the upper bound of loan default likelihoods, which are drawn uniformly from zero and rounded to hundredths.
+   * Facility default likelihood covenants are drawn from the upper half of the same range.
+   */
+  public PortfolioGenerator setMaxDefaultLikelihood(float maxDefaultLikelihood) {
+    this.maxDefaultLikelihood = maxDefaultLikelihood;
+    return this;
+  }
+
+  public PortfolioGenerator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Sets the skew of loan states, which follow a Zipf distribution over the states with the given exponent. Zero
+   * draws states uniformly.
+   */
+  public PortfolioGenerator setStateSkew(double stateSkew) {
+    this.stateSkew = stateSkew;
+    return this;
+  }
+
+  public PortfolioGenerator setStates(String... states) {
+    this.states = states;
+    return this;
+  }
+
+  private double[] createStateWeights() {
+    double[] cumulative = new double[states.length];
+    double sum = 0;
+    for (int i = 0; i < states.length; i++) {
+      sum += 1.0 / Math.pow(i + 1, stateSkew);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < states.length; i++) {
+      cumulative[i] /= sum;
+    }
+    return cumulative;
+  }
+
+  private static int sample(Random random, double[] cumulativeWeights) {
+    double value = random.nextDouble();
+    int low = 0;
+    int high = cumulativeWeights.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cumulativeWeights[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static float roundToHundredths(float value) {
+    return Math.round(value * 100) / 100.0f;
+  }
+
+  private static CSVPrinter createPrinter(File file, String... header) throws IOException {
+    return new CSVPrinter(new BufferedWriter(new FileWriter(file), 1 << 16), CSVFormat.DEFAULT.withHeader(header));
+  }
+
+  /**
+   * Usage: {@code PortfolioGenerator <output-directory> <loans> <facilities> [<seed>]}
+   */
+  public static void main(String[] args) throws Exception {
+    File directory = new File(args[0]);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("cannot create " + directory);
+    }
+    PortfolioGenerator generator = new PortfolioGenerator()
+        .setLoans(Integer.parseInt(args[1]))
+        .setFacilities(Integer.parseInt(args[2]))
+        .setBanks(Math.max(1, Integer.parseInt(args[2]) / 10));
+    if (args.length > 3) {
+      generator.setSeed(Long.parseLong(args[3]));
+    }
+    generator.generate(directory);
+  }
+}
@@ -0,0 +1,150 @@
+package com.seansylvis.sample;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What-if variation of a set of facilities for a {@link Simulation}, such as a facility with more capacity or a bank
+ * that drops one of its covenants. A scenario never changes the facilities it is applied to; it describes overrides
+ * that are applied to copies of them, so that any number of scenarios can be run over the same facilities.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class Scenario {
+
+  private final String name;
+  private final Map<Integer, Double> capacityFactors = new HashMap<>();
+  private final ListMultimap<Integer, Covenant> facilityCovenants = ArrayListMultimap.create();
+  private final ListMultimap<Integer, Covenant> bankCovenants = ArrayListMultimap.create();
+  private final SetMultimap<Integer, String> facilityLiftedStates = HashMultimap.create();
+  private final SetMultimap<Integer, String> bankLiftedStates = HashMultimap.create();
+
+  public Scenario(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Scales the total amount of the given facility by the given factor, e.g. 1.2 for 20% more capacity.
+   */
+  public void scaleCapacity(int facilityId, double factor) {
+    if (!(factor >= 0)) {
+      throw new IllegalArgumentException("invalid capacity factor " + factor);
+    }
+    capacityFactors.put(facilityId, factor);
+  }
+
+  /**
+   * Adds a covenant to the given facility.
+   */
+  public void addFacilityCovenant(int facilityId, Covenant covenant) {
+    facilityCovenants.put(facilityId, covenant);
+  }
+
+  /**
+   * Adds a covenant to the given bank, and so to all of its facilities.
+   */
+  public void addBankCovenant(int bankId, Covenant covenant) {
+    bankCovenants.put(bankId, covenant);
+  }
+
+  /**
+   * Drops any {@link BannedStateCovenant} of the given facility banning the given state.
+   */
+  public void liftFacilityBan(int facilityId, String state) {
+    facilityLiftedStates.put(facilityId, state);
+  }
+
+  /**
+   * Drops any {@link BannedStateCovenant} of the given bank banning the given state.
+   */
+  public void liftBankBan(int bankId, String state) {
+    bankLiftedStates.put(bankId, state);
+  }
+
+  /**
+   * Copies the given facilities, and their banks, with the overrides of this scenario applied. Facilities sharing a
+   * bank share its copy.
+   *
+   * @throws IllegalArgumentException if an override refers to a facility or bank not among the given facilities
+   */
+  List<Facility> apply(Collection<Facility> facilities) {
+    Map<Integer, Bank> banks = new HashMap<>();
+    List<Facility> copies = new ArrayList<>(facilities.size());
+    Set<Integer> facilityIds = new HashSet<>();
+    for (Facility facility : facilities) {
+      Bank bank = banks.get(facility.getBank().getBankId());
+      if (bank == null) {
+        bank = copyBank(facility.getBank());
+        banks.put(bank.getBankId(), bank);
+      }
+
+      int facilityId = facility.getFacilityId();
+      facilityIds.add(facilityId);
+      Double factor = capacityFactors.get(facilityId);
+      int totalAmountCents = factor == null ? facility.getTotalAmountCents()
+          : (int) Math.min(Integer.MAX_VALUE, Math.round(facility.getTotalAmountCents() * factor));
+      Facility copy = new Facility(facilityId, bank, facility.getInterestRate(), totalAmountCents);
+      for (Covenant covenant : facility.getCovenants()) {
+        if (!isLifted(covenant, facilityLiftedStates.get(facilityId))) {
+          copy.addCovenant(covenant);
+        }
+      }
+      for (Covenant covenant : facilityCovenants.get(facilityId)) {
+        copy.addCovenant(covenant);
+      }
+      copies.add(copy);
+    }
+
+    checkKnown("facility", facilityIds, capacityFactors.keySet());
+    checkKnown("facility", facilityIds, facilityCovenants.keySet());
+    checkKnown("facility", facilityIds, facilityLiftedStates.keySet());
+    checkKnown("bank", banks.keySet(), bankCovenants.keySet());
+    checkKnown("bank", banks.keySet(), bankLiftedStates.keySet());
+    return copies;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  private Bank copyBank(Bank bank) {
+    Bank copy = new Bank(bank.getBankId(), bank.getName());
+    for (Covenant covenant : bank.getCovenants()) {
+      if (!isLifted(covenant, bankLiftedStates.get(bank.getBankId()))) {
+        copy.addCovenant(covenant);
+      }
+    }
+    for (Covenant covenant : bankCovenants.get(bank.getBankId())) {
+      copy.addCovenant(covenant);
+    }
+    return copy;
+  }
+
+  private static boolean isLifted(Covenant covenant, Set<String> liftedStates) {
+    return covenant instanceof BannedStateCovenant
+        && liftedStates.contains(((BannedStateCovenant) covenant).getBannedState());
+  }
+
+  private void checkKnown(String kind, Set<Integer> knownIds, Set<Integer> ids) {
+    for (Integer id : ids) {
+      if (!knownIds.contains(id)) {
+        throw new IllegalArgumentException("unknown " + kind + " " + id + " in scenario " + name);
+      }
+    }
+  }
+}
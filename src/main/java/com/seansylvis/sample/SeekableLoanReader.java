@@ -0,0 +1,15 @@
+package com.seansylvis.sample;
+
+/**
+ * {@link LoanReader} whose position in its input can be saved, e.g. in a {@link Checkpoint}, and later resumed from by
+ * opening a new reader at that position.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public interface SeekableLoanReader extends LoanReader {
+
+  /**
+   * @return the byte offset in the input of the next loan to be read
+   */
+  long getOffset();
+}
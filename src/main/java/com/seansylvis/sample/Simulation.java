@@ -0,0 +1,222 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * What-if simulation running a loan book through any number of {@link Scenario}s, each varying the same facilities,
+ * to compare the yield and funding of each facility between them. The loan book is loaded once and shared by all
+ * scenarios; each scenario is processed by a {@link LoanProcessor} of its own over its own copies of the facilities,
+ * so scenarios run in parallel with no shared mutable state.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class Simulation {
+
+  private final List<Facility> facilities;
+  private final LoanBatch loans;
+
+  /**
+   * @param facilities the facilities that scenarios vary, which must not be changed afterwards
+   * @param loans the loan book, which must not be changed afterwards
+   */
+  public Simulation(List<Facility> facilities, LoanBatch loans) {
+    this.facilities = ImmutableList.copyOf(facilities);
+    this.loans = loans;
+  }
+
+  /**
+   * Runs the given scenario on the calling thread.
+   */
+  public Result run(Scenario scenario) {
+    return run(scenario, scenario.apply(facilities));
+  }
+
+  /**
+   * Runs the given scenarios in parallel on up to the given number of threads.
+   *
+   * @return the results of the scenarios, in the order given
+   * @throws IllegalArgumentException if a scenario refers to a facility or bank that does not exist
+   */
+  public Report run(List<Scenario> scenarios, int threads) throws InterruptedException {
+    // copy the facilities up front, so that an invalid scenario fails before any is run
+    final List<List<Facility>> configurations = new ArrayList<>(scenarios.size());
+    for (Scenario scenario : scenarios) {
+      configurations.add(scenario.apply(facilities));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, scenarios.size())),
+        new ThreadFactoryBuilder().setNameFormat("simulation-%d").setDaemon(true).build());
+    try {
+      List<Future<Result>> futures = new ArrayList<>(scenarios.size());
+      for (int i = 0; i < scenarios.size(); i++) {
+        final Scenario scenario = scenarios.get(i);
+        final List<Facility> configuration = configurations.get(i);
+        futures.add(executor.submit(new Callable<Result>() {
+          @Override
+          public Result call() {
+            return run(scenario, configuration);
+          }
+        }));
+      }
+
+      List<Result> results = new ArrayList<>(scenarios.size());
+      for (Future<Result> future : futures) {
+        results.add(future.get());
+      }
+      return new Report(results, loans.size());
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Result run(Scenario scenario, List<Facility> configuration) {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    for (Facility facility : configuration) {
+      loanProcessor.addFacility(facility);
+    }
+    loanProcessor.process(loans);
+
+    SortedMap<Integer, FacilityLedger> ledgers = new TreeMap<>();
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      ledgers.put(ledger.getFacility().getFacilityId(), ledger);
+    }
+    return new Result(scenario, ledgers);
+  }
+
+  /**
+   * Outcome of a single scenario: what each facility funded.
+   */
+  public static class Result {
+
+    private final Scenario scenario;
+    private final SortedMap<Integer, FacilityLedger> ledgers;
+
+    Result(Scenario scenario, SortedMap<Integer, FacilityLedger> ledgers) {
+      this.scenario = scenario;
+      this.ledgers = ledgers;
+    }
+
+    public Scenario getScenario() {
+      return scenario;
+    }
+
+    /**
+     * @return the ledger of each facility, by facility id
+     */
+    public SortedMap<Integer, FacilityLedger> getLedgers() {
+      return Collections.unmodifiableSortedMap(ledgers);
+    }
+
+    /**
+     * @return the ledger of the given facility, or null if the scenario has no such facility
+     */
+    public FacilityLedger getLedger(int facilityId) {
+      return ledgers.get(facilityId);
+    }
+
+    public long getExpectedYield() {
+      long expectedYield = 0;
+      for (FacilityLedger ledger : ledgers.values()) {
+        expectedYield += ledger.getExpectedYield();
+      }
+      return expectedYield;
+    }
+
+    public int getFundedLoans() {
+      int fundedLoans = 0;
+      for (FacilityLedger ledger : ledgers.values()) {
+        fundedLoans += ledger.getFundedLoanCount();
+      }
+      return fundedLoans;
+    }
+  }
+
+  /**
+   * Results of a number of scenarios over the same loan book, formatted by {@link #toString()} as a table comparing
+   * the expected yield and funding rate of each facility, and of all facilities together, between scenarios. A
+   * facility's funding rate is the share of the loan book it funds.
+   */
+  public static class Report {
+
+    private static final String YIELD = " yield";
+    private static final String FUNDED = " funded";
+
+    private final List<Result> results;
+    private final int loans;
+
+    Report(List<Result> results, int loans) {
+      this.results = results;
+      this.loans = loans;
+    }
+
+    public List<Result> getResults() {
+      return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return the number of loans in the loan book
+     */
+    public int getLoans() {
+      return loans;
+    }
+
+    @Override
+    public String toString() {
+      SortedSet<Integer> facilityIds = new TreeSet<>();
+      for (Result result : results) {
+        facilityIds.addAll(result.ledgers.keySet());
+      }
+      int[] widths = new int[results.size()];
+      StringBuilder table = new StringBuilder(Strings.padEnd("facility", 10, ' '));
+      for (int i = 0; i < results.size(); i++) {
+        widths[i] = Math.max(results.get(i).getScenario().getName().length() + FUNDED.length(), 14);
+        table.append(' ').append(Strings.padStart(results.get(i).getScenario().getName() + YIELD, widths[i], ' '));
+        table.append(' ').append(Strings.padStart(results.get(i).getScenario().getName() + FUNDED, widths[i], ' '));
+      }
+      table.append('\n');
+
+      for (Integer facilityId : facilityIds) {
+        table.append(Strings.padEnd(String.valueOf(facilityId), 10, ' '));
+        for (int i = 0; i < results.size(); i++) {
+          FacilityLedger ledger = results.get(i).getLedger(facilityId);
+          appendCells(table, widths[i], ledger == null ? null : ledger.getExpectedYield(),
+              ledger == null ? 0 : ledger.getFundedLoanCount());
+        }
+        table.append('\n');
+      }
+
+      table.append(Strings.padEnd("total", 10, ' '));
+      for (int i = 0; i < results.size(); i++) {
+        appendCells(table, widths[i], results.get(i).getExpectedYield(), results.get(i).getFundedLoans());
+      }
+      return table.append('\n').toString();
+    }
+
+    private void appendCells(StringBuilder table, int width, Long expectedYield, int fundedLoans) {
+      table.append(' ').append(Strings.padStart(expectedYield == null ? "-" : String.valueOf(expectedYield), width,
+          ' '));
+      String rate = expectedYield == null ? "-"
+          : String.format("%.2f%%", loans == 0 ? 0.0 : 100.0 * fundedLoans / loans);
+      table.append(' ').append(Strings.padStart(rate, width, ' '));
+    }
+  }
+}
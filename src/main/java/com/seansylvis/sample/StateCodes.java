@@ -0,0 +1,73 @@
+package com.seansylvis.sample;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry assigning each distinct state a small integer code, in order of first use. Codes are stable for the life
+ * of the JVM and can be used to index arrays and bitsets in place of state Strings. Codes fit in a {@code short}, so
+ * at most {@link #MAX_CODES} distinct states can be registered.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public final class StateCodes {
+
+  public static final int MAX_CODES = Short.MAX_VALUE + 1;
+
+  // returned by find(String) for a state that has no code
+  public static final int NONE = -1;
+
+  private static final ConcurrentMap<String, Integer> CODES = new ConcurrentHashMap<>();
+  private static volatile String[] names = new String[0];
+
+  private StateCodes() {
+  }
+
+  /**
+   * @return the code of the given state, assigning a new code if the state has not been seen before
+   */
+  public static int of(String state) {
+    Integer code = CODES.get(state);
+    return code == null ? register(state) : code;
+  }
+
+  /**
+   * @return the code of the given state, or {@link #NONE} if the state has not been seen before; unlike
+   * {@link #of(String)}, never assigns a code
+   */
+  public static int find(String state) {
+    Integer code = CODES.get(state);
+    return code == null ? NONE : code;
+  }
+
+  /**
+   * @return the state with the given code
+   */
+  public static String name(int code) {
+    return names[code];
+  }
+
+  /**
+   * @return the number of codes assigned so far; all codes are less than this
+   */
+  public static int size() {
+    return names.length;
+  }
+
+  private static synchronized int register(String state) {
+    Integer code = CODES.get(state);
+    if (code == null) {
+      if (names.length == MAX_CODES) {
+        throw new IllegalStateException("more than " + MAX_CODES + " distinct states");
+      }
+      String[] updated = Arrays.copyOf(names, names.length + 1);
+      code = names.length;
+      updated[code] = state;
+      // publish the name before the code, so that any code handed out can be resolved
+      names = updated;
+      CODES.put(state, code);
+    }
+    return code;
+  }
+}
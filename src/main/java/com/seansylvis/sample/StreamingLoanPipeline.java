@@ -0,0 +1,112 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pipeline that reads, decides and writes loans as three concurrent stages connected by bounded queues. A full queue
+ * blocks the stage feeding it, so memory use is bounded by the queue capacity regardless of the number of loans, and
+ * the first assignments are written while the input is still being read.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class StreamingLoanPipeline {
+
+  // marks the end of the stream in each queue
+  private static final Loan END_OF_LOANS = new Loan(-1, 0, 0.0f, 0.0f, "");
+  private static final Assignment END_OF_ASSIGNMENTS = new Assignment(END_OF_LOANS, null);
+
+  private final int queueCapacity;
+
+  /**
+   * @param queueCapacity the maximum number of items buffered between two stages
+   */
+  public StreamingLoanPipeline(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Streams all loans from the reader through the loan processor to the writer, returning once every assignment has
+   * been written. If any stage fails, the other stages are interrupted and the failure is rethrown.
+   */
+  public void run(final LoanReader reader, final LoanProcessor loanProcessor, final AssignmentWriter writer)
+      throws IOException, InterruptedException {
+    final BlockingQueue<Loan> loans = new ArrayBlockingQueue<>(queueCapacity);
+    final BlockingQueue<Assignment> assignments = new ArrayBlockingQueue<>(queueCapacity);
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+    try {
+      // read stage
+      stages.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Loan loan;
+          while ((loan = reader.next()) != null) {
+            loans.put(loan);
+          }
+          loans.put(END_OF_LOANS);
+          return null;
+        }
+      });
+
+      // decide stage
+      stages.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Loan loan;
+          while ((loan = loans.take()) != END_OF_LOANS) {
+            assignments.put(new Assignment(loan, loanProcessor.process(loan)));
+          }
+          assignments.put(END_OF_ASSIGNMENTS);
+          return null;
+        }
+      });
+
+      // write stage
+      stages.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Assignment assignment;
+          while ((assignment = assignments.take()) != END_OF_ASSIGNMENTS) {
+            writer.write(assignment);
+          }
+          return null;
+        }
+      });
+
+      for (int i = 0; i < 3; i++) {
+        await(stages.take());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(Future<Void> stage) throws IOException, InterruptedException {
+    try {
+      stage.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class, InterruptedException.class);
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Final stage of the pipeline, which outputs each assignment in input order.
+   */
+  public interface AssignmentWriter {
+
+    void write(Assignment assignment) throws IOException;
+  }
+}
@@ -0,0 +1,41 @@
+package com.seansylvis.sample;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by a thread, for tests of allocation and memory footprint. Tests that measure
+ * allocations are skipped on JVMs that cannot measure them.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+final class Allocations {
+
+  private final com.sun.management.ThreadMXBean threadMXBean;
+  private final long threadId;
+
+  private Allocations(com.sun.management.ThreadMXBean threadMXBean, long threadId) {
+    this.threadMXBean = threadMXBean;
+    this.threadId = threadId;
+  }
+
+  /**
+   * Returns the allocations of the current thread, skipping the calling test if the JVM cannot measure them.
+   */
+  static Allocations ofCurrentThread() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+    return new Allocations(allocations, Thread.currentThread().getId());
+  }
+
+  /**
+   * @return the total number of bytes allocated by the thread so far
+   */
+  long getAllocatedBytes() {
+    return threadMXBean.getThreadAllocatedBytes(threadId);
+  }
+}
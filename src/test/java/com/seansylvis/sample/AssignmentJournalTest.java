@@ -0,0 +1,439 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class AssignmentJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecover() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 2)) {
+      Assert.assertEquals(1, append(journal, 1, 1, 100));
+      Assert.assertEquals(2, append(journal, 2, AssignmentJournal.NO_FACILITY, 500));
+      // a full buffer is synced to make room
+      Assert.assertEquals(3, append(journal, 3, 2, 300));
+      Assert.assertEquals(2, journal.getDurable());
+      append(journal, 4, 1, 50);
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(4, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(150, getLedger(loanProcessor, 1).getCommittedCents());
+    Assert.assertEquals(300, getLedger(loanProcessor, 2).getCommittedCents());
+  }
+
+  @Test
+  public void testRecoverFundsLedgers() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    LoanProcessor expected = createLoanProcessor();
+    List<Loan> loans = Arrays.asList(new Loan(1, 100, 0.1f, 0.2f, "CA"), new Loan(2, 200, 0.05f, 0.3f, "OR"),
+        new Loan(3, 300, 0.2f, 0.25f, "CA"), new Loan(4, 20000, 0.1f, 0.2f, "WA"));
+    try (AssignmentJournal journal = new AssignmentJournal(file, 2)) {
+      for (Loan loan : loans) {
+        Facility facility = expected.process(loan);
+        journal.append(loan, facility == null ? AssignmentJournal.NO_FACILITY : facility.getFacilityId());
+      }
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(4, AssignmentJournal.recover(file, loanProcessor));
+    for (int facilityId = 1; facilityId <= 2; facilityId++) {
+      FacilityLedger expectedLedger = getLedger(expected, facilityId);
+      FacilityLedger ledger = getLedger(loanProcessor, facilityId);
+      Assert.assertEquals(expectedLedger.getFundedLoans(), ledger.getFundedLoans());
+      Assert.assertEquals(expectedLedger.getExpectedYield(), ledger.getExpectedYield());
+      Assert.assertEquals(expectedLedger.getExpectedLossCents(), ledger.getExpectedLossCents());
+      Assert.assertEquals(expectedLedger.getStateExposureCents("CA"), ledger.getStateExposureCents("CA"));
+    }
+
+    // the recovered state is consistent, so it can be checkpointed and restored
+    File checkpointFile = new File(folder.getRoot(), "checkpoint");
+    Checkpoint.write(checkpointFile, loanProcessor, 0, 0, 4);
+    LoanProcessor restored = createLoanProcessor();
+    Checkpoint.read(checkpointFile).restore(restored);
+    Assert.assertEquals(getLedger(expected, 1).getFundedLoans(), getLedger(restored, 1).getFundedLoans());
+  }
+
+  @Test
+  public void testRecoverAfter() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      append(journal, 1, 1, 100);
+      append(journal, 2, AssignmentJournal.NO_FACILITY, 500);
+      append(journal, 3, 2, 300);
+    }
+
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      LoanProcessor loanProcessor = createLoanProcessor();
+      RecordingSink sink = new RecordingSink();
+      Assert.assertEquals(2, journal.recover(1, loanProcessor, sink));
+      Assert.assertEquals(Arrays.asList("2 -1", "3 2"), sink.assignments);
+      Assert.assertEquals(0, getLedger(loanProcessor, 1).getCommittedCents());
+      Assert.assertEquals(300, getLedger(loanProcessor, 2).getCommittedCents());
+      Assert.assertEquals(4, append(journal, 4, 1, 50));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testRecoverThroughJournaledOutput() throws Exception {
+    int batchSize = 4;
+    int queueCapacity = 2;
+    // more decisions than the output queue holds, so recovery must wait for the writer thread syncing the journal
+    int decisions = 10 * batchSize * queueCapacity;
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      for (int i = 1; i <= decisions; i++) {
+        append(journal, i, AssignmentJournal.NO_FACILITY, 100);
+      }
+    }
+
+    RecordingSink recorded = new RecordingSink();
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      try (OutputSink sink = new AsyncOutputSink(new JournaledOutputSink(recorded, journal, 0), batchSize,
+          queueCapacity)) {
+        Assert.assertEquals(decisions, journal.recover(0, createLoanProcessor(), sink));
+      }
+    }
+    Assert.assertEquals(decisions, recorded.assignments.size());
+    Assert.assertEquals("1 -1", recorded.assignments.get(0));
+  }
+
+  @Test
+  public void testFailedSyncFailsJournal() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    FailingChannel channel = new FailingChannel(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE));
+    AssignmentJournal journal = new AssignmentJournal(file, channel, 16);
+    append(journal, 1, 1, 100);
+    journal.sync(1);
+
+    // the record is torn by a partial write, and the journal can no longer be trusted
+    channel.failing = true;
+    append(journal, 2, 2, 300);
+    try {
+      journal.sync(2);
+      Assert.fail("expected the sync to fail");
+    } catch (IOException e) {
+      Assert.assertEquals("write failed", e.getMessage());
+    }
+    channel.failing = false;
+    try {
+      append(journal, 3, 1, 50);
+      Assert.fail("expected a failed journal to refuse appends");
+    } catch (IOException e) {
+      Assert.assertEquals("write failed", e.getCause().getMessage());
+    }
+    try {
+      journal.sync(2);
+      Assert.fail("expected a failed journal to refuse syncs");
+    } catch (IOException e) {
+      Assert.assertEquals("write failed", e.getCause().getMessage());
+    }
+    Assert.assertEquals(1, journal.getDurable());
+    try {
+      journal.close();
+      Assert.fail("expected closing a failed journal to fail");
+    } catch (IOException e) {
+      Assert.assertFalse(channel.isOpen());
+    }
+
+    // reopening recovers only the durable decision
+    try (AssignmentJournal reopened = new AssignmentJournal(file, 16)) {
+      Assert.assertEquals(1, reopened.getAppended());
+    }
+  }
+
+  @Test
+  public void testStatesAcrossReopen() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      journal.append(new Loan(1, 100, 0.1f, 0.2f, "CA"), 1);
+    }
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      journal.append(new Loan(2, 200, 0.1f, 0.2f, "OR"), 1);
+      journal.append(new Loan(3, 300, 0.1f, 0.2f, "CA"), 1);
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(3, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(400, getLedger(loanProcessor, 1).getStateExposureCents("CA"));
+    Assert.assertEquals(200, getLedger(loanProcessor, 1).getStateExposureCents("OR"));
+  }
+
+  @Test
+  public void testReopenAppends() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      append(journal, 1, 1, 100);
+    }
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      Assert.assertEquals(1, journal.getDurable());
+      Assert.assertEquals(2, append(journal, 2, 1, 200));
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(2, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(300, getLedger(loanProcessor, 1).getCommittedCents());
+  }
+
+  @Test
+  public void testTornRecordDiscarded() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      append(journal, 1, 1, 100);
+      append(journal, 2, 2, 200);
+    }
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      // half of the last record is lost, and the rest zeroed
+      randomAccessFile.setLength(randomAccessFile.length() - 8);
+      randomAccessFile.setLength(randomAccessFile.length() + 8);
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(1, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(0, getLedger(loanProcessor, 2).getCommittedCents());
+
+    // new records replace the torn one
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      Assert.assertEquals(2, append(journal, 3, 2, 50));
+    }
+    loanProcessor = createLoanProcessor();
+    Assert.assertEquals(2, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(50, getLedger(loanProcessor, 2).getCommittedCents());
+  }
+
+  @Test
+  public void testTruncate() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      for (int loanId = 1; loanId <= 5; loanId++) {
+        append(journal, loanId, 1, 10);
+      }
+    }
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      journal.truncate(2);
+      Assert.assertEquals(3, append(journal, 6, 1, 1));
+    }
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(3, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(21, getLedger(loanProcessor, 1).getCommittedCents());
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    final int threads = 8;
+    final int recordsPerThread = 500;
+    try (final AssignmentJournal journal = new AssignmentJournal(file, 64)) {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < recordsPerThread; i++) {
+              long sequence = append(journal, thread * recordsPerThread + i, 1 + thread % 2, 1);
+              journal.sync(sequence);
+              Assert.assertTrue(journal.getDurable() >= sequence);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      executor.shutdown();
+    }
+
+    LoanProcessor loanProcessor = createLoanProcessor();
+    Assert.assertEquals(threads * recordsPerThread, AssignmentJournal.recover(file, loanProcessor));
+    Assert.assertEquals(threads * recordsPerThread / 2, getLedger(loanProcessor, 1).getCommittedCents());
+    Assert.assertEquals(threads * recordsPerThread / 2, getLedger(loanProcessor, 2).getCommittedCents());
+  }
+
+  private long append(AssignmentJournal journal, int loanId, int facilityId, int amountCents) throws Exception {
+    return journal.append(new Loan(loanId, amountCents, 0.1f, 0.2f, "CA"), facilityId);
+  }
+
+  private LoanProcessor createLoanProcessor() {
+    Bank bank = new Bank(1, "bank");
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(new Facility(1, bank, 0.01f, 10000));
+    loanProcessor.addFacility(new Facility(2, bank, 0.02f, 10000));
+    return loanProcessor;
+  }
+
+  private FacilityLedger getLedger(LoanProcessor loanProcessor, int facilityId) {
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      if (ledger.getFacility().getFacilityId() == facilityId) {
+        return ledger;
+      }
+    }
+    throw new IllegalArgumentException();
+  }
+
+  /**
+   * Channel that, while failing, writes half of what it is given and then fails.
+   */
+  private static class FailingChannel extends FileChannel {
+
+    private final FileChannel delegate;
+    volatile boolean failing;
+
+    FailingChannel(FileChannel delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return delegate.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return delegate.read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (failing) {
+        ByteBuffer half = src.duplicate();
+        half.limit(src.position() + src.remaining() / 2);
+        src.position(src.position() + delegate.write(half));
+        throw new IOException("write failed");
+      }
+      return delegate.write(src);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+      return delegate.write(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+      return delegate.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+      delegate.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return delegate.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      delegate.truncate(size);
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      delegate.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+      return delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+      return delegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return delegate.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+      return delegate.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      return delegate.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      return delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      return delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      delegate.close();
+    }
+  }
+
+  /**
+   * Sink recording each assignment as its loan id and facility id.
+   */
+  private static class RecordingSink implements OutputSink {
+
+    final List<String> assignments = new ArrayList<>();
+
+    @Override
+    public void writeAssignment(int loanId, int facilityId) {
+      assignments.add(loanId + " " + facilityId);
+    }
+
+    @Override
+    public void writeYield(int facilityId, long expectedYield) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long getAssignmentsLength() {
+      return assignments.size();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
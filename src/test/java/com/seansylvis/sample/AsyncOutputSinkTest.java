@@ -0,0 +1,113 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class AsyncOutputSinkTest {
+
+  @Test
+  public void testOrder() throws Exception {
+    RecordingSink delegate = new RecordingSink();
+    try (AsyncOutputSink sink = new AsyncOutputSink(delegate, 3, 2)) {
+      for (int i = 0; i < 10; i++) {
+        sink.writeAssignment(i, i % 2 == 0 ? i : OutputSink.NO_FACILITY);
+      }
+      sink.writeYield(1, 100);
+      sink.writeYield(2, 200);
+    }
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      expected.add("assignment " + i + " " + (i % 2 == 0 ? i : OutputSink.NO_FACILITY));
+    }
+    expected.add("yield 1 100");
+    expected.add("yield 2 200");
+    Assert.assertEquals(expected, delegate.records);
+    Assert.assertTrue(delegate.closed);
+  }
+
+  @Test
+  public void testFlush() throws Exception {
+    RecordingSink delegate = new RecordingSink();
+    try (AsyncOutputSink sink = new AsyncOutputSink(delegate, 16, 2)) {
+      sink.writeAssignment(1, 2);
+      sink.writeAssignment(3, 4);
+      Assert.assertEquals(2, sink.getAssignmentsLength());
+      Assert.assertEquals(2, delegate.records.size());
+      Assert.assertEquals(1, delegate.flushes);
+
+      sink.writeAssignment(5, 6);
+      sink.flush();
+      Assert.assertEquals(3, delegate.records.size());
+    }
+  }
+
+  @Test
+  public void testWriterFailure() throws Exception {
+    RecordingSink delegate = new RecordingSink();
+    delegate.failAfter = 5;
+    AsyncOutputSink sink = new AsyncOutputSink(delegate, 2, 1);
+    try {
+      // the writer fails early on, and the caller must not block on the full queue
+      for (int i = 0; i < 1000; i++) {
+        sink.writeAssignment(i, 1);
+      }
+      sink.close();
+      Assert.fail("expected the writer's failure");
+    } catch (IOException e) {
+      Assert.assertEquals("disk full", e.getMessage());
+    }
+    Assert.assertTrue(delegate.closed);
+  }
+
+  /**
+   * Sink recording each call, optionally failing once a number of records have been written.
+   */
+  private static class RecordingSink implements OutputSink {
+
+    final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+    int failAfter = Integer.MAX_VALUE;
+    volatile int flushes;
+    volatile boolean closed;
+
+    @Override
+    public void writeAssignment(int loanId, int facilityId) throws IOException {
+      record("assignment " + loanId + " " + facilityId);
+    }
+
+    @Override
+    public void writeYield(int facilityId, long expectedYield) throws IOException {
+      record("yield " + facilityId + " " + expectedYield);
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+
+    @Override
+    public long getAssignmentsLength() {
+      return records.size();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    private void record(String record) throws IOException {
+      if (records.size() == failAfter) {
+        throw new IOException("disk full");
+      }
+      records.add(record);
+    }
+  }
+}
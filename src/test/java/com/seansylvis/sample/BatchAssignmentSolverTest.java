@@ -0,0 +1,98 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BatchAssignmentSolverTest {
+
+  @Test
+  public void testBeatsArrivalOrder() {
+    // the cheap facility only fits one loan, and the second loan yields more there
+    List<FacilityLedger> ledgers = Arrays.asList(createLedger(1, 0.01f, 100), createLedger(2, 0.1f, 1000));
+    List<Loan> loans = Arrays.asList(createLoan(1, 50, "CA"), createLoan(2, 100, "CA"));
+
+    int[] solution = new BatchAssignmentSolver(12, 1000000).solve(loans, ledgers);
+    Assert.assertArrayEquals(new int[] {1, 0}, solution);
+  }
+
+  @Test
+  public void testCovenants() {
+    FacilityLedger ledger0 = createLedger(1, 0.01f, 1000);
+    ledger0.getFacility().addCovenant(new BannedStateCovenant("CA"));
+    List<FacilityLedger> ledgers = Arrays.asList(ledger0, createLedger(2, 0.1f, 1000));
+    List<Loan> loans = Arrays.asList(createLoan(1, 50, "CA"), createLoan(2, 100, "OR"));
+
+    int[] solution = new BatchAssignmentSolver(12, 1000000).solve(loans, ledgers);
+    Assert.assertArrayEquals(new int[] {1, 0}, solution);
+  }
+
+  @Test
+  public void testUnassigned() {
+    List<FacilityLedger> ledgers = Arrays.asList(createLedger(1, 0.01f, 100));
+    List<Loan> loans = Arrays.asList(createLoan(1, 150, "CA"));
+
+    int[] solution = new BatchAssignmentSolver(12, 1000000).solve(loans, ledgers);
+    Assert.assertArrayEquals(new int[] {BatchAssignmentSolver.UNASSIGNED}, solution);
+  }
+
+  @Test
+  public void testNeverWorseThanArrivalOrder() {
+    Random random = new Random(42);
+    List<FacilityLedger> ledgers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ledgers.add(createLedger(i, 0.01f * (i + 1), 200 + random.nextInt(300)));
+    }
+    List<Loan> loans = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      loans.add(createLoan(i, 20 + random.nextInt(100), "CA"));
+    }
+
+    // exact solutions only for tiny windows, so this exercises the heuristic
+    BatchAssignmentSolver solver = new BatchAssignmentSolver(4, 1000000);
+    long batchYield = computeYield(loans, ledgers, solver.solve(loans, ledgers));
+
+    LoanProcessor loanProcessor = new LoanProcessor();
+    for (FacilityLedger ledger : ledgers) {
+      loanProcessor.addFacility(ledger.getFacility());
+    }
+    long greedyYield = 0;
+    for (Loan loan : loans) {
+      Facility facility = loanProcessor.process(loan);
+      if (facility != null) {
+        greedyYield += loan.computeExpectedYield(facility);
+      }
+    }
+    Assert.assertTrue(batchYield >= greedyYield);
+  }
+
+  private long computeYield(List<Loan> loans, List<FacilityLedger> ledgers, int[] solution) {
+    long[] committed = new long[ledgers.size()];
+    long sum = 0;
+    for (int i = 0; i < solution.length; i++) {
+      if (solution[i] != BatchAssignmentSolver.UNASSIGNED) {
+        Facility facility = ledgers.get(solution[i]).getFacility();
+        committed[solution[i]] += loans.get(i).getAmountCents();
+        Assert.assertTrue(committed[solution[i]] <= facility.getTotalAmountCents());
+        sum += loans.get(i).computeExpectedYield(facility);
+      }
+    }
+    return sum;
+  }
+
+  private FacilityLedger createLedger(int facilityId, float interestRate, int totalAmountCents) {
+    return new FacilityLedger(new Facility(facilityId, new Bank(1, "bank"), interestRate, totalAmountCents));
+  }
+
+  private Loan createLoan(int loanId, int amountCents, String state) {
+    return new Loan(loanId, amountCents, 0.01f, 0.2f, state);
+  }
+
+}
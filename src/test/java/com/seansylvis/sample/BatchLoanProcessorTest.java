@@ -0,0 +1,80 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BatchLoanProcessorTest {
+
+  @Test
+  public void testWindowSize() {
+    LoanProcessor loanProcessor = createLoanProcessor();
+    BatchLoanProcessor batchProcessor = createBatchProcessor(loanProcessor, 2, new ManualTicker());
+
+    Assert.assertTrue(batchProcessor.submit(createLoan(1, 50)).isEmpty());
+    List<Assignment> assignments = batchProcessor.submit(createLoan(2, 100));
+    Assert.assertEquals(2, assignments.size());
+    Assert.assertEquals(1, assignments.get(0).getLoan().getLoanId());
+    Assert.assertEquals(2, assignments.get(0).getFacility().getFacilityId());
+    Assert.assertEquals(2, assignments.get(1).getLoan().getLoanId());
+    Assert.assertEquals(1, assignments.get(1).getFacility().getFacilityId());
+    Assert.assertTrue(batchProcessor.flush().isEmpty());
+  }
+
+  @Test
+  public void testWindowDelay() {
+    ManualTicker ticker = new ManualTicker();
+    BatchLoanProcessor batchProcessor = createBatchProcessor(createLoanProcessor(), 10, ticker);
+
+    Assert.assertTrue(batchProcessor.submit(createLoan(1, 50)).isEmpty());
+    ticker.nanos = TimeUnit.MILLISECONDS.toNanos(5);
+    Assert.assertTrue(batchProcessor.flushIfExpired().isEmpty());
+    ticker.nanos = TimeUnit.MILLISECONDS.toNanos(10);
+    Assert.assertEquals(1, batchProcessor.flushIfExpired().size());
+  }
+
+  @Test
+  public void testYieldImprovement() {
+    BatchLoanProcessor batchProcessor = createBatchProcessor(createLoanProcessor(), 2, new ManualTicker());
+    batchProcessor.submit(createLoan(1, 50));
+    batchProcessor.submit(createLoan(2, 100));
+
+    Assert.assertTrue(batchProcessor.getYieldImprovement() > 0);
+    Assert.assertEquals(batchProcessor.getGreedyExpectedYield() + batchProcessor.getYieldImprovement(),
+        batchProcessor.getExpectedYield());
+  }
+
+  private BatchLoanProcessor createBatchProcessor(LoanProcessor loanProcessor, int windowSize, Ticker ticker) {
+    return new BatchLoanProcessor(loanProcessor, new BatchAssignmentSolver(12, 1000000), windowSize, 10,
+        TimeUnit.MILLISECONDS, true, ticker);
+  }
+
+  private LoanProcessor createLoanProcessor() {
+    // the cheap facility only fits one loan
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(new Facility(1, new Bank(1, "bank"), 0.01f, 100));
+    loanProcessor.addFacility(new Facility(2, new Bank(1, "bank"), 0.1f, 1000));
+    return loanProcessor;
+  }
+
+  private Loan createLoan(int loanId, int amountCents) {
+    return new Loan(loanId, amountCents, 0.01f, 0.2f, "CA");
+  }
+
+  private static class ManualTicker extends Ticker {
+
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryLoanReaderTest {
+
+  private static final File LARGE_LOANS = new File("src/main/resources/large/loans.csv");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMatchesCsvLoanReader() throws Exception {
+    File book = folder.newFile("loans.bin");
+    List<Loan> expected = readAll(new CsvLoanReader(LARGE_LOANS));
+    Assert.assertEquals(expected.size(), BinaryLoanWriter.convert(LARGE_LOANS, book));
+
+    try (BinaryLoanReader reader = new BinaryLoanReader(book)) {
+      Assert.assertEquals(expected.size(), reader.size());
+    }
+    assertLoansEqual(expected, readAll(new BinaryLoanReader(book)));
+  }
+
+  @Test
+  public void testResumeFromOffset() throws Exception {
+    File book = folder.newFile("loans.bin");
+    BinaryLoanWriter.convert(LARGE_LOANS, book);
+    List<Loan> expected = readAll(new CsvLoanReader(LARGE_LOANS));
+    long offset;
+    try (BinaryLoanReader reader = new BinaryLoanReader(book)) {
+      for (int i = 0; i < 100; i++) {
+        reader.next();
+      }
+      offset = reader.getOffset();
+    }
+    assertLoansEqual(expected.subList(100, expected.size()), readAll(new BinaryLoanReader(book, offset)));
+  }
+
+  @Test
+  public void testReadBatch() throws Exception {
+    File book = folder.newFile("loans.bin");
+    try (BinaryLoanWriter writer = new BinaryLoanWriter(book)) {
+      writer.write(new Loan(1, 100, 0.02f, 0.15f, "CA"));
+      writer.write(new Loan(2, 200, 0.03f, 0.16f, "OR"));
+      writer.write(new Loan(3, 300, 0.04f, 0.17f, "CA"));
+    }
+
+    LoanBatch batch = new LoanBatch(2);
+    try (BinaryLoanReader reader = new BinaryLoanReader(book)) {
+      Assert.assertEquals(2, reader.read(batch, 2));
+      Assert.assertEquals(1, reader.read(batch, 2));
+      Assert.assertEquals(0, reader.read(batch, 2));
+    }
+    Assert.assertEquals(3, batch.size());
+    Assert.assertEquals(200, batch.getAmountCents(1));
+    Assert.assertEquals(StateCodes.of("CA"), batch.getStateCode(2));
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotABook() throws Exception {
+    new BinaryLoanReader(LARGE_LOANS);
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    File book = folder.newFile("loans.bin");
+    try (BinaryLoanWriter writer = new BinaryLoanWriter(book)) {
+      writer.write(new Loan(1, 100, 0.02f, 0.15f, "CA"));
+    }
+    try (RandomAccessFile file = new RandomAccessFile(book, "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    try {
+      new BinaryLoanReader(book);
+      Assert.fail("expected a truncated state table to fail");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getCause() instanceof BufferUnderflowException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMisalignedOffset() throws Exception {
+    File book = folder.newFile("loans.bin");
+    try (BinaryLoanWriter writer = new BinaryLoanWriter(book)) {
+      writer.write(new Loan(1, 100, 0.02f, 0.15f, "CA"));
+    }
+    new BinaryLoanReader(book, BinaryLoanWriter.HEADER_SIZE + 1);
+  }
+
+  private void assertLoansEqual(List<Loan> expected, List<Loan> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getLoanId(), actual.get(i).getLoanId());
+      Assert.assertEquals(expected.get(i).getAmountCents(), actual.get(i).getAmountCents());
+      Assert.assertEquals(Float.floatToIntBits(expected.get(i).getDefaultLikelihood()),
+          Float.floatToIntBits(actual.get(i).getDefaultLikelihood()));
+      Assert.assertEquals(Float.floatToIntBits(expected.get(i).getInterestRate()),
+          Float.floatToIntBits(actual.get(i).getInterestRate()));
+      Assert.assertEquals(expected.get(i).getState(), actual.get(i).getState());
+    }
+  }
+
+  private List<Loan> readAll(LoanReader reader) throws IOException {
+    List<Loan> loans = new ArrayList<>();
+    try {
+      Loan loan;
+      while ((loan = reader.next()) != null) {
+        loans.add(loan);
+      }
+    } finally {
+      reader.close();
+    }
+    return loans;
+  }
+}
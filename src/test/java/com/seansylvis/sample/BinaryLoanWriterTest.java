@@ -0,0 +1,67 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryLoanWriterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testFormat() throws Exception {
+    File book = new File(folder.getRoot(), "loans.bin");
+    try (BinaryLoanWriter writer = new BinaryLoanWriter(book)) {
+      writer.write(new Loan(1, 100, 0.02f, 0.15f, "CA"));
+      writer.write(new Loan(2, 200, 0.03f, 0.16f, "OR"));
+      writer.write(new Loan(3, 300, 0.04f, 0.17f, "CA"));
+      Assert.assertFalse(book.exists());
+    }
+
+    // header, records, and a state count plus two names of two bytes each and their lengths
+    Assert.assertEquals(BinaryLoanWriter.HEADER_SIZE + 3 * BinaryLoanWriter.RECORD_SIZE + 4 + 2 * 4, book.length());
+    Assert.assertFalse(new File(folder.getRoot(), "loans.bin.tmp").exists());
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    File book = new File(folder.getRoot(), "loans.bin");
+    new BinaryLoanWriter(book).close();
+    try (BinaryLoanReader reader = new BinaryLoanReader(book)) {
+      Assert.assertEquals(0, reader.size());
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testConvertFailureKeepsPreviousBook() throws Exception {
+    File csv = folder.newFile("loans.csv");
+    Files.write(csv.toPath(), "interest_rate,amount,id,default_likelihood,state\n0.1,1,1,0.1,CA\n"
+        .getBytes(StandardCharsets.US_ASCII));
+    File book = new File(folder.getRoot(), "loans.bin");
+    Assert.assertEquals(1, BinaryLoanWriter.convert(csv, book));
+
+    Files.write(csv.toPath(), "interest_rate,amount,id,default_likelihood,state\n0.1,1,1,0.1,CA\n0.1,x,2,0.1,CA\n"
+        .getBytes(StandardCharsets.US_ASCII));
+    try {
+      BinaryLoanWriter.convert(csv, book);
+      Assert.fail("converted malformed loans");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertFalse(new File(folder.getRoot(), "loans.bin.tmp").exists());
+    try (BinaryLoanReader reader = new BinaryLoanReader(book)) {
+      Assert.assertEquals(1, reader.size());
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class BinaryOutputSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecords() throws Exception {
+    File directory = folder.newFolder();
+    try (BinaryOutputSink sink = new BinaryOutputSink(directory, 0)) {
+      sink.writeAssignment(1, 2);
+      sink.writeAssignment(3, OutputSink.NO_FACILITY);
+      Assert.assertEquals(2 * BinaryOutputSink.ASSIGNMENT_SIZE, sink.getAssignmentsLength());
+      sink.writeYield(2, 1L << 40);
+    }
+
+    ByteBuffer assignments = read(directory, BinaryOutputSink.ASSIGNMENTS);
+    Assert.assertEquals(2 * BinaryOutputSink.ASSIGNMENT_SIZE, assignments.remaining());
+    Assert.assertEquals(1, assignments.getInt());
+    Assert.assertEquals(2, assignments.getInt());
+    Assert.assertEquals(3, assignments.getInt());
+    Assert.assertEquals(OutputSink.NO_FACILITY, assignments.getInt());
+
+    ByteBuffer yields = read(directory, BinaryOutputSink.YIELDS);
+    Assert.assertEquals(BinaryOutputSink.YIELD_SIZE, yields.remaining());
+    Assert.assertEquals(2, yields.getInt());
+    Assert.assertEquals(1L << 40, yields.getLong());
+  }
+
+  @Test
+  public void testAppendFromLength() throws Exception {
+    File directory = folder.newFolder();
+    try (BinaryOutputSink sink = new BinaryOutputSink(directory, 0)) {
+      sink.writeAssignment(1, 2);
+      sink.writeAssignment(2, 2);
+    }
+    try (BinaryOutputSink sink = new BinaryOutputSink(directory, BinaryOutputSink.ASSIGNMENT_SIZE)) {
+      sink.writeAssignment(3, 4);
+    }
+
+    ByteBuffer assignments = read(directory, BinaryOutputSink.ASSIGNMENTS);
+    Assert.assertEquals(2 * BinaryOutputSink.ASSIGNMENT_SIZE, assignments.remaining());
+    Assert.assertEquals(1, assignments.getInt(0));
+    Assert.assertEquals(3, assignments.getInt(BinaryOutputSink.ASSIGNMENT_SIZE));
+    Assert.assertEquals(0, read(directory, BinaryOutputSink.YIELDS).remaining());
+  }
+
+  private static ByteBuffer read(File directory, String name) throws Exception {
+    return ByteBuffer.wrap(Files.readAllBytes(new File(directory, name).toPath()));
+  }
+}
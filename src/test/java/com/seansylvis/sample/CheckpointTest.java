@@ -0,0 +1,100 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CheckpointTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRestore() throws Exception {
+    List<Facility> facilities = createFacilities();
+    LoanProcessor loanProcessor = createLoanProcessor(facilities);
+    loanProcessor.process(new Loan(1, 100, 0.01f, 0.2f, "CA"));
+    loanProcessor.process(new Loan(2, 150, 0.02f, 0.3f, "NY"));
+    loanProcessor.process(new Loan(3, 500, 0.03f, 0.2f, "TX"));
+
+    File file = folder.newFile();
+    Checkpoint.write(file, loanProcessor, 1234, 56, 3);
+
+    Checkpoint checkpoint = Checkpoint.read(file);
+    Assert.assertEquals(1234, checkpoint.getInputOffset());
+    Assert.assertEquals(56, checkpoint.getOutputOffset());
+    Assert.assertEquals(3, checkpoint.getLoansProcessed());
+
+    LoanProcessor restored = createLoanProcessor(facilities);
+    checkpoint.restore(restored);
+    for (Facility facility : facilities) {
+      FacilityLedger expected = loanProcessor.getLedger(facility);
+      FacilityLedger actual = restored.getLedger(facility);
+      Assert.assertEquals(expected.getCommittedCents(), actual.getCommittedCents());
+      Assert.assertEquals(expected.getExpectedYield(), actual.getExpectedYield());
+      Assert.assertEquals(expected.getStateExposureCents("NY"), actual.getStateExposureCents("NY"));
+      Assert.assertEquals(expected.getFundedLoans().toString(), actual.getFundedLoans().toString());
+    }
+
+    // both continue identically
+    Loan loan = new Loan(4, 100, 0.01f, 0.2f, "CA");
+    Assert.assertEquals(loanProcessor.process(loan), restored.process(loan));
+  }
+
+  @Test
+  public void testReplacesPreviousCheckpoint() throws Exception {
+    LoanProcessor loanProcessor = createLoanProcessor(createFacilities());
+    File file = new File(folder.getRoot(), "checkpoint.bin");
+    Checkpoint.write(file, loanProcessor, 10, 20, 0);
+    loanProcessor.process(new Loan(1, 100, 0.01f, 0.2f, "CA"));
+    Checkpoint.write(file, loanProcessor, 30, 40, 1);
+
+    Assert.assertEquals(30, Checkpoint.read(file).getInputOffset());
+    Assert.assertArrayEquals(new String[] {"checkpoint.bin"}, folder.getRoot().list());
+  }
+
+  @Test(expected = IOException.class)
+  public void testMismatchedFacilities() throws Exception {
+    File file = folder.newFile();
+    Checkpoint.write(file, createLoanProcessor(createFacilities()), 0, 0, 0);
+    Checkpoint.read(file).restore(new LoanProcessor());
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated() throws Exception {
+    LoanProcessor loanProcessor = createLoanProcessor(createFacilities());
+    loanProcessor.process(new Loan(1, 100, 0.01f, 0.2f, "CA"));
+    File file = folder.newFile();
+    Checkpoint.write(file, loanProcessor, 0, 0, 1);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(randomAccessFile.length() - 1);
+    }
+    Checkpoint.read(file).restore(createLoanProcessor(createFacilities()));
+  }
+
+  private List<Facility> createFacilities() {
+    Bank bank = new Bank(1, "bank");
+    List<Facility> facilities = new ArrayList<>();
+    facilities.add(new Facility(1, bank, 0.01f, 200));
+    facilities.add(new Facility(2, bank, 0.02f, 1000));
+    return facilities;
+  }
+
+  private LoanProcessor createLoanProcessor(List<Facility> facilities) {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    for (Facility facility : facilities) {
+      loanProcessor.addFacility(facility);
+    }
+    return loanProcessor;
+  }
+}
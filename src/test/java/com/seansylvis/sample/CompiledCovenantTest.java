@@ -0,0 +1,101 @@
+package com.seansylvis.sample;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CompiledCovenantTest {
+
+  @Test
+  public void testAllowNoCovenants() {
+    CompiledCovenant covenant = CompiledCovenant.compile(Collections.<Covenant>emptyList());
+    Assert.assertTrue(covenant.apply(createLoan(0.9f, "CA")));
+    Assert.assertFalse(covenant.hasResidualCovenants());
+  }
+
+  @Test
+  public void testFuseDefaultLikelihood() {
+    CompiledCovenant covenant = CompiledCovenant.compile(Arrays.<Covenant>asList(
+        new DefaultLikelihoodCovenant(0.5f),
+        new DefaultLikelihoodCovenant(0.2f),
+        new DefaultLikelihoodCovenant(0.3f)));
+    Assert.assertEquals(0.2f, covenant.getMaxDefaultLikelihood(), 0.0f);
+    Assert.assertTrue(covenant.apply(createLoan(0.2f, "CA")));
+    Assert.assertFalse(covenant.apply(createLoan(0.25f, "CA")));
+  }
+
+  @Test
+  public void testFuseBannedStates() {
+    CompiledCovenant covenant = CompiledCovenant.compile(Arrays.<Covenant>asList(
+        new BannedStateCovenant("CA"),
+        new BannedStateCovenant("OR")));
+    Assert.assertEquals(ImmutableSet.of("CA", "OR"), covenant.getBannedStates());
+    Assert.assertFalse(covenant.apply(createLoan(0.1f, "CA")));
+    Assert.assertFalse(covenant.apply(createLoan(0.1f, "OR")));
+    Assert.assertTrue(covenant.apply(createLoan(0.1f, "WA")));
+  }
+
+  @Test
+  public void testBansStateCode() {
+    CompiledCovenant covenant = CompiledCovenant.compile(Arrays.<Covenant>asList(
+        new BannedStateCovenant("CA"),
+        new DefaultLikelihoodCovenant(0.5f)));
+    Assert.assertTrue(covenant.bansState(StateCodes.of("CA")));
+    Assert.assertFalse(covenant.bansState(StateCodes.of("WA")));
+    // codes registered after compiling are beyond the mask, and never banned
+    int later = StateCodes.of("compiled-covenant-test-" + System.nanoTime());
+    Assert.assertFalse(covenant.bansState(later));
+    Assert.assertTrue(covenant.accepts(0.4f, later));
+    Assert.assertFalse(covenant.accepts(0.4f, StateCodes.of("CA")));
+    Assert.assertFalse(covenant.accepts(0.6f, StateCodes.of("WA")));
+  }
+
+  @Test
+  public void testResidualCovenant() {
+    Covenant smallLoansOnly = new Covenant() {
+      @Override
+      public boolean apply(Loan loan) {
+        return loan.getAmountCents() < 50;
+      }
+
+      @Override
+      public void compile(CompiledCovenant.Builder builder) {
+        builder.addResidual(this);
+      }
+    };
+    CompiledCovenant covenant = CompiledCovenant.compile(Arrays.asList(smallLoansOnly, new BannedStateCovenant("CA")));
+    Assert.assertTrue(covenant.hasResidualCovenants());
+    Assert.assertFalse(covenant.apply(createLoan(0.1f, "WA")));
+  }
+
+  @Test
+  public void testCompileCompiled() {
+    CompiledCovenant inner = CompiledCovenant.compile(Arrays.<Covenant>asList(
+        new BannedStateCovenant("CA"),
+        new DefaultLikelihoodCovenant(0.5f)));
+    CompiledCovenant covenant = CompiledCovenant.compile(Arrays.asList(inner, new DefaultLikelihoodCovenant(0.7f)));
+    Assert.assertEquals(0.5f, covenant.getMaxDefaultLikelihood(), 0.0f);
+    Assert.assertEquals(ImmutableSet.of("CA"), covenant.getBannedStates());
+  }
+
+  @Test
+  public void testFacilityRecompilesAfterBankCovenant() {
+    Facility facility = new Facility(1, new Bank(1, "bank"), 0.1f, 100);
+    facility.addCovenant(new BannedStateCovenant("OR"));
+    Loan loan = createLoan(0.1f, "CA");
+    Assert.assertTrue(facility.apply(loan));
+    facility.getBank().addCovenant(new BannedStateCovenant("CA"));
+    Assert.assertFalse(facility.apply(loan));
+  }
+
+  private Loan createLoan(float defaultLikelihood, String state) {
+    return new Loan(1, 100, defaultLikelihood, 0.1f, state);
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class ConcurrentLoanProcessorTest {
+
+  @Test
+  public void testProcessNoFacilities() {
+    ConcurrentLoanProcessor loanProcessor = new ConcurrentLoanProcessor(Collections.<Facility>emptyList());
+    Assert.assertNull(loanProcessor.process(createLoan(1, 100, "CA")));
+  }
+
+  @Test
+  public void testProcessMatchesLoanProcessor() {
+    List<Facility> facilities = createFacilities(20, new Random(7));
+    ConcurrentLoanProcessor concurrentProcessor = new ConcurrentLoanProcessor(facilities);
+    LoanProcessor loanProcessor = new LoanProcessor();
+    for (Facility facility : facilities) {
+      loanProcessor.addFacility(facility);
+    }
+
+    for (Loan loan : createLoans(2000, new Random(11))) {
+      Assert.assertEquals(loanProcessor.process(loan), concurrentProcessor.process(loan));
+    }
+    for (Facility facility : facilities) {
+      Assert.assertEquals(loanProcessor.getFundedLoans(facility), concurrentProcessor.getFundedLoans(facility));
+    }
+  }
+
+  @Test
+  public void testProcessConcurrently() throws Exception {
+    final List<Facility> facilities = createFacilities(20, new Random(7));
+    final ConcurrentLoanProcessor loanProcessor = new ConcurrentLoanProcessor(facilities);
+    final List<Loan> loans = createLoans(100000, new Random(11));
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger funded = new AtomicInteger();
+
+    int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          int i;
+          while ((i = next.getAndIncrement()) < loans.size()) {
+            if (loanProcessor.process(loans.get(i)) != null) {
+              funded.incrementAndGet();
+            }
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    Set<Loan> fundedLoans = new HashSet<>();
+    for (Facility facility : facilities) {
+      long sum = 0;
+      for (Loan loan : loanProcessor.getFundedLoans(facility)) {
+        Assert.assertTrue(facility.apply(loan));
+        Assert.assertTrue(fundedLoans.add(loan));
+        sum += loan.getAmountCents();
+      }
+      Assert.assertEquals(sum, loanProcessor.getCommittedCents(facility));
+      Assert.assertTrue(sum <= facility.getTotalAmountCents());
+    }
+    Assert.assertEquals(funded.get(), fundedLoans.size());
+  }
+
+  private List<Facility> createFacilities(int count, Random random) {
+    List<String> states = Arrays.asList("CA", "OR", "WA", "ID");
+    List<Facility> facilities = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Facility facility = new Facility(i, new Bank(i, "bank"), random.nextInt(10) / 100.0f,
+          10000 + random.nextInt(100000));
+      facility.addCovenant(new BannedStateCovenant(states.get(random.nextInt(states.size()))));
+      facility.addCovenant(new DefaultLikelihoodCovenant(random.nextFloat()));
+      facilities.add(facility);
+    }
+    return facilities;
+  }
+
+  private List<Loan> createLoans(int count, Random random) {
+    List<String> states = Arrays.asList("CA", "OR", "WA", "ID", "NV");
+    List<Loan> loans = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      loans.add(new Loan(i, 1 + random.nextInt(1000), random.nextFloat(), 0.15f,
+          states.get(random.nextInt(states.size()))));
+    }
+    return loans;
+  }
+
+  private Loan createLoan(int loanId, int amountCents, String state) {
+    return new Loan(loanId, amountCents, 0.5f, 0.1f, state);
+  }
+
+}
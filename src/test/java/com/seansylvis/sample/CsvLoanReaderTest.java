@@ -0,0 +1,51 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CsvLoanReaderTest {
+
+  private static final String HEADER = "interest_rate,amount,id,default_likelihood,state\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testNext() throws Exception {
+    try (CsvLoanReader reader = new CsvLoanReader(write(HEADER + "0.15,2500,7,0.05,NY\n"))) {
+      Loan loan = reader.next();
+      Assert.assertEquals(7, loan.getLoanId());
+      Assert.assertEquals(2500, loan.getAmountCents());
+      Assert.assertEquals(0.05f, loan.getDefaultLikelihood(), 0.0f);
+      Assert.assertEquals(0.15f, loan.getInterestRate(), 0.0f);
+      Assert.assertEquals("NY", loan.getState());
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testTrailingCharactersAfterInteger() throws Exception {
+    try (CsvLoanReader reader = new CsvLoanReader(write(HEADER + "0.1,12abc,1,0.1,CA\n"))) {
+      reader.next();
+    }
+  }
+
+  private File write(String contents) throws IOException {
+    File file = folder.newFile();
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+}
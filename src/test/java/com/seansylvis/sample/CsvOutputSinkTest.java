@@ -0,0 +1,94 @@
+package com.seansylvis.sample;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class CsvOutputSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMatchesCsvPrinter() throws Exception {
+    File directory = folder.newFolder();
+    try (CsvOutputSink sink = new CsvOutputSink(directory, 0)) {
+      sink.writeAssignment(1, 2);
+      sink.writeAssignment(20, OutputSink.NO_FACILITY);
+      sink.writeAssignment(Integer.MAX_VALUE, 3);
+      sink.writeYield(2, 12345);
+      sink.writeYield(3, -7);
+      sink.writeYield(4, Long.MIN_VALUE);
+    }
+
+    File expected = folder.newFolder();
+    try (FileWriter fileWriter = new FileWriter(new File(expected, CsvOutputSink.ASSIGNMENTS))) {
+      CSVPrinter csvPrinter = new CSVPrinter(fileWriter, CSVFormat.DEFAULT.withHeader("loan_id", "facility_id"));
+      csvPrinter.printRecord(1, 2);
+      csvPrinter.printRecord(20, "");
+      csvPrinter.printRecord(Integer.MAX_VALUE, 3);
+    }
+    try (FileWriter fileWriter = new FileWriter(new File(expected, CsvOutputSink.YIELDS))) {
+      CSVPrinter csvPrinter = new CSVPrinter(fileWriter,
+          CSVFormat.DEFAULT.withHeader("facility_id", "expected_yield"));
+      csvPrinter.printRecord(2, 12345);
+      csvPrinter.printRecord(3, -7);
+      csvPrinter.printRecord(4, Long.MIN_VALUE);
+    }
+
+    assertSameContent(expected, directory, CsvOutputSink.ASSIGNMENTS);
+    assertSameContent(expected, directory, CsvOutputSink.YIELDS);
+  }
+
+  @Test
+  public void testAppendFromLength() throws Exception {
+    File directory = folder.newFolder();
+    long length;
+    try (CsvOutputSink sink = new CsvOutputSink(directory, 0)) {
+      sink.writeAssignment(1, 2);
+      length = sink.getAssignmentsLength();
+      // written after the length was taken, so discarded on reopening
+      sink.writeAssignment(2, 2);
+    }
+    try (CsvOutputSink sink = new CsvOutputSink(directory, length)) {
+      sink.writeAssignment(3, OutputSink.NO_FACILITY);
+    }
+
+    Assert.assertEquals("loan_id,facility_id\r\n1,2\r\n3,\r\n", read(directory, CsvOutputSink.ASSIGNMENTS));
+    Assert.assertEquals("facility_id,expected_yield\r\n", read(directory, CsvOutputSink.YIELDS));
+  }
+
+  @Test
+  public void testManyRecords() throws Exception {
+    // enough records to fill the output buffer several times over
+    File directory = folder.newFolder();
+    StringBuilder expected = new StringBuilder("loan_id,facility_id\r\n");
+    try (CsvOutputSink sink = new CsvOutputSink(directory, 0)) {
+      for (int i = 0; i < 200000; i++) {
+        sink.writeAssignment(i, i % 7);
+        expected.append(i).append(',').append(i % 7).append("\r\n");
+      }
+      Assert.assertEquals(expected.length(), sink.getAssignmentsLength());
+    }
+
+    Assert.assertEquals(expected.toString(), read(directory, CsvOutputSink.ASSIGNMENTS));
+  }
+
+  private static void assertSameContent(File expected, File actual, String name) throws Exception {
+    Assert.assertEquals(read(expected, name), read(actual, name));
+  }
+
+  private static String read(File directory, String name) throws Exception {
+    return new String(Files.readAllBytes(new File(directory, name).toPath()), "US-ASCII");
+  }
+}
@@ -0,0 +1,89 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FacilityIndexTest {
+
+  @Test
+  public void testNoCovenants() {
+    FacilityIndex index = createIndex(createFacility(1), createFacility(2));
+    Assert.assertEquals(Arrays.asList(0, 1), candidates(index, 0.9f, "CA"));
+  }
+
+  @Test
+  public void testBannedStates() {
+    Facility facility0 = createFacility(1);
+    facility0.addCovenant(new BannedStateCovenant("CA"));
+    Facility facility1 = createFacility(2);
+    facility1.getBank().addCovenant(new BannedStateCovenant("OR"));
+    FacilityIndex index = createIndex(facility0, facility1);
+
+    Assert.assertEquals(Arrays.asList(1), candidates(index, 0.1f, "CA"));
+    Assert.assertEquals(Arrays.asList(0), candidates(index, 0.1f, "OR"));
+    Assert.assertEquals(Arrays.asList(0, 1), candidates(index, 0.1f, "WA"));
+  }
+
+  @Test
+  public void testDefaultLikelihoods() {
+    Facility facility0 = createFacility(1);
+    facility0.addCovenant(new DefaultLikelihoodCovenant(0.2f));
+    Facility facility1 = createFacility(2);
+    facility1.addCovenant(new DefaultLikelihoodCovenant(0.1f));
+    Facility facility2 = createFacility(3);
+    FacilityIndex index = createIndex(facility0, facility1, facility2);
+
+    Assert.assertEquals(Arrays.asList(0, 1, 2), candidates(index, 0.1f, "CA"));
+    Assert.assertEquals(Arrays.asList(0, 2), candidates(index, 0.15f, "CA"));
+    Assert.assertEquals(Arrays.asList(0, 2), candidates(index, 0.2f, "CA"));
+    Assert.assertEquals(Arrays.asList(2), candidates(index, 0.5f, "CA"));
+    Assert.assertEquals(Arrays.asList(2), candidates(index, Float.NaN, "CA"));
+  }
+
+  @Test
+  public void testManyFacilities() {
+    List<Facility> facilities = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 150; i++) {
+      Facility facility = createFacility(i);
+      if (i % 3 == 0) {
+        facility.addCovenant(new BannedStateCovenant("CA"));
+      } else {
+        expected.add(i);
+      }
+      facilities.add(facility);
+    }
+    FacilityIndex index = createIndex(facilities.toArray(new Facility[facilities.size()]));
+    Assert.assertEquals(150, index.size());
+    Assert.assertEquals(expected, candidates(index, 0.1f, "CA"));
+  }
+
+  private List<Integer> candidates(FacilityIndex index, float defaultLikelihood, String state) {
+    long[] stateMask = index.getStateMask(StateCodes.of(state));
+    long[] likelihoodMask = index.getLikelihoodMask(defaultLikelihood);
+    List<Integer> ranks = new ArrayList<>();
+    for (int rank = 0; rank < index.size(); rank++) {
+      long bit = 1L << rank;
+      if ((stateMask[rank >>> 6] & likelihoodMask[rank >>> 6] & bit) != 0) {
+        ranks.add(rank);
+      }
+    }
+    return ranks;
+  }
+
+  private FacilityIndex createIndex(Facility... facilities) {
+    return new FacilityIndex(Arrays.asList(facilities));
+  }
+
+  private Facility createFacility(int facilityId) {
+    return new Facility(facilityId, new Bank(1, "bank"), 0.1f, 100);
+  }
+
+}
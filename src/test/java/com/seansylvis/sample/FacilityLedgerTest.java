@@ -0,0 +1,183 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FacilityLedgerTest {
+
+  private static final int FOOTPRINT_LOANS = 100000;
+
+  @Test
+  public void testEmpty() {
+    FacilityLedger ledger = createLedger(100);
+    Assert.assertEquals(0, ledger.getCommittedCents());
+    Assert.assertEquals(100, ledger.getRemainingCents());
+    Assert.assertTrue(ledger.getFundedLoans().isEmpty());
+  }
+
+  @Test
+  public void testFund() {
+    FacilityLedger ledger = createLedger(100);
+    Loan loan0 = createLoan(1, 60);
+    Loan loan1 = createLoan(2, 40);
+    Assert.assertTrue(ledger.canFund(loan0));
+    ledger.fund(loan0);
+    Assert.assertTrue(ledger.canFund(loan1));
+    ledger.fund(loan1);
+
+    Assert.assertEquals(100, ledger.getCommittedCents());
+    Assert.assertEquals(0, ledger.getRemainingCents());
+    Assert.assertEquals(Arrays.asList(loan0, loan1), ledger.getFundedLoans());
+    Assert.assertFalse(ledger.canFund(createLoan(3, 1)));
+  }
+
+  @Test
+  public void testFundLargeFacility() {
+    FacilityLedger ledger = createLedger(Integer.MAX_VALUE);
+    Loan loan = createLoan(1, Integer.MAX_VALUE / 2 + 1);
+    ledger.fund(loan);
+    // a second loan would overflow an int sum, but must still be rejected
+    Assert.assertFalse(ledger.canFund(loan));
+    Assert.assertEquals(Integer.MAX_VALUE / 2 + 1, ledger.getCommittedCents());
+  }
+
+  @Test
+  public void testFundColumns() {
+    FacilityLedger ledger = createLedger(100);
+    Loan loan = new Loan(1, 60, 0.1f, 0.2f, "OR");
+    ledger.fund(loan.getLoanId(), loan.getAmountCents(), loan.getDefaultLikelihood(), loan.getInterestRate(),
+        loan.getStateCode());
+
+    Assert.assertEquals(60, ledger.getCommittedCents());
+    Assert.assertEquals(loan.computeExpectedYield(ledger.getFacility()), ledger.getExpectedYield());
+    Assert.assertEquals(60, ledger.getStateExposureCents("OR"));
+    Assert.assertEquals(Arrays.asList(loan), ledger.getFundedLoans());
+  }
+
+  @Test
+  public void testFundedLoansSpanChunks() {
+    FacilityLedger ledger = createLedger(Integer.MAX_VALUE);
+    for (int i = 0; i < 3000; i++) {
+      ledger.fund(createLoan(i, i + 1));
+    }
+    List<Loan> fundedLoans = ledger.getFundedLoans();
+    ledger.fund(createLoan(3000, 1));
+
+    // the funded loans are those funded when they were asked for
+    Assert.assertEquals(3000, fundedLoans.size());
+    Assert.assertEquals(3001, ledger.getFundedLoanCount());
+    for (int i = 0; i < fundedLoans.size(); i++) {
+      Assert.assertEquals(createLoan(i, i + 1), fundedLoans.get(i));
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testFundedLoansOutOfBounds() {
+    FacilityLedger ledger = createLedger(100);
+    ledger.fund(createLoan(1, 60));
+    ledger.getFundedLoans().get(1);
+  }
+
+  @Test
+  public void testFootprint() {
+    Allocations allocations = Allocations.ofCurrentThread();
+
+    FacilityLedger ledger = createLedger(Integer.MAX_VALUE);
+    int stateCode = StateCodes.of("CA");
+    long before = allocations.getAllocatedBytes();
+    for (int i = 0; i < FOOTPRINT_LOANS; i++) {
+      ledger.fund(i, 1, 0.1f, 0.2f, stateCode);
+    }
+    long allocated = allocations.getAllocatedBytes() - before;
+
+    Assert.assertEquals(FOOTPRINT_LOANS, ledger.getFundedLoanCount());
+    // 18 bytes per loan in columns, against a 32-byte Loan and a reference to it
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < FOOTPRINT_LOANS * 20L);
+  }
+
+  @Test
+  public void testExpectedYield() {
+    FacilityLedger ledger = createLedger(1000);
+    Loan loan0 = createLoan(1, 100);
+    Loan loan1 = createLoan(2, 200);
+    ledger.fund(loan0);
+    ledger.fund(loan1);
+    Facility facility = ledger.getFacility();
+    Assert.assertEquals(loan0.computeExpectedYield(facility) + loan1.computeExpectedYield(facility),
+        ledger.getExpectedYield());
+    Assert.assertEquals(facility.computeExpectedYield(ledger.getFundedLoans()), ledger.getExpectedYield());
+  }
+
+  @Test
+  public void testRiskAggregates() {
+    FacilityLedger ledger = createLedger(Integer.MAX_VALUE);
+    Assert.assertEquals(0, ledger.getExpectedLossCents());
+    Assert.assertEquals(0.0, ledger.getStateConcentration("CA"), 0.0);
+
+    ledger.fund(new Loan(1, 1000, 0.1f, 0.2f, "CA"));
+    ledger.fund(new Loan(2, 3000, 0.05f, 0.2f, "NY"));
+    ledger.fund(new Loan(3, 4000, 0.0f, 0.2f, "CA"));
+
+    Assert.assertEquals(100 + 150, ledger.getExpectedLossCents());
+    Assert.assertEquals(5000, ledger.getStateExposureCents("CA"));
+    Assert.assertEquals(3000, ledger.getStateExposureCents("NY"));
+    Assert.assertEquals(0, ledger.getStateExposureCents("TX"));
+    Assert.assertEquals(0.625, ledger.getStateConcentration("CA"), 1e-9);
+  }
+
+  @Test
+  public void testExposureToUnknownState() {
+    FacilityLedger ledger = createLedger(100);
+    ledger.fund(createLoan(1, 60));
+    int codes = StateCodes.size();
+    Assert.assertEquals(0, ledger.getStateExposureCents("never funded anywhere"));
+    Assert.assertEquals(0.0, ledger.getStateConcentration("never funded anywhere"), 0.0);
+    Assert.assertEquals(codes, StateCodes.size());
+  }
+
+  @Test
+  public void testAggregatesDoNotOverflow() {
+    FacilityLedger ledger = new FacilityLedger(new Facility(1, new Bank(1, "bank"), 0.0f, Integer.MAX_VALUE));
+    Loan loan = new Loan(1, Integer.MAX_VALUE / 2, 0.0f, 1.0f, "CA");
+    ledger.fund(loan);
+    ledger.fund(loan);
+    Assert.assertEquals(2L * loan.computeExpectedYield(ledger.getFacility()), ledger.getExpectedYield());
+    Assert.assertEquals(2L * (Integer.MAX_VALUE / 2), ledger.getStateExposureCents("CA"));
+  }
+
+  @Test
+  public void testSetFacility() {
+    FacilityLedger ledger = createLedger(100);
+    Loan loan0 = createLoan(1, 60);
+    ledger.fund(loan0);
+    long expectedYield = ledger.getExpectedYield();
+
+    Facility reloaded = new Facility(1, new Bank(1, "bank"), 0.01f, 200);
+    ledger.setFacility(reloaded);
+    Assert.assertEquals(140, ledger.getRemainingCents());
+    Loan loan1 = createLoan(2, 100);
+    ledger.fund(loan1);
+    Assert.assertEquals(expectedYield + loan1.computeExpectedYield(reloaded), ledger.getExpectedYield());
+    Assert.assertEquals(2, ledger.getFundedLoans().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSetOtherFacility() {
+    createLedger(100).setFacility(new Facility(2, new Bank(1, "bank"), 0.05f, 100));
+  }
+
+  private FacilityLedger createLedger(int totalAmountCents) {
+    return new FacilityLedger(new Facility(1, new Bank(1, "bank"), 0.05f, totalAmountCents));
+  }
+
+  private Loan createLoan(int loanId, int amountCents) {
+    return new Loan(loanId, amountCents, 0.1f, 0.2f, "CA");
+  }
+
+}
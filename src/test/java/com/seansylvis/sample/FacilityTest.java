@@ -3,6 +3,8 @@ package com.seansylvis.sample;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 /**
  * @author Sean Sylvis (ssylvis@gmail.com)
  */
@@ -85,6 +87,18 @@ public class FacilityTest {
     Assert.assertFalse(facility.apply(loan));
   }
 
+  @Test
+  public void testComputeExpectedYieldBatch() {
+    Facility facility = createFacility();
+    LoanBatch batch = new LoanBatch(2);
+    Loan loan0 = new Loan(1, 100, 0.05f, 0.2f, "CA");
+    Loan loan1 = new Loan(2, 5000, 0.1f, 0.15f, "OR");
+    batch.add(loan0);
+    batch.add(loan1);
+    Assert.assertEquals(facility.computeExpectedYield(Arrays.asList(loan0, loan1)),
+        facility.computeExpectedYield(batch));
+  }
+
   private Covenant createCovenant(String bannedState) {
     return new BannedStateCovenant(bannedState);
   }
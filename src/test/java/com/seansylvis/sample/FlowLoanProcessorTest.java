@@ -0,0 +1,296 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class FlowLoanProcessorTest {
+
+  @Test
+  public void testAssignmentsInOrder() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(100), 2);
+    LoanPublisher publisher = new LoanPublisher(createLoans(5, 30));
+    publisher.subscribe(processor);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    // the first three loans fit in the facility, and the rest do not
+    Assert.assertEquals(5, subscriber.assignments.size());
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(i, subscriber.assignments.get(i).getLoan().getLoanId());
+      Assert.assertEquals(i < 3, subscriber.assignments.get(i).isFunded());
+    }
+    Assert.assertTrue(subscriber.completed);
+    Assert.assertNull(subscriber.error);
+    // unbounded demand is still requested from upstream a batch at a time
+    Assert.assertEquals(Arrays.asList(2L, 2L, 2L), publisher.requests);
+  }
+
+  @Test
+  public void testBackpressure() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 4);
+    LoanPublisher publisher = new LoanPublisher(createLoans(10, 10));
+    publisher.subscribe(processor);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+
+    // nothing is requested from upstream until results are demanded
+    Assert.assertTrue(publisher.requests.isEmpty());
+    subscriber.request(3);
+    Assert.assertEquals(3, subscriber.assignments.size());
+    Assert.assertEquals(Collections.singletonList(3L), publisher.requests);
+    Assert.assertEquals(3, publisher.sent);
+
+    subscriber.request(6);
+    Assert.assertEquals(9, subscriber.assignments.size());
+    Assert.assertEquals(Arrays.asList(3L, 4L, 2L), publisher.requests);
+    Assert.assertFalse(subscriber.completed);
+
+    subscriber.request(5);
+    Assert.assertEquals(10, subscriber.assignments.size());
+    Assert.assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void testUpstreamError() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+    subscriber.request(1);
+    processor.onSubscribe(new NoOpSubscription());
+    processor.onNext(new Loan(1, 10, 0.1f, 0.2f, "CA"));
+    IllegalStateException error = new IllegalStateException("failed");
+    processor.onError(error);
+
+    Assert.assertEquals(1, subscriber.assignments.size());
+    Assert.assertSame(error, subscriber.error);
+    Assert.assertFalse(subscriber.completed);
+  }
+
+  @Test
+  public void testInvalidRequest() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    LoanPublisher publisher = new LoanPublisher(createLoans(10, 10));
+    publisher.subscribe(processor);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+    subscriber.request(0);
+
+    Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    Assert.assertTrue(publisher.cancelled);
+  }
+
+  @Test
+  public void testInvalidRequestBeforeUpstream() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+    subscriber.request(-1);
+    Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+    // upstream subscribing afterwards is cancelled
+    LoanPublisher publisher = new LoanPublisher(createLoans(10, 10));
+    publisher.subscribe(processor);
+    Assert.assertTrue(publisher.cancelled);
+    Assert.assertTrue(publisher.requests.isEmpty());
+  }
+
+  @Test
+  public void testCancel() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    LoanPublisher publisher = new LoanPublisher(createLoans(10, 10));
+    publisher.subscribe(processor);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    processor.subscribe(subscriber);
+    subscriber.request(2);
+    subscriber.subscription.cancel();
+    subscriber.request(2);
+
+    Assert.assertEquals(2, subscriber.assignments.size());
+    Assert.assertTrue(publisher.cancelled);
+    Assert.assertFalse(subscriber.completed);
+  }
+
+  @Test
+  public void testSingleSubscriber() {
+    FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    processor.subscribe(new RecordingSubscriber());
+    RecordingSubscriber second = new RecordingSubscriber();
+    processor.subscribe(second);
+    Assert.assertTrue(second.error instanceof IllegalStateException);
+  }
+
+  @Test
+  public void testNoSignalsBeforeOnSubscribeReturns() {
+    final FlowLoanProcessor processor = new FlowLoanProcessor(createLoanProcessor(1000), 8);
+    processor.onSubscribe(new NoOpSubscription());
+    final List<String> signals = new ArrayList<>();
+    processor.subscribe(new RecordingSubscriber() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        // upstream completing while the subscriber is still being subscribed
+        processor.onComplete();
+        signals.add("subscribed");
+      }
+
+      @Override
+      public void onComplete() {
+        signals.add("completed");
+      }
+    });
+
+    Assert.assertEquals(Arrays.asList("subscribed", "completed"), signals);
+  }
+
+  @Test
+  public void testSubmissionPublisher() throws Exception {
+    LoanProcessor loanProcessor = createLoanProcessor(5000);
+    FlowLoanProcessor processor = new FlowLoanProcessor(loanProcessor, 16);
+    final List<Assignment> assignments = Collections.synchronizedList(new ArrayList<Assignment>());
+    final CountDownLatch completed = new CountDownLatch(1);
+    processor.subscribe(new Flow.Subscriber<Assignment>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Assignment assignment) {
+        assignments.add(assignment);
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+      }
+
+      @Override
+      public void onComplete() {
+        completed.countDown();
+      }
+    });
+
+    List<Loan> loans = createLoans(1000, 10);
+    try (SubmissionPublisher<Loan> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(processor);
+      for (Loan loan : loans) {
+        publisher.submit(loan);
+      }
+    }
+    Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+
+    Assert.assertEquals(loans.size(), assignments.size());
+    for (int i = 0; i < loans.size(); i++) {
+      Assert.assertEquals(i, assignments.get(i).getLoan().getLoanId());
+      Assert.assertEquals(i < 500, assignments.get(i).isFunded());
+    }
+  }
+
+  private LoanProcessor createLoanProcessor(int totalAmountCents) {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(new Facility(1, new Bank(1, "bank"), 0.01f, totalAmountCents));
+    return loanProcessor;
+  }
+
+  private List<Loan> createLoans(int count, int amountCents) {
+    List<Loan> loans = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      loans.add(new Loan(i, amountCents, 0.1f, 0.2f, "CA"));
+    }
+    return loans;
+  }
+
+  /**
+   * Publisher emitting loans synchronously as they are requested, and recording each request.
+   */
+  private static class LoanPublisher implements Flow.Publisher<Loan> {
+
+    private final List<Loan> loans;
+    private final List<Long> requests = new ArrayList<>();
+    private int sent;
+    private boolean cancelled;
+
+    LoanPublisher(List<Loan> loans) {
+      this.loans = loans;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Loan> subscriber) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+          requests.add(n);
+          for (long i = 0; i < n && sent < loans.size() && !cancelled; i++) {
+            subscriber.onNext(loans.get(sent++));
+          }
+          if (sent == loans.size() && !cancelled) {
+            subscriber.onComplete();
+          }
+        }
+
+        @Override
+        public void cancel() {
+          cancelled = true;
+        }
+      });
+    }
+  }
+
+  private static class RecordingSubscriber implements Flow.Subscriber<Assignment> {
+
+    private final List<Assignment> assignments = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private boolean completed;
+    private Throwable error;
+
+    void request(long n) {
+      subscription.request(n);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Assignment assignment) {
+      assignments.add(assignment);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  private static class NoOpSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class HistogramTest {
+
+  @Test
+  public void testEmpty() {
+    Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0.0, histogram.getMean(), 0.0);
+    Assert.assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void testRecord() {
+    Histogram histogram = new Histogram();
+    for (int value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(5050, histogram.getSum());
+    Assert.assertEquals(50.5, histogram.getMean(), 1e-9);
+    Assert.assertEquals(100, histogram.getMax());
+    // the median, 50, falls in the 32-63 bucket
+    Assert.assertEquals(63, histogram.getPercentile(50));
+    // bucket bounds are capped by the maximum
+    Assert.assertEquals(100, histogram.getPercentile(99));
+    Assert.assertEquals(1, histogram.getPercentile(0.5));
+  }
+
+  @Test
+  public void testZeroAndLargeValues() {
+    Histogram histogram = new Histogram();
+    histogram.record(0);
+    histogram.record(Long.MAX_VALUE);
+    Assert.assertEquals(0, histogram.getPercentile(50));
+    Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+  }
+}
@@ -0,0 +1,111 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class JournaledOutputSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testWritesOnlyDurableAssignments() throws Exception {
+    try (AssignmentJournal journal = new AssignmentJournal(new File(folder.getRoot(), "journal"), 16)) {
+      DurabilitySink delegate = new DurabilitySink(journal);
+      JournaledOutputSink sink = new JournaledOutputSink(delegate, journal, journal.getAppended());
+      for (int loanId = 1; loanId <= 5; loanId++) {
+        append(journal, loanId, 1);
+      }
+      Assert.assertEquals(0, journal.getDurable());
+
+      sink.writeAssignment(1, 1);
+      // a single sync covers every decision appended so far
+      Assert.assertEquals(5, journal.getDurable());
+      for (int loanId = 2; loanId <= 5; loanId++) {
+        sink.writeAssignment(loanId, 1);
+      }
+      append(journal, 6, OutputSink.NO_FACILITY);
+      sink.writeAssignment(6, OutputSink.NO_FACILITY);
+      sink.close();
+
+      List<Integer> expected = new ArrayList<>();
+      for (int loanId = 1; loanId <= 6; loanId++) {
+        expected.add(loanId);
+      }
+      Assert.assertEquals(expected, delegate.loanIds);
+      Assert.assertEquals(6, journal.getDurable());
+    }
+  }
+
+  @Test
+  public void testFollowsReopenedJournal() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      append(journal, 1, 1);
+    }
+    try (AssignmentJournal journal = new AssignmentJournal(file, 16)) {
+      DurabilitySink delegate = new DurabilitySink(journal);
+      JournaledOutputSink sink = new JournaledOutputSink(delegate, journal, journal.getAppended());
+      append(journal, 2, 1);
+      sink.writeAssignment(2, 1);
+      Assert.assertEquals(2, journal.getDurable());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnjournaledAssignment() throws Exception {
+    try (AssignmentJournal journal = new AssignmentJournal(new File(folder.getRoot(), "journal"), 16)) {
+      new JournaledOutputSink(new DurabilitySink(journal), journal, 0).writeAssignment(1, 1);
+    }
+  }
+
+  private static void append(AssignmentJournal journal, int loanId, int facilityId) throws Exception {
+    journal.append(new Loan(loanId, 100, 0.1f, 0.2f, "CA"), facilityId);
+  }
+
+  /**
+   * Sink recording the loan of each assignment, and checking that its decision was durable when it was written, for
+   * journals whose sequence numbers are the loan ids.
+   */
+  private static class DurabilitySink implements OutputSink {
+
+    final AssignmentJournal journal;
+    final List<Integer> loanIds = new ArrayList<>();
+
+    DurabilitySink(AssignmentJournal journal) {
+      this.journal = journal;
+    }
+
+    @Override
+    public void writeAssignment(int loanId, int facilityId) {
+      Assert.assertTrue(journal.getDurable() >= loanId);
+      loanIds.add(loanId);
+    }
+
+    @Override
+    public void writeYield(int facilityId, long expectedYield) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long getAssignmentsLength() {
+      return loanIds.size();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
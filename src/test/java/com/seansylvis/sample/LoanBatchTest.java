@@ -0,0 +1,61 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanBatchTest {
+
+  @Test
+  public void testAddAndGrow() {
+    LoanBatch batch = new LoanBatch(1);
+    for (int i = 0; i < 100; i++) {
+      batch.add(new Loan(i, i * 10, 0.01f * i, 0.2f, i % 2 == 0 ? "CA" : "OR"));
+    }
+
+    Assert.assertEquals(100, batch.size());
+    Loan loan = batch.getLoan(51);
+    Assert.assertEquals(51, loan.getLoanId());
+    Assert.assertEquals(510, loan.getAmountCents());
+    Assert.assertEquals(0.51f, loan.getDefaultLikelihood(), 0.0f);
+    Assert.assertEquals(0.2f, loan.getInterestRate(), 0.0f);
+    Assert.assertEquals("OR", loan.getState());
+    Assert.assertEquals(StateCodes.of("OR"), batch.getStateCode(51));
+  }
+
+  @Test
+  public void testStateCodes() {
+    int code = StateCodes.of("CA");
+    Assert.assertEquals(code, StateCodes.of(new String("CA")));
+    Assert.assertEquals("CA", StateCodes.name(code));
+    Assert.assertTrue(code < StateCodes.size());
+  }
+
+  @Test
+  public void testReadMatchesMappedRead() throws Exception {
+    File file = new File("src/main/resources/large/loans.csv");
+    LoanBatch expected;
+    try (LoanReader reader = new CsvLoanReader(file)) {
+      expected = LoanBatch.read(reader);
+    }
+    LoanBatch actual = new LoanBatch(16);
+    try (MappedLoanReader reader = new MappedLoanReader(file)) {
+      Assert.assertEquals(100, reader.read(actual, 100));
+      reader.read(actual, Integer.MAX_VALUE);
+    }
+
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.getLoanId(i), actual.getLoanId(i));
+      Assert.assertEquals(expected.getAmountCents(i), actual.getAmountCents(i));
+      Assert.assertEquals(expected.getDefaultLikelihood(i), actual.getDefaultLikelihood(i), 0.0f);
+      Assert.assertEquals(expected.getInterestRate(i), actual.getInterestRate(i), 0.0f);
+      Assert.assertEquals(expected.getStateCode(i), actual.getStateCode(i));
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanLoadGeneratorTest {
+
+  @Test
+  public void testRun() throws Exception {
+    Bank bank = new Bank(1, "bank");
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility = new Facility(1, bank, 0.01f, 1000);
+    loanProcessor.addFacility(facility);
+
+    List<Loan> loans = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      loans.add(new Loan(i, 10, 0.01f, 0.2f, "CA"));
+    }
+
+    try (LoanServer server = new LoanServer(loanProcessor)) {
+      int port = server.start(0);
+      LoanLoadGenerator loadGenerator = new LoanLoadGenerator(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), loans);
+
+      // more requests than loans, and not a multiple of the connections
+      LoanLoadGenerator.Report report = loadGenerator.run(3, 25);
+      Assert.assertEquals(25, report.getRequests());
+      Assert.assertEquals(25, server.getRequests());
+      Assert.assertTrue(report.getRequestsPerSecond() > 0);
+      Assert.assertTrue(report.getPercentileNanos(0.5) <= report.getPercentileNanos(0.99));
+      Assert.assertTrue(report.getPercentileNanos(0.99) <= report.getPercentileNanos(1.0));
+    }
+    Assert.assertEquals(250, loanProcessor.getLedger(facility).getCommittedCents());
+  }
+}
@@ -0,0 +1,185 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanMainTest {
+
+  private static final File SMALL = new File("src/main/resources/small");
+  private static final String[] INPUTS = {"banks.csv", "covenants.csv", "facilities.csv", "loans.csv"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRun() throws Exception {
+    File output = folder.newFolder();
+    try (LoanMain loanMain = new LoanMain(SMALL.getPath())) {
+      loanMain.setOutputDirectory(output);
+      loanMain.run();
+    }
+
+    Assert.assertEquals(Files.readAllLines(new File(SMALL, "assignments.csv").toPath(), StandardCharsets.UTF_8),
+        Files.readAllLines(new File(output, "assignments.csv").toPath(), StandardCharsets.UTF_8));
+    Assert.assertEquals(Files.readAllLines(new File(SMALL, "yields.csv").toPath(), StandardCharsets.UTF_8),
+        Files.readAllLines(new File(output, "yields.csv").toPath(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testStartupReported() throws Exception {
+    Assert.assertFalse(runCapturingOutput(false).contains("startup:"));
+    Assert.assertTrue(runCapturingOutput(true).matches("(?s).*startup: .*decisions .*"));
+  }
+
+  @Test
+  public void testRunBatch() throws Exception {
+    File output = folder.newFolder();
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream systemOut = System.out;
+    System.setOut(new PrintStream(stdout, true, "UTF-8"));
+    try (LoanMain loanMain = new LoanMain(SMALL.getPath())) {
+      loanMain.setOutputDirectory(output);
+      loanMain.runBatch(4);
+    } finally {
+      System.setOut(systemOut);
+    }
+
+    // the greedy baseline decides loans one at a time, as a real-time run does
+    long expectedYield = 0;
+    List<String> yields = Files.readAllLines(new File(SMALL, "yields.csv").toPath(), StandardCharsets.UTF_8);
+    for (String line : yields.subList(1, yields.size())) {
+      expectedYield += Long.parseLong(line.split(",")[1]);
+    }
+    Matcher matcher = Pattern.compile("greedy expected yield: (-?\\d+)").matcher(stdout.toString("UTF-8"));
+    Assert.assertTrue(matcher.find());
+    Assert.assertNotEquals(0, expectedYield);
+    Assert.assertEquals(expectedYield, Long.parseLong(matcher.group(1)));
+  }
+
+  @Test
+  public void testResumeRecoversJournal() throws Exception {
+    File output = folder.newFolder();
+    try (LoanMain loanMain = new LoanMain(SMALL.getPath())) {
+      loanMain.setOutputDirectory(output);
+      loanMain.setJournaled(true);
+      loanMain.run();
+    }
+
+    // a crash loses all output, and all but the first journaled decision
+    try (AssignmentJournal journal = new AssignmentJournal(new File(output, "assignments.journal"), 16)) {
+      journal.truncate(1);
+    }
+    Files.delete(new File(output, "assignments.csv").toPath());
+    Files.delete(new File(output, "yields.csv").toPath());
+
+    try (LoanMain resumed = new LoanMain(SMALL.getPath())) {
+      resumed.setOutputDirectory(output);
+      resumed.setJournaled(true);
+      resumed.setResume(true);
+      resumed.run();
+    }
+
+    Assert.assertEquals(Files.readAllLines(new File(SMALL, "assignments.csv").toPath(), StandardCharsets.UTF_8),
+        Files.readAllLines(new File(output, "assignments.csv").toPath(), StandardCharsets.UTF_8));
+    Assert.assertEquals(Files.readAllLines(new File(SMALL, "yields.csv").toPath(), StandardCharsets.UTF_8),
+        Files.readAllLines(new File(output, "yields.csv").toPath(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRunKeepsJournal() throws Exception {
+    File output = folder.newFolder();
+    try (LoanMain loanMain = new LoanMain(SMALL.getPath())) {
+      loanMain.setOutputDirectory(output);
+      loanMain.setJournaled(true);
+      loanMain.run();
+    }
+    long length = new File(output, "assignments.journal").length();
+
+    try (LoanMain rerun = new LoanMain(SMALL.getPath())) {
+      rerun.setOutputDirectory(output);
+      rerun.setJournaled(true);
+      rerun.run();
+      Assert.fail("expected a run over a journal holding decisions to fail");
+    } catch (IOException e) {
+      Assert.assertEquals(length, new File(output, "assignments.journal").length());
+    }
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testCloseStopsLoading() throws Exception {
+    LoanMain loanMain = new LoanMain(SMALL.getPath());
+    loanMain.awaitFacilities();
+    loanMain.close();
+    loanMain.reload();
+  }
+
+  @Test(expected = IOException.class)
+  public void testCovenantForUnknownFacility() throws Exception {
+    File input = copySmall();
+    append(new File(input, "covenants.csv"), "\n99,0.1,1,\n");
+    try (LoanMain loanMain = new LoanMain(input.getPath())) {
+      loanMain.awaitFacilities();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testFacilityOfUnknownBank() throws Exception {
+    File input = copySmall();
+    append(new File(input, "facilities.csv"), "\n1000.0,0.05,3,99\n");
+    try (LoanMain loanMain = new LoanMain(input.getPath())) {
+      loanMain.awaitFacilities();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingInput() throws Exception {
+    File input = copySmall();
+    Files.delete(new File(input, "banks.csv").toPath());
+    try (LoanMain loanMain = new LoanMain(input.getPath())) {
+      loanMain.run();
+    }
+  }
+
+  private String runCapturingOutput(boolean startupReported) throws Exception {
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream systemOut = System.out;
+    System.setOut(new PrintStream(stdout, true, "UTF-8"));
+    try (LoanMain loanMain = new LoanMain(SMALL.getPath())) {
+      loanMain.setOutputDirectory(folder.newFolder());
+      loanMain.setStartupReported(startupReported);
+      loanMain.run();
+    } finally {
+      System.setOut(systemOut);
+    }
+    return stdout.toString("UTF-8");
+  }
+
+  private File copySmall() throws IOException {
+    File input = folder.newFolder();
+    for (String name : INPUTS) {
+      Files.copy(new File(SMALL, name).toPath(), new File(input, name).toPath());
+    }
+    return input;
+  }
+
+  private static void append(File file, String text) throws IOException {
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+  }
+}
@@ -0,0 +1,77 @@
+package com.seansylvis.sample;
+
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end throughput and peak heap test of {@link LoanMain} on a generated portfolio. LoanMain runs in a child JVM
+ * whose maximum heap is capped, so that a regression in memory use fails with an out of memory error and a regression
+ * in speed fails the throughput floor. The scale and thresholds default to a portfolio that runs in a few seconds and
+ * can be raised with system properties, e.g. {@code -Dthroughput.loans=10000000 -Dthroughput.facilities=5000
+ * -Dthroughput.maxHeap=1g}.
+ *
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanMainThroughputTest {
+
+  private static final int LOANS = Integer.getInteger("throughput.loans", 200000);
+  private static final int FACILITIES = Integer.getInteger("throughput.facilities", 500);
+  private static final String MAX_HEAP = System.getProperty("throughput.maxHeap", "48m");
+  private static final int MIN_LOANS_PER_SECOND = Integer.getInteger("throughput.minLoansPerSecond", 20000);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testThroughput() throws Exception {
+    File directory = folder.newFolder();
+    new PortfolioGenerator()
+        .setLoans(LOANS)
+        .setFacilities(FACILITIES)
+        .setBanks(Math.max(1, FACILITIES / 10))
+        .setStateSkew(1.0)
+        .generate(directory);
+
+    long elapsedNanos = runLoanMain(directory, "--mapped");
+    double loansPerSecond = LOANS / (elapsedNanos / 1e9);
+
+    Assert.assertEquals(LOANS + 1,
+        Files.readLines(new File(directory, "assignments.csv"), StandardCharsets.UTF_8).size());
+    Assert.assertEquals(FACILITIES + 1,
+        Files.readLines(new File(directory, "yields.csv"), StandardCharsets.UTF_8).size());
+    Assert.assertTrue("throughput of " + (long) loansPerSecond + " loans/s is below " + MIN_LOANS_PER_SECOND,
+        loansPerSecond >= MIN_LOANS_PER_SECOND);
+  }
+
+  /**
+   * Runs LoanMain over the given directory, writing its output there, and returns the elapsed time.
+   */
+  private static long runLoanMain(File directory, String... options) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("-Xmx" + MAX_HEAP);
+    command.add("-XX:+ExitOnOutOfMemoryError");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(LoanMain.class.getName());
+    command.add(directory.getAbsolutePath());
+    for (String option : options) {
+      command.add(option);
+    }
+
+    long start = System.nanoTime();
+    Process process = new ProcessBuilder(command).directory(directory).inheritIO().start();
+    int exitCode = process.waitFor();
+    long elapsedNanos = System.nanoTime() - start;
+    Assert.assertEquals("LoanMain exited abnormally, possibly out of memory within " + MAX_HEAP, 0, exitCode);
+    return elapsedNanos;
+  }
+}
@@ -0,0 +1,146 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanProcessorMetricsTest {
+
+  @Test
+  public void testDisabledByDefault() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(createFacility(1, 0.05f, 100));
+    Assert.assertNull(loanProcessor.getMetrics());
+    loanProcessor.process(createLoan(1, 50, 0.1f, "CA"));
+  }
+
+  @Test
+  public void testCounters() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    LoanProcessorMetrics metrics = new LoanProcessorMetrics();
+    loanProcessor.setMetrics(metrics);
+
+    Facility cheapest = createFacility(1, 0.01f, 50);
+    cheapest.addCovenant(new BannedStateCovenant("NY"));
+    Facility cheap = createFacility(2, 0.02f, 1000);
+    cheap.addCovenant(new DefaultLikelihoodCovenant(0.05f));
+    Facility expensive = createFacility(3, 0.03f, 1000);
+    expensive.addCovenant(new BannedStateCovenant("TX"));
+    loanProcessor.addFacility(cheapest);
+    loanProcessor.addFacility(cheap);
+    loanProcessor.addFacility(expensive);
+
+    // funded by the cheapest facility
+    Assert.assertEquals(cheapest, loanProcessor.process(createLoan(1, 50, 0.1f, "CA")));
+    // cheapest is full and cheap caps the default likelihood
+    Assert.assertEquals(expensive, loanProcessor.process(createLoan(2, 50, 0.1f, "CA")));
+    // cheapest bans the state
+    Assert.assertEquals(cheap, loanProcessor.process(createLoan(3, 50, 0.01f, "NY")));
+    // rejected by all three
+    Assert.assertNull(loanProcessor.process(createLoan(4, 50, 0.1f, "TX")));
+
+    Assert.assertEquals(4, metrics.getLoansProcessed());
+    Assert.assertEquals(3, metrics.getLoansFunded());
+    Assert.assertEquals(1, metrics.getLoansUnfunded());
+    Assert.assertEquals(2, metrics.getCapacityRejections());
+    Assert.assertEquals(2, metrics.getBannedStateRejections());
+    Assert.assertEquals(2, metrics.getDefaultLikelihoodRejections());
+    Assert.assertEquals(0, metrics.getOtherCovenantRejections());
+    // 1, then cheapest and expensive, then cheap, then cheapest
+    Assert.assertEquals(5, metrics.getFacilitiesScanned());
+    Assert.assertEquals(2, metrics.getMaxFacilitiesScannedPerLoan());
+    Assert.assertTrue(metrics.getMaxLatencyNanos() > 0);
+
+    FacilityMetrics cheapestMetrics = metrics.getFacilityMetrics(cheapest);
+    Assert.assertEquals(2, cheapestMetrics.getCapacityRejections());
+    Assert.assertEquals(1, cheapestMetrics.getBannedStateRejections());
+    Assert.assertEquals(0, cheapestMetrics.getRemainingCents());
+    FacilityMetrics cheapMetrics = metrics.getFacilityMetrics(cheap);
+    Assert.assertEquals(2, cheapMetrics.getDefaultLikelihoodRejections());
+    Assert.assertEquals(950, cheapMetrics.getRemainingCents());
+    Assert.assertEquals(1, metrics.getFacilityMetrics(expensive).getBannedStateRejections());
+  }
+
+  @Test
+  public void testRejectionByStaleIndex() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    LoanProcessorMetrics metrics = new LoanProcessorMetrics();
+    Facility facility = createFacility(1, 0.01f, 1000);
+    loanProcessor.addFacility(facility);
+    loanProcessor.setMetrics(metrics);
+    loanProcessor.process(createLoan(1, 50, 0.1f, "CA"));
+
+    // the covenant is only known to the index once it is rebuilt, after the next loan
+    facility.addCovenant(new BannedStateCovenant("CA"));
+    facility.addCovenant(new Covenant() {
+      @Override
+      public boolean apply(Loan loan) {
+        return loan.getAmountCents() < 100;
+      }
+
+      @Override
+      public void compile(CompiledCovenant.Builder builder) {
+        builder.addResidual(this);
+      }
+    });
+    Assert.assertNull(loanProcessor.process(createLoan(2, 50, 0.1f, "CA")));
+    Assert.assertNull(loanProcessor.process(createLoan(3, 200, 0.1f, "NY")));
+
+    Assert.assertEquals(1, metrics.getBannedStateRejections());
+    Assert.assertEquals(1, metrics.getOtherCovenantRejections());
+  }
+
+  @Test
+  public void testProcessBatch() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    LoanProcessorMetrics metrics = new LoanProcessorMetrics();
+    loanProcessor.setMetrics(metrics);
+    loanProcessor.addFacility(createFacility(1, 0.01f, 100));
+
+    LoanBatch batch = new LoanBatch(2);
+    batch.add(createLoan(1, 100, 0.1f, "CA"));
+    batch.add(createLoan(2, 100, 0.1f, "CA"));
+    loanProcessor.process(batch);
+
+    Assert.assertEquals(2, metrics.getLoansProcessed());
+    Assert.assertEquals(1, metrics.getLoansFunded());
+    Assert.assertEquals(1, metrics.getCapacityRejections());
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    LoanProcessor loanProcessor = new LoanProcessor();
+    LoanProcessorMetrics metrics = new LoanProcessorMetrics();
+    loanProcessor.addFacility(createFacility(1, 0.01f, 100));
+    loanProcessor.setMetrics(metrics);
+    metrics.register(server, "test");
+    // registered as soon as added
+    loanProcessor.addFacility(createFacility(2, 0.02f, 100));
+    loanProcessor.process(createLoan(1, 60, 0.1f, "CA"));
+
+    ObjectName processorName = new ObjectName("com.seansylvis.sample:type=LoanProcessor,name=\"test\"");
+    Assert.assertEquals(1L, server.getAttribute(processorName, "LoansFunded"));
+    ObjectName facilityName = new ObjectName("com.seansylvis.sample:type=Facility,processor=\"test\",id=2");
+    Assert.assertEquals(100L, server.getAttribute(facilityName, "RemainingCents"));
+    Assert.assertEquals(2, server.queryNames(new ObjectName("com.seansylvis.sample:type=Facility,*"), null).size());
+
+    metrics.unregister();
+    Assert.assertEquals(Collections.emptySet(), server.queryNames(new ObjectName("com.seansylvis.sample:*"), null));
+  }
+
+  private Facility createFacility(int facilityId, float interestRate, int amountCents) {
+    return new Facility(facilityId, new Bank(facilityId, "bank"), interestRate, amountCents);
+  }
+
+  private Loan createLoan(int loanId, int amountCents, float defaultLikelihood, String state) {
+    return new Loan(loanId, amountCents, defaultLikelihood, 0.2f, state);
+  }
+}
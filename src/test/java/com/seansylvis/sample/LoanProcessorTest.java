@@ -3,11 +3,19 @@ package com.seansylvis.sample;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * @author Sean Sylvis (ssylvis@gmail.com)
  */
 public class LoanProcessorTest {
 
+  private static final int ALLOCATION_LOANS = 20000;
+
   @Test
   public void testProcessNoFacilities() {
     LoanProcessor loanProcessor = new LoanProcessor();
@@ -95,6 +103,328 @@ public class LoanProcessorTest {
     Assert.assertEquals(facility1, loanProcessor.process(loan5));
   }
 
+  @Test
+  public void testProcessCovenantAddedAfterProcessing() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility0 = createFacility(1, 0.05f, 100);
+    loanProcessor.addFacility(facility0);
+    Facility facility1 = createFacility(2, 0.1f, 100);
+    loanProcessor.addFacility(facility1);
+
+    Assert.assertEquals(facility0, loanProcessor.process(createLoan(1, 10, 0.1f, "CA")));
+    facility0.getBank().addCovenant(createCovenant("CA"));
+    Assert.assertEquals(facility1, loanProcessor.process(createLoan(2, 10, 0.1f, "CA")));
+    Assert.assertEquals(facility1, loanProcessor.process(createLoan(3, 10, 0.1f, "CA")));
+    Assert.assertEquals(facility0, loanProcessor.process(createLoan(4, 10, 0.1f, "OR")));
+  }
+
+  @Test
+  public void testProcessBatch() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility0 = createFacility(1, 0.05f, 100);
+    facility0.addCovenant(createCovenant("OR"));
+    loanProcessor.addFacility(facility0);
+    Facility facility1 = createFacility(2, 0.1f, 100);
+    loanProcessor.addFacility(facility1);
+
+    LoanBatch batch = new LoanBatch(4);
+    batch.add(createLoan(1, 60, 0.1f, "CA"));
+    batch.add(createLoan(2, 60, 0.1f, "OR"));
+    batch.add(createLoan(3, 40, 0.1f, "CA"));
+    batch.add(createLoan(4, 50, 0.1f, "CA"));
+
+    Facility[] facilities = loanProcessor.process(batch);
+    Assert.assertArrayEquals(new Facility[] {facility0, facility1, facility0, null}, facilities);
+    Assert.assertEquals(2, loanProcessor.getFundedLoans(facility0).size());
+    Assert.assertEquals(40, loanProcessor.getLedger(facility1).getRemainingCents());
+  }
+
+  @Test
+  public void testProcessParallel() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility0 = createFacility(1, 0.05f, 100);
+    facility0.addCovenant(createCovenant("OR"));
+    loanProcessor.addFacility(facility0);
+    Facility facility1 = createFacility(2, 0.1f, 100);
+    loanProcessor.addFacility(facility1);
+    Assert.assertEquals(facility0, loanProcessor.process(createLoan(1, 10, 0.1f, "CA")));
+
+    // added after the index was built, and not expressible as a fused covenant
+    facility0.addCovenant(new MaxAmountCovenant(55));
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      Facility[] facilities = loanProcessor.process(Arrays.asList(
+          createLoan(2, 50, 0.1f, "CA"),
+          createLoan(3, 60, 0.1f, "CA"),
+          createLoan(4, 20, 0.1f, "OR"),
+          createLoan(5, 40, 0.1f, "CA"),
+          createLoan(6, 30, 0.1f, "CA"),
+          createLoan(7, 20, 0.1f, "CA")), pool);
+      Assert.assertArrayEquals(new Facility[] {facility0, facility1, facility1, facility0, null, facility1},
+          facilities);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testProcessParallelMatchesSequential() {
+    // more than 64 facilities, so that eligibility spans several words
+    Random random = new Random(7);
+    String[] states = {"CA", "NY", "TX", "OR", "WA"};
+    LoanProcessor sequential = new LoanProcessor();
+    LoanProcessor parallel = new LoanProcessor();
+    for (int i = 1; i <= 150; i++) {
+      Facility facility = createFacility(i, random.nextInt(20) / 100.0f, 1000 + random.nextInt(5000));
+      if (random.nextBoolean()) {
+        facility.addCovenant(createCovenant(states[random.nextInt(states.length)]));
+      }
+      if (random.nextBoolean()) {
+        facility.addCovenant(new DefaultLikelihoodCovenant(random.nextFloat()));
+      }
+      if (random.nextInt(4) == 0) {
+        facility.addCovenant(new MaxAmountCovenant(50 + random.nextInt(200)));
+      }
+      sequential.addFacility(facility);
+      parallel.addFacility(facility);
+    }
+
+    List<Loan> loans = new ArrayList<>();
+    for (int i = 1; i <= 5000; i++) {
+      loans.add(new Loan(i, 10 + random.nextInt(300), random.nextFloat(), 0.2f, states[random.nextInt(states.length)]));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Facility[] facilities = parallel.process(loans, pool);
+      for (int i = 0; i < loans.size(); i++) {
+        Assert.assertEquals(sequential.process(loans.get(i)), facilities[i]);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testReload() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(createFacility(1, 0.05f, 100));
+    loanProcessor.addFacility(createFacility(2, 0.1f, 100));
+    Facility facility3 = createFacility(3, 0.2f, 100);
+    loanProcessor.addFacility(facility3);
+    Assert.assertEquals(1, loanProcessor.process(createLoan(1, 60, 0.3f, "CA")).getFacilityId());
+
+    // facility 1 now bans CA and has grown, facility 2 is gone and facility 4 is new
+    Facility reloaded1 = createFacility(1, 0.05f, 200);
+    reloaded1.addCovenant(createCovenant("CA"));
+    Facility facility4 = createFacility(4, 0.15f, 100);
+    loanProcessor.reload(Arrays.asList(facility4, reloaded1, facility3));
+
+    Assert.assertEquals(facility4, loanProcessor.process(createLoan(2, 60, 0.3f, "CA")));
+    Assert.assertEquals(reloaded1, loanProcessor.process(createLoan(3, 140, 0.3f, "OR")));
+    Assert.assertEquals(facility3, loanProcessor.process(createLoan(4, 50, 0.3f, "OR")));
+
+    // facility 1 kept the loan it funded before the reload
+    FacilityLedger ledger = loanProcessor.getLedger(reloaded1);
+    Assert.assertEquals(200, ledger.getCommittedCents());
+    Assert.assertEquals(2, ledger.getFundedLoans().size());
+    Assert.assertNull(loanProcessor.getLedger(createFacility(2, 0.1f, 100)));
+    Assert.assertEquals(3, loanProcessor.getLedgers().size());
+  }
+
+  @Test
+  public void testReloadRemovedFacilityKeepsFundedLoans() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility = createFacility(1, 0.05f, 100);
+    loanProcessor.addFacility(facility);
+    loanProcessor.process(createLoan(1, 60, 0.3f, "CA"));
+
+    loanProcessor.reload(Arrays.asList(createFacility(2, 0.1f, 100)));
+    Assert.assertEquals(2, loanProcessor.process(createLoan(2, 60, 0.3f, "CA")).getFacilityId());
+    loanProcessor.reload(Arrays.asList(facility));
+    Assert.assertNull(loanProcessor.process(createLoan(3, 60, 0.3f, "CA")));
+    Assert.assertEquals(60, loanProcessor.getLedger(facility).getCommittedCents());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReloadDuplicateFacility() {
+    new LoanProcessor().reload(Arrays.asList(createFacility(1, 0.05f, 100), createFacility(1, 0.1f, 100)));
+  }
+
+  @Test
+  public void testReloadWhileProcessing() throws Exception {
+    final LoanProcessor loanProcessor = new LoanProcessor();
+    final List<Facility> evenConfiguration = new ArrayList<>();
+    final List<Facility> oddConfiguration = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      Facility facility = createFacility(i, i / 1000.0f, Integer.MAX_VALUE);
+      loanProcessor.addFacility(facility);
+      evenConfiguration.add(facility);
+      // the odd configuration bans CA from the cheapest facility
+      Facility reloaded = createFacility(i, i / 1000.0f, Integer.MAX_VALUE);
+      if (i == 1) {
+        reloaded.addCovenant(createCovenant("CA"));
+      }
+      oddConfiguration.add(reloaded);
+    }
+
+    Thread reloader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 2000; i++) {
+          loanProcessor.reload(i % 2 == 0 ? oddConfiguration : evenConfiguration);
+        }
+      }
+    });
+    reloader.start();
+    long fundedCents = 0;
+    for (int i = 0; i < 200000; i++) {
+      Facility facility = loanProcessor.process(createLoan(i, 1, 0.1f, "CA"));
+      // one configuration or the other, never a mix of the two
+      Assert.assertTrue(facility.getFacilityId() == 1 || facility.getFacilityId() == 2);
+      fundedCents++;
+    }
+    reloader.join();
+
+    long committedCents = 0;
+    for (FacilityLedger ledger : loanProcessor.getLedgers()) {
+      committedCents += ledger.getCommittedCents();
+    }
+    Assert.assertEquals(fundedCents, committedCents);
+  }
+
+  @Test
+  public void testGetFundedLoans() {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility0 = createFacility(1, 0.05f, 100);
+    loanProcessor.addFacility(facility0);
+    Facility facility1 = createFacility(2, 0.1f, 100);
+    loanProcessor.addFacility(facility1);
+
+    Loan loan0 = createLoan(1, 60, 0.1f, "CA");
+    Loan loan1 = createLoan(2, 60, 0.1f, "CA");
+    Loan loan2 = createLoan(3, 40, 0.1f, "CA");
+    loanProcessor.process(loan0);
+    loanProcessor.process(loan1);
+    loanProcessor.process(loan2);
+
+    Assert.assertEquals(Arrays.asList(loan0, loan2), loanProcessor.getFundedLoans(facility0));
+    Assert.assertEquals(Arrays.asList(loan1), loanProcessor.getFundedLoans(facility1));
+    Assert.assertEquals(0, loanProcessor.getLedger(facility0).getRemainingCents());
+    Assert.assertEquals(40, loanProcessor.getLedger(facility1).getRemainingCents());
+    Assert.assertTrue(loanProcessor.getFundedLoans(createFacility(3, 100)).isEmpty());
+  }
+
+  @Test
+  public void testProcessAllocatesNothing() {
+    assertProcessAllocatesNothing(false);
+  }
+
+  @Test
+  public void testProcessWithMetricsAllocatesNothing() {
+    assertProcessAllocatesNothing(true);
+  }
+
+  @Test
+  public void testProcessFundedAllocation() {
+    Allocations allocations = Allocations.ofCurrentThread();
+    LoanProcessor loanProcessor = createAllocationProcessor(Integer.MAX_VALUE);
+    Loan[] loans = createAllocationLoans(1);
+    processAll(loanProcessor, loans);
+
+    long before = allocations.getAllocatedBytes();
+    int funded = processAll(loanProcessor, loans);
+    long allocated = allocations.getAllocatedBytes() - before;
+
+    Assert.assertTrue(funded > loans.length / 2);
+    // only the funded loans' columns grow, by 18 bytes per loan
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < funded * 20L);
+  }
+
+  private void assertProcessAllocatesNothing(boolean withMetrics) {
+    Allocations allocations = Allocations.ofCurrentThread();
+    LoanProcessor loanProcessor = createAllocationProcessor(1000);
+    if (withMetrics) {
+      loanProcessor.setMetrics(new LoanProcessorMetrics());
+    }
+    Loan[] loans = createAllocationLoans(100);
+    // fills every facility, so that from then on each loan is turned down by covenants or for capacity
+    processAll(loanProcessor, loans);
+    processAll(loanProcessor, loans);
+
+    long before = allocations.getAllocatedBytes();
+    int funded = processAll(loanProcessor, loans);
+    long allocated = allocations.getAllocatedBytes() - before;
+
+    Assert.assertEquals(0, funded);
+    Assert.assertEquals(0, allocated);
+  }
+
+  /**
+   * @return a loan processor with facilities of the given amount spanning more than one word of the index, subject
+   * to bank and facility covenants of every kind
+   */
+  private LoanProcessor createAllocationProcessor(int totalAmountCents) {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    String[] states = {"CA", "OR", "WA", "NV"};
+    for (int i = 0; i < 100; i++) {
+      Bank bank = new Bank(i % 10, "bank");
+      bank.addCovenant(createCovenant(states[i % 4]));
+      Facility facility = new Facility(i, bank, 0.01f * (i % 7), totalAmountCents);
+      facility.addCovenant(new DefaultLikelihoodCovenant(0.1f * (i % 5)));
+      if (i % 3 == 0) {
+        facility.addCovenant(new MaxAmountCovenant(50));
+      }
+      loanProcessor.addFacility(facility);
+    }
+    return loanProcessor;
+  }
+
+  private Loan[] createAllocationLoans(int amountCents) {
+    String[] states = {"CA", "OR", "WA", "NV", "TX"};
+    Loan[] loans = new Loan[ALLOCATION_LOANS];
+    for (int i = 0; i < loans.length; i++) {
+      loans[i] = new Loan(i, amountCents, 0.05f * (i % 10), 0.2f, states[i % 5]);
+    }
+    return loans;
+  }
+
+  /**
+   * @return the number of loans funded
+   */
+  private int processAll(LoanProcessor loanProcessor, Loan[] loans) {
+    int funded = 0;
+    for (Loan loan : loans) {
+      if (loanProcessor.process(loan) != null) {
+        funded++;
+      }
+    }
+    return funded;
+  }
+
+  /**
+   * Covenant on loan amounts, which a {@link CompiledCovenant} can only apply as a residual covenant.
+   */
+  private static class MaxAmountCovenant implements Covenant {
+
+    private final int maxAmountCents;
+
+    MaxAmountCovenant(int maxAmountCents) {
+      this.maxAmountCents = maxAmountCents;
+    }
+
+    @Override
+    public boolean apply(Loan loan) {
+      return loan.getAmountCents() <= maxAmountCents;
+    }
+
+    @Override
+    public void compile(CompiledCovenant.Builder builder) {
+      builder.addResidual(this);
+    }
+  }
+
   private Covenant createCovenant(String bannedState) {
     return new BannedStateCovenant(bannedState);
   }
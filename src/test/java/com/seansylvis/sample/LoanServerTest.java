@@ -0,0 +1,137 @@
+package com.seansylvis.sample;
+
+import com.google.common.base.Strings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanServerTest {
+
+  private LoanServer server;
+  private int port;
+
+  @Before
+  public void setUp() throws Exception {
+    Bank bank = new Bank(1, "bank");
+    LoanProcessor loanProcessor = new LoanProcessor();
+    loanProcessor.addFacility(new Facility(1, bank, 0.01f, 150));
+    loanProcessor.addFacility(new Facility(2, bank, 0.02f, 100));
+    server = new LoanServer(loanProcessor);
+    port = server.start(0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testDecisions() throws Exception {
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      Assert.assertEquals("1,1", request(socket, reader, "0.2,100,1,0.01,CA"));
+      Assert.assertEquals("2,2", request(socket, reader, "0.2,100,2,0.01,CA"));
+      Assert.assertEquals("3,", request(socket, reader, "0.2,100,3,0.01,CA"));
+    }
+    Assert.assertEquals(3, server.getRequests());
+  }
+
+  @Test
+  public void testPipelinedRequests() throws Exception {
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      OutputStream output = socket.getOutputStream();
+      output.write("0.2,100,1,0.01,CA\n0.2,100,2,0.01,CA\n0.2,100,3,0.01,CA\n".getBytes(StandardCharsets.US_ASCII));
+      output.flush();
+      Assert.assertEquals("1,1", reader.readLine());
+      Assert.assertEquals("2,2", reader.readLine());
+      Assert.assertEquals("3,", reader.readLine());
+    }
+  }
+
+  @Test
+  public void testMalformedRequest() throws Exception {
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      Assert.assertTrue(request(socket, reader, "0.2,100,1").startsWith("error,"));
+      Assert.assertTrue(request(socket, reader, "0.2,lots,1,0.01,CA").startsWith("error,"));
+      // the connection stays usable
+      Assert.assertEquals("1,1", request(socket, reader, "0.2,100,1,0.01,CA"));
+    }
+    Assert.assertEquals(1, server.getRequests());
+  }
+
+  @Test
+  public void testInvalidLoan() throws Exception {
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      Assert.assertTrue(request(socket, reader, "0.2,-100,1,0.01,CA").startsWith("error,"));
+      Assert.assertTrue(request(socket, reader, "0.2,0,1,0.01,CA").startsWith("error,"));
+      Assert.assertTrue(request(socket, reader, "0.2,100,1,0.01,").startsWith("error,"));
+      Assert.assertTrue(request(socket, reader, "0.2,100,1,0.01," + Strings.repeat("X", 65)).startsWith("error,"));
+    }
+    Assert.assertEquals(0, server.getRequests());
+  }
+
+  @Test
+  public void testUnknownStates() throws Exception {
+    int states = StateCodes.size();
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      // states nobody has seen are funded like any state no facility bans
+      Assert.assertEquals("1,1", request(socket, reader, "0.2,100,1,0.01,UNKNOWN1"));
+      Assert.assertEquals("2,2", request(socket, reader, "0.2,100,2,0.01,UNKNOWN2"));
+      Assert.assertEquals("3,", request(socket, reader, "0.2,100,3,0.01,UNKNOWN3"));
+    }
+    Assert.assertEquals(3, server.getRequests());
+    Assert.assertEquals(states, StateCodes.size());
+    Loan loan = LoanServer.parseRequest("0.2,100,1,0.01,NOWHERE");
+    Assert.assertEquals(LoanServer.UNKNOWN_STATE, loan.getState());
+  }
+
+  @Test
+  public void testCloseEndsConnections() throws Exception {
+    try (Socket socket = connect()) {
+      BufferedReader reader = createReader(socket);
+      Assert.assertEquals("1,1", request(socket, reader, "0.2,100,1,0.01,CA"));
+      server.close();
+      server.join();
+      Assert.assertTrue(server.awaitConnections(10, TimeUnit.SECONDS));
+      Assert.assertNull(reader.readLine());
+    }
+  }
+
+  @Test
+  public void testFormatRequest() {
+    Loan loan = new Loan(7, 2500, 0.05f, 0.15f, "NY");
+    Assert.assertEquals("0.15,2500,7,0.05,NY", LoanServer.formatRequest(loan));
+    Assert.assertEquals(loan.toString(), LoanServer.parseRequest(LoanServer.formatRequest(loan)).toString());
+  }
+
+  private Socket connect() throws Exception {
+    return new Socket(InetAddress.getLoopbackAddress(), port);
+  }
+
+  private static BufferedReader createReader(Socket socket) throws Exception {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+  }
+
+  private static String request(Socket socket, BufferedReader reader, String request) throws Exception {
+    OutputStream output = socket.getOutputStream();
+    output.write((request + "\n").getBytes(StandardCharsets.US_ASCII));
+    output.flush();
+    return reader.readLine();
+  }
+}
@@ -0,0 +1,55 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class LoanTest {
+
+  private static final int FOOTPRINT_LOANS = 100000;
+
+  @Test
+  public void testStateCode() {
+    Loan loan = new Loan(1, 100, 0.1f, 0.2f, "CA");
+    Assert.assertEquals(StateCodes.of("CA"), loan.getStateCode());
+    Assert.assertSame(StateCodes.name(StateCodes.of("CA")), loan.getState());
+
+    Loan coded = new Loan(1, 100, 0.1f, 0.2f, StateCodes.of("OR"));
+    Assert.assertEquals("OR", coded.getState());
+  }
+
+  @Test
+  public void testFindStateCode() {
+    int code = StateCodes.of("CA");
+    Assert.assertEquals(code, StateCodes.find("CA"));
+
+    int codes = StateCodes.size();
+    Assert.assertEquals(StateCodes.NONE, StateCodes.find("not a state"));
+    Assert.assertEquals(codes, StateCodes.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownStateCode() {
+    new Loan(1, 100, 0.1f, 0.2f, StateCodes.size());
+  }
+
+  @Test
+  public void testFootprint() {
+    Allocations allocations = Allocations.ofCurrentThread();
+
+    // retained, so that the allocations cannot be eliminated
+    Loan[] loans = new Loan[FOOTPRINT_LOANS];
+    String[] states = {"CA", "OR", "WA", "NV"};
+    long before = allocations.getAllocatedBytes();
+    for (int i = 0; i < loans.length; i++) {
+      loans[i] = new Loan(i, 100, 0.1f, 0.2f, states[i & 3]);
+    }
+    long allocated = allocations.getAllocatedBytes() - before;
+
+    Assert.assertEquals("CA", loans[FOOTPRINT_LOANS - 4].getState());
+    // 32 bytes per loan with compressed references, a little more without; never another object per loan
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < FOOTPRINT_LOANS * 40L);
+  }
+}
@@ -0,0 +1,157 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class MappedLoanReaderTest {
+
+  private static final File LARGE_LOANS = new File("src/main/resources/large/loans.csv");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMatchesCsvLoanReader() throws Exception {
+    List<Loan> expected = readAll(new CsvLoanReader(LARGE_LOANS));
+    List<Loan> actual = readAll(new MappedLoanReader(LARGE_LOANS));
+    assertLoansEqual(expected, actual);
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    List<Loan> expected = readAll(new CsvLoanReader(LARGE_LOANS));
+    for (int parts = 1; parts <= 7; parts++) {
+      List<Loan> actual = new ArrayList<>();
+      for (MappedLoanReader reader : MappedLoanReader.split(LARGE_LOANS, parts)) {
+        actual.addAll(readAll(reader));
+      }
+      assertLoansEqual(expected, actual);
+    }
+  }
+
+  @Test
+  public void testResumeFromOffset() throws Exception {
+    List<Loan> expected = readAll(new CsvLoanReader(LARGE_LOANS));
+    long offset;
+    try (MappedLoanReader reader = new MappedLoanReader(LARGE_LOANS)) {
+      for (int i = 0; i < 100; i++) {
+        reader.next();
+      }
+      offset = reader.getOffset();
+    }
+    assertLoansEqual(expected.subList(100, expected.size()), readAll(new MappedLoanReader(LARGE_LOANS, offset)));
+  }
+
+  @Test
+  public void testColumnOrderAndLineEndings() throws Exception {
+    File file = write("id,state,amount,interest_rate,default_likelihood\r\n"
+        + "1,CA,100,0.15,0.02\r\n"
+        + "\r\n"
+        + "2,OR,-5,1.5e-1,0.123456789\r\n"
+        + "3,WA,7,1,0");
+    List<Loan> loans = readAll(new MappedLoanReader(file));
+    Assert.assertEquals(3, loans.size());
+    assertLoanEquals(new Loan(1, 100, 0.02f, 0.15f, "CA"), loans.get(0));
+    assertLoanEquals(new Loan(2, -5, 0.123456789f, 0.15f, "OR"), loans.get(1));
+    assertLoanEquals(new Loan(3, 7, 0.0f, 1.0f, "WA"), loans.get(2));
+  }
+
+  @Test
+  public void testParseFloatMatchesJdk() throws Exception {
+    Random random = new Random(42);
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      values.add(Float.toString(random.nextFloat()));
+      values.add(Double.toString(random.nextDouble()));
+      values.add(String.valueOf(random.nextInt(1000000)) + "." + String.valueOf(random.nextInt(1000000)));
+      values.add("0." + Long.toString(Math.abs(random.nextLong())));
+    }
+    StringBuilder contents = new StringBuilder("interest_rate,amount,id,default_likelihood,state\n");
+    for (int i = 0; i < values.size(); i++) {
+      contents.append(values.get(i)).append(",1,").append(i).append(",0,CA\n");
+    }
+
+    List<Loan> loans = readAll(new MappedLoanReader(write(contents.toString())));
+    Assert.assertEquals(values.size(), loans.size());
+    for (int i = 0; i < values.size(); i++) {
+      Assert.assertEquals(values.get(i), Float.floatToIntBits(Float.parseFloat(values.get(i))),
+          Float.floatToIntBits(loans.get(i).getInterestRate()));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingColumn() throws Exception {
+    new MappedLoanReader(write("interest_rate,amount,id,state\n0.1,1,1,CA\n"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testMalformed() throws Exception {
+    readAll(new MappedLoanReader(write("interest_rate,amount,id,default_likelihood,state\n0.1,x,1,0.1,CA\n")));
+  }
+
+  @Test
+  public void testTrailingCharactersAfterInteger() throws Exception {
+    String header = "interest_rate,amount,id,default_likelihood,state\n";
+    for (String row : new String[] {"0.1,12abc,1,0.1,CA\n", "0.1,12,1x,0.1,CA\n", "0.1,12.5,1,0.1,CA\n"}) {
+      try {
+        readAll(new MappedLoanReader(write(header + row)));
+        Assert.fail("expected " + row.trim() + " to be malformed");
+      } catch (IOException e) {
+        // rejected, as by CsvLoanReader
+      }
+    }
+  }
+
+  private void assertLoansEqual(List<Loan> expected, List<Loan> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertLoanEquals(expected.get(i), actual.get(i));
+    }
+  }
+
+  private void assertLoanEquals(Loan expected, Loan actual) {
+    Assert.assertEquals(expected.getLoanId(), actual.getLoanId());
+    Assert.assertEquals(expected.getAmountCents(), actual.getAmountCents());
+    Assert.assertEquals(Float.floatToIntBits(expected.getDefaultLikelihood()),
+        Float.floatToIntBits(actual.getDefaultLikelihood()));
+    Assert.assertEquals(Float.floatToIntBits(expected.getInterestRate()),
+        Float.floatToIntBits(actual.getInterestRate()));
+    Assert.assertEquals(expected.getState(), actual.getState());
+  }
+
+  private List<Loan> readAll(LoanReader reader) throws IOException {
+    List<Loan> loans = new ArrayList<>();
+    try {
+      Loan loan;
+      while ((loan = reader.next()) != null) {
+        loans.add(loan);
+      }
+    } finally {
+      reader.close();
+    }
+    return loans;
+  }
+
+  private File write(String contents) throws IOException {
+    File file = folder.newFile();
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+
+}
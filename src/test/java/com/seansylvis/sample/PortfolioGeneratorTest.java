@@ -0,0 +1,82 @@
+package com.seansylvis.sample;
+
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class PortfolioGeneratorTest {
+
+  private static final String[] FILES = {"banks.csv", "facilities.csv", "covenants.csv", "loans.csv"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testDeterministicForSeed() throws Exception {
+    File first = folder.newFolder();
+    File second = folder.newFolder();
+    File other = folder.newFolder();
+    new PortfolioGenerator().setSeed(7).setLoans(1000).generate(first);
+    new PortfolioGenerator().setSeed(7).setLoans(1000).generate(second);
+    new PortfolioGenerator().setSeed(8).setLoans(1000).generate(other);
+
+    for (String name : FILES) {
+      Assert.assertTrue(name, Files.equal(new File(first, name), new File(second, name)));
+    }
+    Assert.assertFalse(Files.equal(new File(first, "loans.csv"), new File(other, "loans.csv")));
+  }
+
+  @Test
+  public void testReadableAsInput() throws Exception {
+    File directory = folder.newFolder();
+    new PortfolioGenerator().setLoans(500).setFacilities(40).setBanks(4).generate(directory);
+
+    Assert.assertEquals(5, Files.readLines(new File(directory, "banks.csv"), StandardCharsets.UTF_8).size());
+    Assert.assertEquals(41, Files.readLines(new File(directory, "facilities.csv"), StandardCharsets.UTF_8).size());
+
+    int loans = 0;
+    try (LoanReader reader = new MappedLoanReader(new File(directory, "loans.csv"))) {
+      Loan loan;
+      while ((loan = reader.next()) != null) {
+        loans++;
+        Assert.assertEquals(loans, loan.getLoanId());
+        Assert.assertTrue(loan.getAmountCents() >= 1000 && loan.getAmountCents() <= 100000);
+        Assert.assertTrue(loan.getDefaultLikelihood() >= 0.0f && loan.getDefaultLikelihood() <= 0.1f);
+      }
+    }
+    Assert.assertEquals(500, loans);
+
+    // loads with all covenants attached to existing banks and facilities
+    try (LoanMain loanMain = new LoanMain(directory.getPath())) {
+      loanMain.awaitFacilities();
+    }
+  }
+
+  @Test
+  public void testStateSkew() throws Exception {
+    File directory = folder.newFolder();
+    new PortfolioGenerator().setLoans(5000).setStates("CA", "NY", "TX").setStateSkew(2.0).generate(directory);
+
+    Map<String, Integer> counts = new HashMap<>();
+    try (LoanReader reader = new MappedLoanReader(new File(directory, "loans.csv"))) {
+      Loan loan;
+      while ((loan = reader.next()) != null) {
+        Integer count = counts.get(loan.getState());
+        counts.put(loan.getState(), count == null ? 1 : count + 1);
+      }
+    }
+    // weights 1, 1/4 and 1/9
+    Assert.assertTrue(counts.toString(), counts.get("CA") > 3 * counts.get("NY"));
+    Assert.assertTrue(counts.toString(), counts.get("NY") > counts.get("TX"));
+  }
+}
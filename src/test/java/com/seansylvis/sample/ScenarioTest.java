@@ -0,0 +1,88 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class ScenarioTest {
+
+  @Test
+  public void testNoOverrides() {
+    Bank bank = new Bank(1, "bank");
+    bank.addCovenant(new BannedStateCovenant("VT"));
+    Facility facility = new Facility(1, bank, 0.1f, 100);
+    facility.addCovenant(new DefaultLikelihoodCovenant(0.5f));
+
+    List<Facility> copies = new Scenario("baseline").apply(Collections.singletonList(facility));
+    Facility copy = copies.get(0);
+    Assert.assertNotSame(facility, copy);
+    Assert.assertNotSame(bank, copy.getBank());
+    Assert.assertEquals(1, copy.getFacilityId());
+    Assert.assertEquals(0.1f, copy.getInterestRate(), 0.0f);
+    Assert.assertEquals(100, copy.getTotalAmountCents());
+    Assert.assertEquals(facility.getCovenants(), copy.getCovenants());
+    Assert.assertEquals(bank.getCovenants(), copy.getBank().getCovenants());
+  }
+
+  @Test
+  public void testScaleCapacity() {
+    Facility facility = new Facility(1, new Bank(1, "bank"), 0.1f, 100);
+    Scenario scenario = new Scenario("more capacity");
+    scenario.scaleCapacity(1, 1.2);
+    Assert.assertEquals(120, scenario.apply(Collections.singletonList(facility)).get(0).getTotalAmountCents());
+    Assert.assertEquals(100, facility.getTotalAmountCents());
+  }
+
+  @Test
+  public void testLiftBankBan() {
+    Bank bank = new Bank(1, "bank");
+    bank.addCovenant(new BannedStateCovenant("VT"));
+    bank.addCovenant(new BannedStateCovenant("CA"));
+    List<Facility> facilities = Arrays.asList(new Facility(1, bank, 0.1f, 100), new Facility(2, bank, 0.2f, 100));
+
+    Scenario scenario = new Scenario("no VT ban");
+    scenario.liftBankBan(1, "VT");
+    List<Facility> copies = scenario.apply(facilities);
+    Assert.assertSame(copies.get(0).getBank(), copies.get(1).getBank());
+    Assert.assertTrue(copies.get(0).apply(createLoan("VT")));
+    Assert.assertFalse(copies.get(0).apply(createLoan("CA")));
+    Assert.assertFalse(facilities.get(0).apply(createLoan("VT")));
+  }
+
+  @Test
+  public void testAddCovenants() {
+    Facility facility = new Facility(1, new Bank(1, "bank"), 0.1f, 100);
+    Scenario scenario = new Scenario("stricter");
+    scenario.addBankCovenant(1, new BannedStateCovenant("CA"));
+    scenario.addFacilityCovenant(1, new BannedStateCovenant("OR"));
+    Facility copy = scenario.apply(Collections.singletonList(facility)).get(0);
+    Assert.assertFalse(copy.apply(createLoan("CA")));
+    Assert.assertFalse(copy.apply(createLoan("OR")));
+    Assert.assertTrue(copy.apply(createLoan("WA")));
+    Assert.assertTrue(facility.apply(createLoan("CA")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownFacility() {
+    Scenario scenario = new Scenario("unknown");
+    scenario.scaleCapacity(2, 1.2);
+    scenario.apply(Collections.singletonList(new Facility(1, new Bank(1, "bank"), 0.1f, 100)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownBank() {
+    Scenario scenario = new Scenario("unknown");
+    scenario.liftBankBan(2, "VT");
+    scenario.apply(Collections.singletonList(new Facility(1, new Bank(1, "bank"), 0.1f, 100)));
+  }
+
+  private Loan createLoan(String state) {
+    return new Loan(1, 10, 0.1f, 0.2f, state);
+  }
+}
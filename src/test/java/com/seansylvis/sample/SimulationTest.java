@@ -0,0 +1,101 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class SimulationTest {
+
+  @Test
+  public void testScenarios() throws Exception {
+    Bank bank = new Bank(1, "bank");
+    bank.addCovenant(new BannedStateCovenant("VT"));
+    List<Facility> facilities = Arrays.asList(new Facility(1, bank, 0.01f, 100), new Facility(2, bank, 0.02f, 100));
+
+    LoanBatch loans = new LoanBatch(4);
+    loans.add(new Loan(1, 80, 0.1f, 0.2f, "CA"));
+    loans.add(new Loan(2, 40, 0.1f, 0.2f, "CA"));
+    loans.add(new Loan(3, 50, 0.1f, 0.2f, "VT"));
+    loans.add(new Loan(4, 90, 0.1f, 0.2f, "CA"));
+
+    Scenario moreCapacity = new Scenario("more capacity");
+    moreCapacity.scaleCapacity(1, 1.5);
+    Scenario noBan = new Scenario("no VT ban");
+    noBan.liftBankBan(1, "VT");
+
+    Simulation simulation = new Simulation(facilities, loans);
+    Simulation.Report report = simulation.run(Arrays.asList(new Scenario("baseline"), moreCapacity, noBan), 3);
+    Assert.assertEquals(4, report.getLoans());
+    List<Simulation.Result> results = report.getResults();
+    Assert.assertEquals(3, results.size());
+
+    // baseline: loan 1 to facility 1, loan 2 to facility 2, loan 3 banned, loan 4 too large for either
+    Simulation.Result baseline = results.get(0);
+    Assert.assertEquals("baseline", baseline.getScenario().getName());
+    Assert.assertEquals(1, baseline.getLedger(1).getFundedLoans().size());
+    Assert.assertEquals(1, baseline.getLedger(2).getFundedLoans().size());
+    Assert.assertEquals(2, baseline.getFundedLoans());
+
+    // facility 1 now takes loans 1 and 2, and facility 2 loan 4
+    Simulation.Result capacity = results.get(1);
+    Assert.assertEquals(120, capacity.getLedger(1).getCommittedCents());
+    Assert.assertEquals(90, capacity.getLedger(2).getCommittedCents());
+    Assert.assertEquals(3, capacity.getFundedLoans());
+
+    // loan 3 now goes to facility 2 alongside loan 2
+    Simulation.Result lifted = results.get(2);
+    Assert.assertEquals(80, lifted.getLedger(1).getCommittedCents());
+    Assert.assertEquals(90, lifted.getLedger(2).getCommittedCents());
+    Assert.assertTrue(lifted.getExpectedYield() > baseline.getExpectedYield());
+
+    // each scenario ran over copies, leaving the given facilities as they were
+    Assert.assertEquals(100, facilities.get(0).getTotalAmountCents());
+    Assert.assertEquals(1, bank.getCovenants().size());
+  }
+
+  @Test
+  public void testMatchesLoanProcessor() throws Exception {
+    Bank bank = new Bank(1, "bank");
+    bank.addCovenant(new DefaultLikelihoodCovenant(0.3f));
+    List<Facility> facilities = Arrays.asList(new Facility(1, bank, 0.01f, 500), new Facility(2, bank, 0.02f, 800));
+    LoanBatch loans = new LoanBatch(100);
+    for (int i = 0; i < 100; i++) {
+      loans.add(new Loan(i, 10 + i % 7 * 5, 0.05f * (i % 8), 0.2f, i % 3 == 0 ? "CA" : "OR"));
+    }
+
+    LoanProcessor loanProcessor = new LoanProcessor();
+    for (Facility facility : facilities) {
+      loanProcessor.addFacility(facility);
+    }
+    loanProcessor.process(loans);
+
+    Simulation.Result result = new Simulation(facilities, loans).run(new Scenario("baseline"));
+    for (Facility facility : facilities) {
+      FacilityLedger expected = loanProcessor.getLedger(facility);
+      FacilityLedger actual = result.getLedger(facility.getFacilityId());
+      Assert.assertEquals(expected.getCommittedCents(), actual.getCommittedCents());
+      Assert.assertEquals(expected.getExpectedYield(), actual.getExpectedYield());
+    }
+  }
+
+  @Test
+  public void testReport() throws Exception {
+    LoanBatch loans = new LoanBatch(1);
+    loans.add(new Loan(1, 10, 0.1f, 0.2f, "CA"));
+    Simulation simulation = new Simulation(Arrays.asList(new Facility(7, new Bank(1, "bank"), 0.01f, 100)), loans);
+    String table = simulation.run(Arrays.asList(new Scenario("baseline")), 1).toString();
+
+    String[] rows = table.split("\n");
+    Assert.assertEquals(3, rows.length);
+    Assert.assertTrue(rows[0].contains("baseline yield"));
+    Assert.assertTrue(rows[0].contains("baseline funded"));
+    Assert.assertTrue(rows[1].startsWith("7 "));
+    Assert.assertTrue(rows[1].endsWith("100.00%"));
+    Assert.assertTrue(rows[2].startsWith("total "));
+  }
+}
@@ -0,0 +1,69 @@
+package com.seansylvis.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Sean Sylvis (ssylvis@gmail.com)
+ */
+public class StreamingLoanPipelineTest {
+
+  @Test
+  public void testRunInOrder() throws Exception {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    Facility facility = new Facility(1, new Bank(1, "bank"), 0.1f, 5000);
+    loanProcessor.addFacility(facility);
+
+    final List<Assignment> assignments = new ArrayList<>();
+    new StreamingLoanPipeline(4).run(new CountingLoanReader(100), loanProcessor,
+        new StreamingLoanPipeline.AssignmentWriter() {
+          @Override
+          public void write(Assignment assignment) {
+            assignments.add(assignment);
+          }
+        });
+
+    Assert.assertEquals(100, assignments.size());
+    for (int i = 0; i < assignments.size(); i++) {
+      Assert.assertEquals(i, assignments.get(i).getLoan().getLoanId());
+      // each loan is 100 cents, so the facility funds the first 50
+      Assert.assertEquals(i < 50, assignments.get(i).isFunded());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testRunWriterFailure() throws Exception {
+    LoanProcessor loanProcessor = new LoanProcessor();
+    new StreamingLoanPipeline(4).run(new CountingLoanReader(1000), loanProcessor,
+        new StreamingLoanPipeline.AssignmentWriter() {
+          @Override
+          public void write(Assignment assignment) throws IOException {
+            throw new IOException("disk full");
+          }
+        });
+  }
+
+  private static class CountingLoanReader implements LoanReader {
+
+    private final int count;
+    private int next;
+
+    CountingLoanReader(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public Loan next() {
+      return next < count ? new Loan(next++, 100, 0.1f, 0.2f, "CA") : null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+}